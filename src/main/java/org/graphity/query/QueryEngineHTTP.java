@@ -18,16 +18,59 @@
 package org.graphity.query;
 
 import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.engine.http.HttpParams;
+import com.hp.hpl.jena.sparql.engine.http.HttpQuery;
+import com.hp.hpl.jena.sparql.engine.http.Params;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
 import com.hp.hpl.jena.sparql.engine.http.Service;
+import com.hp.hpl.jena.sparql.resultset.JSONInput;
+import com.hp.hpl.jena.sparql.resultset.XMLInput;
 import com.hp.hpl.jena.sparql.util.Context;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.atlas.web.HttpException;
+import org.apache.jena.atlas.web.TypedInputStream;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpNames;
+import org.apache.jena.riot.web.HttpOp;
+import org.apache.jena.web.HttpSC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Extends ARQ QueryEngineHTTP class in order to set authentication parameters stored in service context.
  * This workaround should be incorporated into Jena's codebase starting with version 2.10.1.
- * 
+ * If constructed with a HTTP client, requests are executed on it instead of the new client that ARQ creates
+ * for every query, so that pooled keep-alive connections can be reused.
+ *
  * @author Martynas Jusevičius <martynas@graphity.org>
  * @see <a href="https://issues.apache.org/jira/browse/JENA-405">JIRA Issue JENA-405</a>
  */
@@ -35,10 +78,29 @@ public class QueryEngineHTTP extends com.hp.hpl.jena.sparql.engine.http.QueryEng
 {
     private static final Logger log = LoggerFactory.getLogger(QueryEngineHTTP.class);
 
+    /** Accept header used for <code>SELECT</code> results */
+    public static final String SELECT_ACCEPT_HEADER = WebContent.contentTypeResultsXML + "," + WebContent.contentTypeResultsJSON + ";q=0.9";
+    /** Accept header used for <code>ASK</code> results */
+    public static final String ASK_ACCEPT_HEADER = SELECT_ACCEPT_HEADER;
+    /** Accept header used for <code>CONSTRUCT</code> and <code>DESCRIBE</code> results */
+    public static final String MODEL_ACCEPT_HEADER = WebContent.defaultGraphAcceptHeader;
+
+    private final String serviceURI;
+    private final String queryString;
+    private final Params params = new Params();
+    private HttpClient client = null;
+    private HttpContext httpContext = null;
+    private InputStream retainedStream = null;
+    private String ifNoneMatch = null;
+    private String entityTag = null;
+    private Date lastModified = null;
+
     public QueryEngineHTTP(String serviceURI, String queryString)
     {
 	super(serviceURI, queryString);
-	
+	this.serviceURI = serviceURI;
+	this.queryString = queryString;
+
 	Map<String, Context> serviceContextMap = (Map<String,Context>)getContext().get(Service.serviceContext);
 	if (serviceContextMap != null && serviceContextMap.containsKey(serviceURI))
 	{
@@ -47,7 +109,7 @@ public class QueryEngineHTTP extends com.hp.hpl.jena.sparql.engine.http.QueryEng
 
 	    String user = serviceContext.getAsString(Service.queryAuthUser);
 	    String pwd = serviceContext.getAsString(Service.queryAuthPwd);
-	    
+
 	    if (user != null || pwd != null)
 	    {
 		user = user==null?"":user;
@@ -60,7 +122,378 @@ public class QueryEngineHTTP extends com.hp.hpl.jena.sparql.engine.http.QueryEng
 
     public QueryEngineHTTP(String serviceURI, Query query)
     {
-	this(serviceURI, query.toString());	
+	this(serviceURI, query.toString());
+    }
+
+    /**
+     * Creates query execution that is sent using the supplied HTTP client.
+     * Authentication is expected to be carried by the HTTP context, so that the (possibly shared) client
+     * does not need to be modified.
+     *
+     * @param serviceURI remote endpoint URI
+     * @param query query object
+     * @param client HTTP client
+     * @param httpContext HTTP context of this execution
+     */
+    public QueryEngineHTTP(String serviceURI, Query query, HttpClient client, HttpContext httpContext)
+    {
+	this(serviceURI, query.toString());
+	if (client == null) throw new IllegalArgumentException("HttpClient cannot be null");
+	this.client = client;
+	this.httpContext = httpContext;
+    }
+
+    @Override
+    public void addParam(String field, String value)
+    {
+	super.addParam(field, value);
+	params.addParam(field, value);
+    }
+
+    @Override
+    public void addDefaultGraph(String defaultGraph)
+    {
+	super.addDefaultGraph(defaultGraph);
+	params.addParam(HttpParams.pDefaultGraph, defaultGraph);
+    }
+
+    @Override
+    public void addNamedGraph(String name)
+    {
+	super.addNamedGraph(name);
+	params.addParam(HttpParams.pNamedGraph, name);
+    }
+
+    @Override
+    public ResultSet execSelect()
+    {
+	if (getClient() == null) return super.execSelect();
+
+	TypedInputStream in = exec(SELECT_ACCEPT_HEADER);
+	retainedStream = in; // results are parsed lazily, stream is closed in close()
+	if (WebContent.contentTypeResultsJSON.equals(in.getContentType())) return ResultSetFactory.fromJSON(in);
+	return ResultSetFactory.fromXML(in);
+    }
+
+    @Override
+    public Model execConstruct()
+    {
+	return execConstruct(ModelFactory.createDefaultModel());
+    }
+
+    @Override
+    public Model execConstruct(Model model)
+    {
+	if (getClient() == null) return super.execConstruct(model);
+
+	return execModel(model);
+    }
+
+    @Override
+    public Model execDescribe()
+    {
+	return execDescribe(ModelFactory.createDefaultModel());
+    }
+
+    @Override
+    public Model execDescribe(Model model)
+    {
+	if (getClient() == null) return super.execDescribe(model);
+
+	return execModel(model);
+    }
+
+    @Override
+    public boolean execAsk()
+    {
+	if (getClient() == null) return super.execAsk();
+
+	TypedInputStream in = exec(ASK_ACCEPT_HEADER);
+	try
+	{
+	    if (WebContent.contentTypeResultsJSON.equals(in.getContentType())) return JSONInput.booleanFromJSON(in);
+	    return XMLInput.booleanFromXML(in);
+	}
+	finally
+	{
+	    closeQuietly(in);
+	}
+    }
+
+    /**
+     * Executes <code>CONSTRUCT</code> or <code>DESCRIBE</code> query and returns the unparsed RDF response.
+     * The stream is retained and closed in {@link #close()}, so that it can be parsed as it is read.
+     *
+     * @return typed response stream
+     */
+    public TypedInputStream execModelStream()
+    {
+	TypedInputStream in = exec(MODEL_ACCEPT_HEADER);
+	retainedStream = in;
+	return in;
+    }
+
+    /**
+     * Reads RDF response into the given model.
+     *
+     * @param model model to read into
+     * @return the same model
+     */
+    protected Model execModel(Model model)
+    {
+	TypedInputStream in = exec(MODEL_ACCEPT_HEADER);
+	try
+	{
+	    Lang lang = RDFLanguages.contentTypeToLang(in.getContentType());
+	    if (lang == null) throw new QueryExecException("Endpoint returned Content-Type: " + in.getContentType() + " which is not supported for RDF results");
+
+	    RDFDataMgr.read(model, in, lang);
+	    return model;
+	}
+	finally
+	{
+	    closeQuietly(in);
+	}
+    }
+
+    /**
+     * Sends the query to the endpoint and returns the response body.
+     * Validators of the response are captured, and an <code>If-None-Match</code> header is sent if one is set.
+     * If the endpoint responds with <code>304 Not Modified</code>, <code>QueryExceptionHTTP</code> with that
+     * status is thrown.
+     *
+     * @param acceptHeader value of the <code>Accept</code> header
+     * @return typed response stream
+     * @see #getEntityTag()
+     * @see #getLastModified()
+     */
+    protected TypedInputStream exec(String acceptHeader)
+    {
+	if (getClient() == null) return execDefault(acceptHeader);
+
+	HttpResponse response = execRaw(acceptHeader);
+	int statusCode = response.getStatusLine().getStatusCode();
+	HttpEntity entity = response.getEntity();
+	try
+	{
+	    captureValidators(response);
+
+	    if (statusCode == HttpSC.NOT_MODIFIED_304)
+	    {
+		EntityUtils.consume(entity);
+		throw new QueryExceptionHTTP(statusCode, response.getStatusLine().getReasonPhrase());
+	    }
+	    if (statusCode == HttpSC.NOT_FOUND_404)
+	    {
+		EntityUtils.consume(entity);
+		throw new QueryExceptionHTTP(statusCode, "Endpoint not found: " + getServiceURI());
+	    }
+	    if (statusCode >= 400 || entity == null)
+	    {
+		EntityUtils.consume(entity);
+		throw new QueryExceptionHTTP(statusCode, response.getStatusLine().getReasonPhrase());
+	    }
+
+	    Header contentType = entity.getContentType();
+	    if (contentType == null) return new TypedInputStream(entity.getContent());
+	    return new TypedInputStream(entity.getContent(), ContentType.create(contentType.getValue()));
+	}
+	catch (IOException ex)
+	{
+	    throw new QueryExceptionHTTP(ex);
+	}
+    }
+
+    /**
+     * Sends the query using the default client of ARQ. Validators are not captured.
+     *
+     * @param acceptHeader value of the <code>Accept</code> header
+     * @return typed response stream
+     */
+    private TypedInputStream execDefault(String acceptHeader)
+    {
+	Params requestParams = new Params(params);
+	requestParams.addParam(HttpParams.pQuery, getQueryString());
+	String requestString = requestParams.httpString();
+
+	try
+	{
+	    TypedInputStream in;
+	    if (getServiceURI().length() + requestString.length() > HttpQuery.urlLimit)
+		in = HttpOp.execHttpPostFormStream(getServiceURI(), requestParams, acceptHeader, null, null, null);
+	    else
+		in = HttpOp.execHttpGet(getServiceURI() + (getServiceURI().contains("?") ? "&" : "?") + requestString, acceptHeader);
+	    if (in == null) throw new QueryExceptionHTTP(HttpSC.NOT_FOUND_404, "Endpoint not found: " + getServiceURI());
+	    return in;
+	}
+	catch (HttpException ex)
+	{
+	    throw new QueryExceptionHTTP(ex.getResponseCode(), ex.getMessage(), ex);
+	}
+    }
+
+    /**
+     * Stores <code>ETag</code> and <code>Last-Modified</code> headers of the endpoint response.
+     *
+     * @param response HTTP response
+     */
+    protected void captureValidators(HttpResponse response)
+    {
+	Header eTag = response.getFirstHeader(HttpHeaders.ETAG);
+	entityTag = eTag != null ? eTag.getValue() : null;
+
+	lastModified = null;
+	Header lastModifiedHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+	if (lastModifiedHeader != null)
+	    try
+	    {
+		lastModified = DateUtils.parseDate(lastModifiedHeader.getValue());
+	    }
+	    catch (DateParseException ex)
+	    {
+		if (log.isDebugEnabled()) log.debug("Ignoring malformed Last-Modified header from endpoint {}: {}", getServiceURI(), lastModifiedHeader.getValue());
+	    }
+    }
+
+    /**
+     * Sends the query to the endpoint and returns the HTTP response as it is, without checking its status or
+     * parsing its body. Used to proxy the response bytes to the client.
+     * The caller is responsible for consuming or closing the response entity.
+     *
+     * @param acceptHeader value of the <code>Accept</code> header
+     * @return HTTP response
+     */
+    public HttpResponse execRaw(String acceptHeader)
+    {
+	if (getClient() == null) throw new IllegalStateException("Raw query execution requires HttpClient");
+
+	try
+	{
+	    HttpUriRequest request = createRequest(acceptHeader);
+	    if (log.isTraceEnabled()) log.trace("Sending query request to endpoint {} with Accept: {}", getServiceURI(), acceptHeader);
+	    return getClient().execute(request, getHttpContext());
+	}
+	catch (IOException ex)
+	{
+	    throw new QueryExceptionHTTP(ex);
+	}
+    }
+
+    /**
+     * Creates HTTP request of the query.
+     * Uses GET, or POST with form-encoded parameters if the request URI would exceed the length limit.
+     *
+     * @param acceptHeader value of the <code>Accept</code> header
+     * @return HTTP request
+     * @throws IOException if the form entity cannot be created
+     */
+    protected HttpUriRequest createRequest(String acceptHeader) throws IOException
+    {
+	Params requestParams = new Params(params);
+	requestParams.addParam(HttpParams.pQuery, getQueryString());
+	String requestString = requestParams.httpString();
+
+	HttpUriRequest request;
+	if (getServiceURI().length() + requestString.length() > HttpQuery.urlLimit)
+	{
+	    List<NameValuePair> pairs = new ArrayList<>();
+	    for (Params.Pair pair : requestParams.pairs())
+		pairs.add(new BasicNameValuePair(pair.getName(), pair.getValue()));
+
+	    HttpPost post = new HttpPost(getServiceURI());
+	    post.setEntity(new UrlEncodedFormEntity(pairs, WebContent.charsetUTF8));
+	    request = post;
+	}
+	else
+	    request = new HttpGet(getServiceURI() + (getServiceURI().contains("?") ? "&" : "?") + requestString);
+
+	request.addHeader(HttpNames.hAccept, acceptHeader);
+	if (getIfNoneMatch() != null) request.addHeader(HttpHeaders.IF_NONE_MATCH, getIfNoneMatch());
+	return request;
+    }
+
+    @Override
+    public void close()
+    {
+	if (retainedStream != null)
+	{
+	    closeQuietly(retainedStream);
+	    retainedStream = null;
+	}
+
+	super.close();
+    }
+
+    private void closeQuietly(InputStream in)
+    {
+	try
+	{
+	    in.close();
+	}
+	catch (IOException ex)
+	{
+	    if (log.isWarnEnabled()) log.warn("Could not close response stream from endpoint {}", getServiceURI(), ex);
+	}
     }
-    
-}
\ No newline at end of file
+
+    public String getServiceURI()
+    {
+	return serviceURI;
+    }
+
+    public String getQueryString()
+    {
+	return queryString;
+    }
+
+    public HttpClient getClient()
+    {
+	return client;
+    }
+
+    public HttpContext getHttpContext()
+    {
+	return httpContext;
+    }
+
+    /**
+     * Returns <code>If-None-Match</code> header value sent with the query.
+     *
+     * @return header value, or null if the request is not conditional
+     */
+    public String getIfNoneMatch()
+    {
+	return ifNoneMatch;
+    }
+
+    /**
+     * Makes the query request conditional. Only applies when executed with a HTTP client.
+     *
+     * @param ifNoneMatch <code>If-None-Match</code> header value, or null
+     */
+    public void setIfNoneMatch(String ifNoneMatch)
+    {
+	this.ifNoneMatch = ifNoneMatch;
+    }
+
+    /**
+     * Returns <code>ETag</code> header value of the last endpoint response.
+     *
+     * @return entity tag, or null if none was sent
+     */
+    public String getEntityTag()
+    {
+	return entityTag;
+    }
+
+    /**
+     * Returns <code>Last-Modified</code> date of the last endpoint response.
+     *
+     * @return date, or null if none was sent
+     */
+    public Date getLastModified()
+    {
+	return lastModified;
+    }
+
+}
@@ -0,0 +1,194 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.query;
+
+import com.hp.hpl.jena.query.QueryExecException;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import org.apache.jena.atlas.web.TypedInputStream;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RDF result of a remote <code>CONSTRUCT</code> or <code>DESCRIBE</code> query that has not been parsed yet.
+ * Triples are pushed from the origin parser to a stream sink, so that they can be serialized without building
+ * an intermediate model. The graph can be parsed only once, and the underlying execution stays open until it is
+ * closed by the consumer.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see <a href="http://jena.apache.org/documentation/io/streaming-io.html">Jena streaming I/O</a>
+ */
+public class StreamingGraph implements Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger(StreamingGraph.class);
+
+    private final QueryEngineHTTP queryExecution;
+    private final TypedInputStream stream;
+    private final Lang lang;
+    private boolean notFoundIfEmpty = false;
+    private boolean consumed = false;
+    private boolean closed = false;
+
+    /**
+     * Executes <code>CONSTRUCT</code> or <code>DESCRIBE</code> query and wraps its response.
+     *
+     * @param queryExecution remote query execution
+     */
+    public StreamingGraph(QueryEngineHTTP queryExecution)
+    {
+	if (queryExecution == null) throw new IllegalArgumentException("QueryEngineHTTP cannot be null");
+	this.queryExecution = queryExecution;
+
+	try
+	{
+	    this.stream = queryExecution.execModelStream();
+	    this.lang = RDFLanguages.contentTypeToLang(stream.getContentType());
+	    if (lang == null) throw new QueryExecException("Endpoint returned Content-Type: " + stream.getContentType() + " which is not supported for RDF results");
+	}
+	catch (RuntimeException ex)
+	{
+	    queryExecution.close();
+	    throw ex;
+	}
+    }
+
+    /**
+     * Wraps RDF response stream, such as a Graph Store response.
+     * The syntax is determined by the media type of the stream.
+     *
+     * @param stream typed RDF stream
+     */
+    public StreamingGraph(TypedInputStream stream)
+    {
+	if (stream == null) throw new IllegalArgumentException("TypedInputStream cannot be null");
+	this.queryExecution = null;
+	this.stream = stream;
+	this.lang = RDFLanguages.contentTypeToLang(stream.getContentType());
+	if (lang == null)
+	{
+	    close();
+	    throw new QueryExecException("Origin returned Content-Type: " + stream.getContentType() + " which is not supported for RDF results");
+	}
+    }
+
+    /**
+     * Parses the response and sends its triples to the given sink.
+     * Can only be called once.
+     *
+     * @param sink RDF stream sink
+     */
+    public void parse(StreamRDF sink)
+    {
+	if (sink == null) throw new IllegalArgumentException("StreamRDF cannot be null");
+	if (consumed || closed) throw new IllegalStateException("StreamingGraph can only be parsed once");
+	consumed = true;
+
+	if (log.isTraceEnabled()) log.trace("Parsing streamed {} response", getLang());
+	RDFDataMgr.parse(sink, getStream(), getLang());
+    }
+
+    /**
+     * Parses the whole response into a new model and closes the execution.
+     * Used for output formats that cannot be written as a stream.
+     *
+     * @return RDF model
+     */
+    public Model toModel()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	try
+	{
+	    parse(StreamRDFLib.graph(model.getGraph()));
+	    return model;
+	}
+	finally
+	{
+	    close();
+	}
+    }
+
+    /**
+     * Closes the query execution and releases its connection.
+     * Can be called more than once.
+     */
+    @Override
+    public void close()
+    {
+	if (closed) return;
+	closed = true;
+
+	if (getQueryExecution() != null) getQueryExecution().close();
+	else
+	    try
+	    {
+		getStream().close();
+	    }
+	    catch (IOException ex)
+	    {
+		if (log.isWarnEnabled()) log.warn("Could not close streamed RDF response", ex);
+	    }
+    }
+
+    public boolean isClosed()
+    {
+	return closed;
+    }
+
+    /**
+     * Returns syntax of the origin response.
+     *
+     * @return RDF language
+     */
+    public Lang getLang()
+    {
+	return lang;
+    }
+
+    /**
+     * Returns true if an empty result should be reported as 404 Not Found, as is the case with resource descriptions.
+     *
+     * @return true if empty graph is not found
+     */
+    public boolean isNotFoundIfEmpty()
+    {
+	return notFoundIfEmpty;
+    }
+
+    public void setNotFoundIfEmpty(boolean notFoundIfEmpty)
+    {
+	this.notFoundIfEmpty = notFoundIfEmpty;
+    }
+
+    public QueryEngineHTTP getQueryExecution()
+    {
+	return queryExecution;
+    }
+
+    protected TypedInputStream getStream()
+    {
+	return stream;
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.query;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward-only result set that is read directly from an open query execution.
+ * Solutions are parsed as they are consumed, so memory use does not depend on the size of the result.
+ * The underlying execution (and the response stream of a remote endpoint) stays open until this result set
+ * is closed, which must be done by the consumer once it has finished iterating.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see <a href="http://jena.apache.org/documentation/javadoc/arq/com/hp/hpl/jena/query/ResultSet.html">Jena ResultSet</a>
+ */
+public class StreamingResultSet implements ResultSet, Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger(StreamingResultSet.class);
+
+    private final QueryExecution queryExecution;
+    private final Closeable resource;
+    private final ResultSet resultSet;
+    private boolean closed = false;
+
+    /**
+     * Executes <code>SELECT</code> query and wraps its result set.
+     *
+     * @param queryExecution query execution
+     */
+    public StreamingResultSet(QueryExecution queryExecution)
+    {
+	if (queryExecution == null) throw new IllegalArgumentException("QueryExecution cannot be null");
+	this.queryExecution = queryExecution;
+	this.resource = null;
+
+	try
+	{
+	    this.resultSet = queryExecution.execSelect();
+	}
+	catch (RuntimeException ex)
+	{
+	    queryExecution.close();
+	    throw ex;
+	}
+    }
+
+    /**
+     * Wraps result set that is parsed from a resource, such as an origin response stream.
+     *
+     * @param resultSet result set
+     * @param resource resource that is closed together with this result set
+     */
+    public StreamingResultSet(ResultSet resultSet, Closeable resource)
+    {
+	if (resultSet == null) throw new IllegalArgumentException("ResultSet cannot be null");
+	if (resource == null) throw new IllegalArgumentException("Closeable resource cannot be null");
+	this.queryExecution = null;
+	this.resource = resource;
+	this.resultSet = resultSet;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+	if (closed) return false;
+	return getResultSet().hasNext();
+    }
+
+    @Override
+    public QuerySolution next()
+    {
+	return getResultSet().next();
+    }
+
+    @Override
+    public QuerySolution nextSolution()
+    {
+	return getResultSet().nextSolution();
+    }
+
+    @Override
+    public Binding nextBinding()
+    {
+	return getResultSet().nextBinding();
+    }
+
+    @Override
+    public int getRowNumber()
+    {
+	return getResultSet().getRowNumber();
+    }
+
+    @Override
+    public List<String> getResultVars()
+    {
+	return getResultSet().getResultVars();
+    }
+
+    @Override
+    public Model getResourceModel()
+    {
+	return getResultSet().getResourceModel();
+    }
+
+    @Override
+    public void remove()
+    {
+	throw new UnsupportedOperationException("StreamingResultSet is read-only");
+    }
+
+    /**
+     * Closes the query execution (or resource) and releases its connection.
+     * Can be called more than once.
+     */
+    @Override
+    public void close()
+    {
+	if (closed) return;
+	closed = true;
+
+	if (getQueryExecution() != null) getQueryExecution().close();
+	if (resource != null)
+	    try
+	    {
+		resource.close();
+	    }
+	    catch (IOException ex)
+	    {
+		if (log.isWarnEnabled()) log.warn("Could not close streamed ResultSet resource", ex);
+	    }
+    }
+
+    public boolean isClosed()
+    {
+	return closed;
+    }
+
+    public QueryExecution getQueryExecution()
+    {
+	return queryExecution;
+    }
+
+    protected ResultSet getResultSet()
+    {
+	return resultSet;
+    }
+
+}
@@ -21,12 +21,18 @@ import com.sun.jersey.api.core.ResourceConfig;
 import java.util.HashSet;
 import java.util.Set;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.servlet.ServletContext;
 import javax.ws.rs.core.Context;
 import org.graphity.server.model.GraphStoreBase;
 import org.graphity.server.model.QueriedResourceBase;
 import org.graphity.server.model.SPARQLEndpointBase;
 import org.graphity.server.provider.*;
+import org.graphity.server.util.DataManager;
+import org.graphity.server.util.HashingBuffer;
+import org.graphity.server.util.ParsedQueryCache;
+import org.graphity.util.ParallelHashing;
+import org.graphity.util.RDFBinary;
 import org.openjena.riot.SysRIOT;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +67,8 @@ public class ApplicationBase extends javax.ws.rs.core.Application
 
 	singletons.add(new ModelProvider());
 	singletons.add(new ResultSetWriter());
+	singletons.add(new StreamingGraphWriter());
+	singletons.add(new HashingBufferWriter());
 	singletons.add(new QueryParamProvider());
 	singletons.add(new QueryFormParamProvider());
 	singletons.add(new UpdateRequestReader());
@@ -82,8 +90,57 @@ public class ApplicationBase extends javax.ws.rs.core.Application
     {
 	if (log.isDebugEnabled()) log.debug("Application.init() with ResourceConfig: {} and SerlvetContext: {}", getResourceConfig(), getServletContext());
 	SysRIOT.wireIntoJena(); // enable RIOT parser
+	RDFBinary.init(); // register binary RDF before response variants are computed
 	// WARNING! ontology caching can cause concurrency/consistency problems
 	OntDocumentManager.getInstance().setCacheModels(false);
+
+	ServerConfig config = ServerConfig.get(getResourceConfig()); // resolved once, used by all requests
+
+	if (config.getMaxConnections() != null)
+	    DataManager.get().getConnectionManager().setMaxTotal(config.getMaxConnections());
+	if (config.getMaxConnectionsPerRoute() != null)
+	    DataManager.get().getConnectionManager().setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+	if (config.getConnectionIdleTimeout() != null)
+	    DataManager.get().setConnectionIdleTimeout(config.getConnectionIdleTimeout());
+	if (config.getAsyncPoolSize() != null)
+	    DataManager.get().setAsyncPoolSize(config.getAsyncPoolSize());
+	if (config.getMaxOriginRequests() != null)
+	    DataManager.get().getOriginGuard().setMaxRequests(config.getMaxOriginRequests());
+	if (config.getOriginTimeout() != null)
+	    DataManager.get().getOriginGuard().setTimeout(config.getOriginTimeout());
+	if (config.getResultCacheSize() != null)
+	    DataManager.get().getResultCache().setMaxWeight(config.getResultCacheSize());
+	if (config.getResultCacheTTL() != null && config.getEndpoint() != null)
+	    DataManager.get().getResultCache().setTimeToLive(config.getEndpoint().getURI(), config.getResultCacheTTL());
+	if (config.getUnionDefaultGraph() != null)
+	    DataManager.get().getResultCache().setUnionDefaultGraph(config.getUnionDefaultGraph());
+	if (config.getParallelHashThreshold() != null)
+	    ParallelHashing.setThreshold(config.getParallelHashThreshold());
+	if (config.getGraphStoreLang() != null)
+	    DataManager.get().setGraphStoreSendLang(config.getGraphStoreLang());
+	ModelProvider.setStreamUploads(config.isStreamUploads());
+	if (config.getPrettyPrintLimit() != null)
+	    ModelProvider.setPrettyPrintLimit(config.getPrettyPrintLimit());
+	if (config.getMaxResponseBufferSize() != null)
+	    HashingBuffer.setMaxSize(config.getMaxResponseBufferSize());
+    }
+
+    /**
+     * Releases (pre destruction) pooled HTTP connections held by DataManager, and the parallel hashing pool
+     * 
+     * @see org.graphity.server.util.DataManager#shutdown()
+     * @see org.graphity.util.ParallelHashing#shutdown()
+     */
+    @PreDestroy
+    public void destroy()
+    {
+	if (log.isDebugEnabled()) log.debug("Application.destroy() with HTTP connection pool stats: {}", DataManager.get().getConnectionPoolStats());
+	if (log.isDebugEnabled()) log.debug("Application.destroy() with query result cache stats: {}", DataManager.get().getResultCache());
+	if (log.isDebugEnabled()) log.debug("Application.destroy() with request coalescing stats: {}", DataManager.get().getRequestCoalescer());
+	if (log.isDebugEnabled()) log.debug("Application.destroy() with origin guard stats: {}", DataManager.get().getOriginGuard());
+	if (log.isDebugEnabled()) log.debug("Application.destroy() with parsed query cache stats: {}", ParsedQueryCache.get());
+	DataManager.get().shutdown();
+	ParallelHashing.shutdown();
     }
     
     /**
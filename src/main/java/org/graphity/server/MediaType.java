@@ -35,6 +35,11 @@ public class MediaType extends javax.ws.rs.core.MediaType
     /** "text/turtle" */
     public final static MediaType TEXT_TURTLE_TYPE = new MediaType("text","turtle");
 
+    /** "application/vnd.graphity.rdf+binary" */
+    public final static String APPLICATION_RDF_BINARY = "application/vnd.graphity.rdf+binary";
+    /** "application/vnd.graphity.rdf+binary" */
+    public final static MediaType APPLICATION_RDF_BINARY_TYPE = new MediaType("application","vnd.graphity.rdf+binary");
+
     /** "application/sparql-results+xml" */
     public final static String APPLICATION_SPARQL_RESULTS_XML = "application/sparql-results+xml";
     /** "application/sparql-results+xml" */
@@ -45,6 +50,21 @@ public class MediaType extends javax.ws.rs.core.MediaType
     /** "application/sparql-results+json" */
     public final static MediaType APPLICATION_SPARQL_RESULTS_JSON_TYPE = new MediaType("application","sparql-results+json");
 
+    /** "application/vnd.graphity.sparql-results+binary" */
+    public final static String APPLICATION_SPARQL_RESULTS_BINARY = "application/vnd.graphity.sparql-results+binary";
+    /** "application/vnd.graphity.sparql-results+binary" */
+    public final static MediaType APPLICATION_SPARQL_RESULTS_BINARY_TYPE = new MediaType("application","vnd.graphity.sparql-results+binary");
+
+    /** "text/csv" */
+    public final static String TEXT_CSV = "text/csv";
+    /** "text/csv" */
+    public final static MediaType TEXT_CSV_TYPE = new MediaType("text","csv");
+
+    /** "text/tab-separated-values" */
+    public final static String TEXT_TAB_SEPARATED_VALUES = "text/tab-separated-values";
+    /** "text/tab-separated-values" */
+    public final static MediaType TEXT_TAB_SEPARATED_VALUES_TYPE = new MediaType("text","tab-separated-values");
+
     /** "application/sparql-query" */
     public final static String APPLICATION_SPARQL_QUERY = "application/sparql-query";
     /** "application/sparql-query" */
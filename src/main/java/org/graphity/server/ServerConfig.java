@@ -0,0 +1,383 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.sparql.engine.http.Service;
+import com.sun.jersey.api.core.ResourceConfig;
+import javax.ws.rs.core.CacheControl;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.graphity.server.util.DataManager;
+import org.graphity.server.util.QueryTemplate;
+import org.graphity.server.util.VariantList;
+import org.graphity.server.vocabulary.GS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typed, immutable server configuration, resolved once from web.xml parameters (<code>gs:</code> properties).
+ * Resources read their settings from this object instead of parsing <code>ResourceConfig</code> properties on
+ * every request. Optional settings that are not configured are null.
+ * The configuration is stored as a <code>ResourceConfig</code> property, so it is available wherever the
+ * config is injected.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see ApplicationBase#init()
+ * @see org.graphity.server.vocabulary.GS
+ */
+public class ServerConfig
+{
+    private static final Logger log = LoggerFactory.getLogger(ServerConfig.class);
+
+    /** Name of the <code>ResourceConfig</code> property holding the resolved configuration */
+    public static final String PROPERTY = ServerConfig.class.getName();
+
+    private final Resource endpoint, graphStore;
+    private final String authUser, authPwd;
+    private final CacheControl cacheControl;
+    private final Long resultLimit;
+    private final boolean streamResults, streamUploads, rawProxy;
+    private final QueryTemplate resourceQuery;
+    private final VariantList variants;
+    private final Integer maxConnections, maxConnectionsPerRoute, asyncPoolSize, maxOriginRequests, parallelHashThreshold, maxResponseBufferSize;
+    private final Long connectionIdleTimeout, originTimeout, resultCacheSize, resultCacheTTL, prettyPrintLimit;
+    private final Boolean unionDefaultGraph;
+    private final Lang graphStoreLang;
+
+    /**
+     * Resolves configuration from webapp config properties.
+     *
+     * @param resourceConfig webapp config
+     */
+    public ServerConfig(ResourceConfig resourceConfig)
+    {
+	if (resourceConfig == null) throw new IllegalArgumentException("ResourceConfig cannot be null");
+
+	endpoint = getResource(resourceConfig, GS.endpoint);
+	graphStore = getResource(resourceConfig, GS.graphStore);
+	authUser = getString(resourceConfig, Service.queryAuthUser.getSymbol());
+	authPwd = getString(resourceConfig, Service.queryAuthPwd.getSymbol());
+	String cacheControlValue = getString(resourceConfig, GS.cacheControl.getURI());
+	cacheControl = cacheControlValue != null ? CacheControl.valueOf(cacheControlValue) : null;
+	resultLimit = getLong(resourceConfig, GS.resultLimit);
+	streamResults = getBoolean(resourceConfig, GS.streamResults);
+	streamUploads = getBoolean(resourceConfig, GS.streamUploads);
+	rawProxy = getBoolean(resourceConfig, GS.rawProxy);
+	String resourceQueryString = getString(resourceConfig, GS.resourceQuery.getURI());
+	resourceQuery = QueryTemplate.create(resourceQueryString != null ? resourceQueryString : QueryTemplate.DESCRIBE);
+	variants = VariantList.forRDF(getLang(resourceConfig, GS.defaultMediaType, Lang.RDFXML));
+	maxConnections = getInteger(resourceConfig, GS.maxConnections);
+	maxConnectionsPerRoute = getInteger(resourceConfig, GS.maxConnectionsPerRoute);
+	connectionIdleTimeout = getLong(resourceConfig, GS.connectionIdleTimeout);
+	asyncPoolSize = getInteger(resourceConfig, GS.asyncPoolSize);
+	maxOriginRequests = getInteger(resourceConfig, GS.maxOriginRequests);
+	originTimeout = getLong(resourceConfig, GS.originTimeout);
+	resultCacheSize = getLong(resourceConfig, GS.resultCacheSize);
+	resultCacheTTL = getLong(resourceConfig, GS.resultCacheTTL);
+	String unionDefaultGraphValue = getString(resourceConfig, GS.unionDefaultGraph.getURI());
+	unionDefaultGraph = unionDefaultGraphValue != null ? Boolean.valueOf(unionDefaultGraphValue) : null;
+	parallelHashThreshold = getInteger(resourceConfig, GS.parallelHashThreshold);
+	graphStoreLang = getLang(resourceConfig, GS.graphStoreMediaType, null);
+	prettyPrintLimit = getLong(resourceConfig, GS.prettyPrintLimit);
+	maxResponseBufferSize = getInteger(resourceConfig, GS.maxResponseBufferSize);
+    }
+
+    /**
+     * Returns configuration of a web application, resolving it on first use.
+     * When resolved, credentials are registered with the data manager for the configured endpoint and graph
+     * store, so that requests do not need to do it.
+     *
+     * @param resourceConfig webapp config
+     * @return resolved configuration
+     */
+    public static ServerConfig get(ResourceConfig resourceConfig)
+    {
+	if (resourceConfig == null) throw new IllegalArgumentException("ResourceConfig cannot be null");
+
+	Object config = resourceConfig.getProperty(PROPERTY);
+	if (config instanceof ServerConfig) return (ServerConfig)config;
+
+	synchronized (resourceConfig)
+	{
+	    config = resourceConfig.getProperty(PROPERTY);
+	    if (config instanceof ServerConfig) return (ServerConfig)config;
+
+	    ServerConfig serverConfig = new ServerConfig(resourceConfig);
+	    if (log.isDebugEnabled()) log.debug("Resolved server configuration: {}", serverConfig);
+	    serverConfig.registerServiceContexts(DataManager.get());
+	    resourceConfig.getProperties().put(PROPERTY, serverConfig);
+	    return serverConfig;
+	}
+    }
+
+    /**
+     * Registers HTTP Basic credentials for the configured endpoint and graph store, if any.
+     *
+     * @param dataManager data manager
+     */
+    public void registerServiceContexts(DataManager dataManager)
+    {
+	if (getAuthUser() == null || getAuthPwd() == null) return;
+
+	if (getEndpoint() != null) dataManager.putAuthContext(getEndpoint().getURI(), getAuthUser(), getAuthPwd());
+	if (getGraphStore() != null) dataManager.putAuthContext(getGraphStore().getURI(), getAuthUser(), getAuthPwd());
+    }
+
+    private static String getString(ResourceConfig resourceConfig, String name)
+    {
+	Object value = resourceConfig.getProperty(name);
+	if (value == null) return null;
+	return value.toString();
+    }
+
+    private static Resource getResource(ResourceConfig resourceConfig, Property property)
+    {
+	String value = getString(resourceConfig, property.getURI());
+	if (value == null) return null;
+	return ResourceFactory.createResource(value);
+    }
+
+    private static Lang getLang(ResourceConfig resourceConfig, Property property, Lang defaultLang)
+    {
+	String value = getString(resourceConfig, property.getURI());
+	if (value == null) return defaultLang;
+
+	Lang lang = RDFLanguages.contentTypeToLang(value);
+	if (lang == null) throw new IllegalArgumentException("Media type '" + value + "' is not a supported RDF language");
+	return lang;
+    }
+
+    private static boolean getBoolean(ResourceConfig resourceConfig, Property property)
+    {
+	return Boolean.parseBoolean(getString(resourceConfig, property.getURI()));
+    }
+
+    private static Integer getInteger(ResourceConfig resourceConfig, Property property)
+    {
+	String value = getString(resourceConfig, property.getURI());
+	if (value == null) return null;
+	return Integer.valueOf(value);
+    }
+
+    private static Long getLong(ResourceConfig resourceConfig, Property property)
+    {
+	String value = getString(resourceConfig, property.getURI());
+	if (value == null) return null;
+	return Long.valueOf(value);
+    }
+
+    /**
+     * Returns SPARQL endpoint (<code>gs:endpoint</code>).
+     *
+     * @return endpoint resource, or null if not configured
+     */
+    public Resource getEndpoint()
+    {
+	return endpoint;
+    }
+
+    /**
+     * Returns Graph Store (<code>gs:graphStore</code>).
+     *
+     * @return graph store resource, or null if not configured
+     */
+    public Resource getGraphStore()
+    {
+	return graphStore;
+    }
+
+    public String getAuthUser()
+    {
+	return authUser;
+    }
+
+    public String getAuthPwd()
+    {
+	return authPwd;
+    }
+
+    /**
+     * Returns <code>Cache-Control</code> header value (<code>gs:cacheControl</code>).
+     * The object is shared and must not be modified.
+     *
+     * @return cache control, or null if not configured
+     */
+    public CacheControl getCacheControl()
+    {
+	return cacheControl;
+    }
+
+    /**
+     * Returns <code>LIMIT</code> of <code>SELECT</code> queries (<code>gs:resultLimit</code>).
+     *
+     * @return result limit, or null if not configured
+     */
+    public Long getResultLimit()
+    {
+	return resultLimit;
+    }
+
+    public boolean isStreamResults()
+    {
+	return streamResults;
+    }
+
+    /**
+     * Returns true if Graph Store uploads are forwarded to the origin as they are read, without being
+     * parsed into memory (<code>gs:streamUploads</code>).
+     *
+     * @return true if upload streaming is enabled
+     * @see org.graphity.server.provider.ModelProvider#setStreamUploads(boolean)
+     */
+    public boolean isStreamUploads()
+    {
+	return streamUploads;
+    }
+
+    public boolean isRawProxy()
+    {
+	return rawProxy;
+    }
+
+    /**
+     * Returns query template of resource descriptions (<code>gs:resourceQuery</code>).
+     *
+     * @return query template, <code>DESCRIBE ?this</code> if not configured
+     */
+    public QueryTemplate getResourceQuery()
+    {
+	return resourceQuery;
+    }
+
+    /**
+     * Returns response variants of RDF representations. The default one (<code>gs:defaultMediaType</code>, or
+     * RDF/XML if not configured) comes first and is selected when the client accepts any media type.
+     *
+     * @return precomputed variant list
+     */
+    public VariantList getVariants()
+    {
+	return variants;
+    }
+
+    public Integer getMaxConnections()
+    {
+	return maxConnections;
+    }
+
+    public Integer getMaxConnectionsPerRoute()
+    {
+	return maxConnectionsPerRoute;
+    }
+
+    public Long getConnectionIdleTimeout()
+    {
+	return connectionIdleTimeout;
+    }
+
+    public Integer getAsyncPoolSize()
+    {
+	return asyncPoolSize;
+    }
+
+    public Integer getMaxOriginRequests()
+    {
+	return maxOriginRequests;
+    }
+
+    public Long getOriginTimeout()
+    {
+	return originTimeout;
+    }
+
+    public Long getResultCacheSize()
+    {
+	return resultCacheSize;
+    }
+
+    public Long getResultCacheTTL()
+    {
+	return resultCacheTTL;
+    }
+
+    public Boolean getUnionDefaultGraph()
+    {
+	return unionDefaultGraph;
+    }
+
+    /**
+     * Returns minimum number of triples or solutions that are hashed in parallel
+     * (<code>gs:parallelHashThreshold</code>). This applies to entity tags of responses that are too large to be
+     * buffered.
+     *
+     * @return threshold, or null if not configured
+     * @see org.graphity.util.ParallelHashing
+     * @see #getMaxResponseBufferSize()
+     */
+    public Integer getParallelHashThreshold()
+    {
+	return parallelHashThreshold;
+    }
+
+    /**
+     * Returns syntax used to send graphs to Graph Stores (<code>gs:graphStoreMediaType</code>), e.g.
+     * <code>application/vnd.graphity.rdf+binary</code> for stores that support binary RDF.
+     *
+     * @return RDF syntax, or null if not configured
+     */
+    public Lang getGraphStoreLang()
+    {
+	return graphStoreLang;
+    }
+
+    /**
+     * Returns maximum number of triples in models that are pretty-printed (<code>gs:prettyPrintLimit</code>).
+     * Larger models are written with streaming writers.
+     *
+     * @return limit, or null if not configured
+     * @see org.graphity.server.provider.ModelProvider#setPrettyPrintLimit(long)
+     */
+    public Long getPrettyPrintLimit()
+    {
+	return prettyPrintLimit;
+    }
+
+    /**
+     * Returns maximum number of bytes of a response that are buffered to compute its entity tag
+     * (<code>gs:maxResponseBufferSize</code>). Larger responses are tagged with the hash of their data and
+     * written straight to the client.
+     *
+     * @return size in bytes, or null if not configured
+     * @see org.graphity.server.util.HashingBuffer#setMaxSize(int)
+     */
+    public Integer getMaxResponseBufferSize()
+    {
+	return maxResponseBufferSize;
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[ServerConfig endpoint: " + getEndpoint() + " graph store: " + getGraphStore() +
+		" result limit: " + getResultLimit() + " stream results: " + isStreamResults() +
+		" raw proxy: " + isRawProxy() + "]";
+    }
+
+}
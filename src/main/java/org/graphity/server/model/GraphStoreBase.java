@@ -19,21 +19,21 @@ package org.graphity.server.model;
 import com.hp.hpl.jena.datatypes.RDFDatatype;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.rdf.model.*;
-import com.hp.hpl.jena.sparql.engine.http.Service;
 import com.sun.jersey.api.core.ResourceConfig;
+import java.io.IOException;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import javax.naming.ConfigurationException;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Response.Status;
-import org.apache.jena.atlas.web.ContentType;
-import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFLanguages;
+import org.graphity.query.StreamingGraph;
+import org.graphity.server.ServerConfig;
 import org.graphity.server.util.DataManager;
-import org.graphity.server.vocabulary.GS;
+import org.graphity.server.util.UploadGraph;
+import org.graphity.server.util.Validated;
+import org.graphity.server.util.VariantList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,33 +88,86 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
     }
     
     /**
-     * Builds a list of acceptable response variants/
+     * Returns response for a given RDF model loaded together with origin validators.
+     * 
+     * @param model validated RDF model
+     * @return response object
+     */
+    public Response getResponse(Validated<Model> model)
+    {
+        return ModelResponse.fromRequest(getRequest()).
+                getResponseBuilder(model, getVariants()).
+                build();
+    }
+    
+    /**
+     * Returns list of acceptable response variants, precomputed from the configuration.
      * 
      * @return supported variants
+     * @see org.graphity.server.ServerConfig#getVariants()
      */
     public List<Variant> getVariants()
     {
-        List<Variant> variants = new ArrayList<>();
-        Iterator<Lang> it = RDFLanguages.getRegisteredLanguages().iterator();
-        
-        // RDF/XML as the default one - the first one gets selected by selectVariant()
-        variants.add(new Variant(new MediaType(Lang.RDFXML.getContentType().getType(),
-                Lang.RDFXML.getContentType().getSubType()),
-            null, null));
+        return getConfig().getVariants();
+    }
 
-        while (it.hasNext())
-        {
-            Lang lang = it.next();
-            if (!lang.equals(Lang.RDFNULL) && !lang.equals(Lang.RDFXML))
-            {
-                ContentType ct = lang.getContentType();
-                //List<String> altTypes = lang.getAltContentTypes();
-                MediaType mediaType = new MediaType(ct.getType(), ct.getSubType()); // MediaType.valueOf(ct.getContentType()
-                variants.add(new Variant(mediaType, null, null));
-            }
-        }
-        
-        return variants;
+    /**
+     * Returns response builder that proxies the origin response of a graph retrieval.
+     * The graph is requested from the origin with the media type negotiated with the client. If the origin
+     * responds with a compatible media type (or an error), its response is forwarded byte-for-byte. Otherwise
+     * the graph is parsed and converted to the negotiated media type.
+     * 
+     * @param graphURI named graph URI or null, if the default graph is retrieved
+     * @return response builder
+     */
+    public Response.ResponseBuilder getProxyResponseBuilder(String graphURI)
+    {
+	Variant variant = VariantList.select(getRequest(), getVariants());
+	if (variant == null)
+	{
+	    if (log.isTraceEnabled()) log.trace("Requested Variant is not on the list of acceptable Response Variants: {}", getVariants());
+	    return Response.notAcceptable(getVariants());
+	}
+
+	final String graphStoreURI = getOrigin().getURI();
+	final String proxiedGraphURI = graphURI;
+	final String acceptHeader = variant.getMediaType().toString();
+	ProxyResponse origin = DataManager.get().getOriginGuard().execute(new Callable<ProxyResponse>()
+	{
+	    @Override
+	    public ProxyResponse call()
+	    {
+		return new ProxyResponse(DataManager.get().proxyGraph(graphStoreURI, proxiedGraphURI, acceptHeader));
+	    }
+	});
+	if (!origin.isSuccess()) return origin.getResponseBuilder();
+	if (origin.isCompatible(variant.getMediaType())) return origin.getResponseBuilder(variant.getMediaType());
+
+	if (log.isDebugEnabled()) log.debug("Origin response MediaType {} does not match Variant {}, converting", origin.getMediaType(), variant);
+	try
+	{
+	    return Response.ok(new StreamingGraph(origin.getStream()), variant);
+	}
+	catch (IOException | RuntimeException ex)
+	{
+	    origin.close();
+	    if (log.isErrorEnabled()) log.error("Could not convert origin response", ex);
+	    throw new WebApplicationException(ex, 502); // Bad Gateway
+	}
+    }
+
+    /**
+     * Returns true if origin responses are forwarded to the client without being parsed, whenever conversion
+     * is not needed. Uses <code>gs:rawProxy</code> parameter value from web.xml.
+     * <code>HEAD</code> responses are never proxied, since their entity is not written and would not be closed.
+     * 
+     * @return true if raw proxy mode is enabled
+     */
+    public boolean isRawProxy()
+    {
+	if (getRequest().getMethod().equals("HEAD")) return false;
+
+	return getConfig().isRawProxy();
     }
 
      /**
@@ -132,6 +185,7 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
      /**
      * Returns Graph Store for supplied webapp configuration.
      * Uses <code>gs:graphStore</code> parameter value from web.xml as graph store URI.
+     * Its credentials are registered once, when the configuration is resolved.
      * 
      * @param resourceConfig webapp config
      * @return graph store resource
@@ -140,15 +194,10 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
     {
         try
         {
-            Object storeUri = resourceConfig.getProperty(GS.graphStore.getURI());
-            if (storeUri == null) throw new ConfigurationException("Graph Store not configured (gs:graphStore not set in web.xml)");
+            Resource graphStore = ServerConfig.get(resourceConfig).getGraphStore();
+            if (graphStore == null) throw new ConfigurationException("Graph Store not configured (gs:graphStore not set in web.xml)");
 
-            String authUser = (String)resourceConfig.getProperty(Service.queryAuthUser.getSymbol());
-            String authPwd = (String)resourceConfig.getProperty(Service.queryAuthPwd.getSymbol());
-            if (authUser != null && authPwd != null)
-                DataManager.get().putAuthContext(storeUri.toString(), authUser, authPwd);
-
-            return ResourceFactory.createResource(storeUri.toString());
+            return graphStore;
         }
         catch (ConfigurationException ex)
         {
@@ -163,6 +212,12 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
     {
 	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
 
+	if (isRawProxy())
+	{
+	    if (defaultGraph) return getProxyResponseBuilder(null).build();
+	    return getProxyResponseBuilder(graphUri.toString()).build();
+	}
+
 	if (defaultGraph)
 	{
 	    Model model = getModel();
@@ -171,15 +226,16 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
 	}
 	else
 	{
-	    Model model = getModel(graphUri.toString());
-	    if (model == null)
+	    Validated<Model> model = getValidatedModel(graphUri.toString(), Validated.getIfNoneMatch(getRequest()));
+	    if (model.isNotModified()) return getResponse(model);
+	    if (model.getResult() == null)
 	    {
 		if (log.isDebugEnabled()) log.debug("GET Graph Store named graph with URI: {} not found", graphUri);
 		return Response.status(Status.NOT_FOUND).build();
 	    }
 	    else
 	    {
-		if (log.isDebugEnabled()) log.debug("GET Graph Store named graph with URI: {} found, returning Model of size(): {}", graphUri, model.size());
+		if (log.isDebugEnabled()) log.debug("GET Graph Store named graph with URI: {} found, returning Model of size(): {}", graphUri, model.getResult().size());
 		return getResponse(model);
 	    }
 	}
@@ -190,9 +246,15 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
     public Response post(Model model, @QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
     {
 	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
-	if (log.isDebugEnabled()) log.debug("POST Graph Store request with RDF payload: {} payload size(): {}", model, model.size());
-	
-	if (model.isEmpty()) return Response.noContent().build();
+	if (isUpload(model))
+	{
+	    if (log.isDebugEnabled()) log.debug("POST Graph Store request with streamed RDF payload: {}", model.getGraph());
+	}
+	else
+	{
+	    if (log.isDebugEnabled()) log.debug("POST Graph Store request with RDF payload: {} payload size(): {}", model, model.size());
+	    if (model.isEmpty()) return Response.noContent().build();
+	}
 	
 	if (defaultGraph)
 	{
@@ -218,7 +280,11 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
     public Response put(Model model, @QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
     {
 	if (!defaultGraph && graphUri == null) throw new WebApplicationException(Status.BAD_REQUEST);
-	if (log.isDebugEnabled()) log.debug("PUT Graph Store request with RDF payload: {} payload size(): {}", model, model.size());
+	if (log.isDebugEnabled())
+	{
+	    if (isUpload(model)) log.debug("PUT Graph Store request with streamed RDF payload: {}", model.getGraph());
+	    else log.debug("PUT Graph Store request with RDF payload: {} payload size(): {}", model, model.size());
+	}
 	
 	if (defaultGraph)
 	{
@@ -238,6 +304,19 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
 	}	
     }
 
+    /**
+     * Returns true if the payload model is an unparsed upload, which is forwarded to the origin as a stream.
+     * Its size is not known, so empty uploads are forwarded as well.
+     * 
+     * @param model RDF payload model
+     * @return true if the model is backed by an unconsumed upload
+     * @see org.graphity.server.provider.ModelProvider#setStreamUploads(boolean)
+     */
+    public boolean isUpload(Model model)
+    {
+	return model.getGraph() instanceof UploadGraph && !((UploadGraph)model.getGraph()).isConsumed();
+    }
+
     @DELETE
     @Override
     public Response delete(@QueryParam("default") @DefaultValue("false") Boolean defaultGraph, @QueryParam("graph") URI graphUri)
@@ -293,6 +372,16 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
         return resourceConfig;
     }
 
+    /**
+     * Returns server configuration resolved from this web application's parameters.
+     * 
+     * @return server configuration
+     */
+    public ServerConfig getConfig()
+    {
+        return ServerConfig.get(getResourceConfig());
+    }
+
     @Override
     public AnonId getId()
     {
@@ -576,51 +665,142 @@ public class GraphStoreBase implements GraphStore, HTTPProxy
     }
 
     @Override
-    public Model getModel(String uri)
+    public Model getModel(final String uri)
     {
-        return DataManager.get().getModel(getOrigin().getURI(), uri);
+	final String graphStoreURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<Model>()
+	{
+	    @Override
+	    public Model call()
+	    {
+		return DataManager.get().getModel(graphStoreURI, uri);
+	    }
+	});
+    }
+
+    /**
+     * Loads named graph from the origin Graph Store together with the validators of the origin response.
+     * 
+     * @param uri named graph URI
+     * @param ifNoneMatch <code>If-None-Match</code> value forwarded to the origin, or null
+     * @return validated RDF model, with null result if the graph is not found or not modified
+     * @see DataManager#getValidatedModel(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public Validated<Model> getValidatedModel(final String uri, final String ifNoneMatch)
+    {
+	final String graphStoreURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<Validated<Model>>()
+	{
+	    @Override
+	    public Validated<Model> call()
+	    {
+		return DataManager.get().getValidatedModel(graphStoreURI, uri, ifNoneMatch);
+	    }
+	});
     }
 
     @Override
-    public boolean containsModel(String uri)
+    public boolean containsModel(final String uri)
     {
-        return DataManager.get().containsModel(getOrigin().getURI(), uri);
+	final String graphStoreURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<Boolean>()
+	{
+	    @Override
+	    public Boolean call()
+	    {
+		return DataManager.get().containsModel(graphStoreURI, uri);
+	    }
+	});
     }
 
     @Override
-    public void putModel(Model model)
+    public void putModel(final Model model)
     {
-        DataManager.get().putModel(getOrigin().getURI(), model);
+	final String graphStoreURI = getOrigin().getURI();
+	DataManager.get().getOriginGuard().executeWrite(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		DataManager.get().putModel(graphStoreURI, model);
+		return null;
+	    }
+	});
     }
 
     @Override
-    public void putModel(String uri, Model model)
+    public void putModel(final String uri, final Model model)
     {
-        DataManager.get().putModel(getOrigin().getURI(), uri, model);
+	final String graphStoreURI = getOrigin().getURI();
+	DataManager.get().getOriginGuard().executeWrite(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		DataManager.get().putModel(graphStoreURI, uri, model);
+		return null;
+	    }
+	});
     }
 
     @Override
     public void deleteDefault()
     {
-        DataManager.get().deleteDefault(getOrigin().getURI());
+	final String graphStoreURI = getOrigin().getURI();
+	DataManager.get().getOriginGuard().executeWrite(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		DataManager.get().deleteDefault(graphStoreURI);
+		return null;
+	    }
+	});
     }
 
     @Override
-    public void deleteModel(String uri)
+    public void deleteModel(final String uri)
     {
-        DataManager.get().deleteModel(getOrigin().getURI(), uri);
+	final String graphStoreURI = getOrigin().getURI();
+	DataManager.get().getOriginGuard().executeWrite(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		DataManager.get().deleteModel(graphStoreURI, uri);
+		return null;
+	    }
+	});
     }
 
     @Override
-    public void add(Model model)
+    public void add(final Model model)
     {
-        DataManager.get().addModel(getOrigin().getURI(), model);
+	final String graphStoreURI = getOrigin().getURI();
+	DataManager.get().getOriginGuard().executeWrite(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		DataManager.get().addModel(graphStoreURI, model);
+		return null;
+	    }
+	});
     }
 
     @Override
-    public void add(String uri, Model model)
+    public void add(final String uri, final Model model)
     {
-        DataManager.get().addModel(getOrigin().getURI(), uri, model);
+	final String graphStoreURI = getOrigin().getURI();
+	DataManager.get().getOriginGuard().executeWrite(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		DataManager.get().addModel(graphStoreURI, uri, model);
+		return null;
+	    }
+	});
     }
     
 }
\ No newline at end of file
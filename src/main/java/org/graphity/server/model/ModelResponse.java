@@ -19,6 +19,7 @@ package org.graphity.server.model;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import javax.ws.rs.core.EntityTag;
@@ -29,6 +30,11 @@ import javax.ws.rs.core.Variant;
 import org.apache.jena.atlas.web.ContentType;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFLanguages;
+import org.graphity.query.StreamingGraph;
+import org.graphity.server.provider.ModelProvider;
+import org.graphity.server.util.HashingBuffer;
+import org.graphity.server.util.Validated;
+import org.graphity.server.util.VariantList;
 import org.graphity.util.ModelUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +48,8 @@ public class ModelResponse // extends ResponseBuilder
 {
     private static final Logger log = LoggerFactory.getLogger(ModelResponse.class);
 
+    private static final ModelProvider MODEL_WRITER = new ModelProvider();
+
     private final Request request;
     //private final ResponseBuilder responseBuilder;
     
@@ -87,12 +95,148 @@ public class ModelResponse // extends ResponseBuilder
     
     public Response.ResponseBuilder getResponseBuilder(Model model, List<Variant> variants)
     {
-	return getResponseBuilder(getEntityTag(model), model, variants);
+	return getResponseBuilder(model, null, variants);
+    }
+
+    /**
+     * Builds response of an RDF model, tagged with the hash of its representation.
+     * The model is serialized in the selected syntax into a pooled buffer, and the bytes are hashed in the same
+     * pass. Preconditions are evaluated against that hash, and either the buffer or <code>304 Not Modified</code>
+     * is sent, so the model is traversed only once.
+     * If the representation does not fit into the buffer, the model is tagged with its hash instead and written
+     * straight to the response.
+     * 
+     * @param model RDF model
+     * @param lastModified last modification date, or null if unknown
+     * @param variants supported variants
+     * @return response builder
+     */
+    public Response.ResponseBuilder getResponseBuilder(Model model, Date lastModified, List<Variant> variants)
+    {
+	Variant variant = VariantList.select(getRequest(), variants);
+	if (variant == null)
+	{
+	    if (log.isTraceEnabled()) log.trace("Requested Variant is not on the list of acceptable Response Variants: {}", variants);
+	    return Response.notAcceptable(variants);
+	}
+
+	Lang lang = RDFLanguages.contentTypeToLang(variant.getMediaType().toString());
+	if (lang == null) return getResponseBuilder(getEntityTag(model), lastModified, model, variants);
+
+	HashingBuffer buffer = HashingBuffer.acquire();
+	try
+	{
+	    MODEL_WRITER.write(model, lang, buffer);
+	}
+	catch (HashingBuffer.LimitExceededException ex)
+	{
+	    buffer.release();
+	    if (log.isDebugEnabled()) log.debug("Model of {} triples is too large to buffer, streaming it", model.size());
+	    return getResponseBuilder(getEntityTag(model), lastModified, model, variants);
+	}
+	catch (RuntimeException ex)
+	{
+	    buffer.release();
+	    throw ex;
+	}
+	return getResponseBuilder(buffer, lastModified, variant);
+    }
+
+    /**
+     * Builds response of a serialized representation, tagged with the hash of its bytes.
+     * The buffer is released if the response has no entity.
+     * 
+     * @param buffer buffer with serialized representation
+     * @param lastModified last modification date, or null if unknown
+     * @param variant selected variant
+     * @return response builder
+     * @see org.graphity.server.provider.HashingBufferWriter
+     */
+    public Response.ResponseBuilder getResponseBuilder(HashingBuffer buffer, Date lastModified, Variant variant)
+    {
+	EntityTag entityTag = new EntityTag(Long.toHexString(buffer.getHash()));
+	Response.ResponseBuilder rb;
+	if (lastModified != null) rb = getRequest().evaluatePreconditions(lastModified, entityTag);
+	else rb = getRequest().evaluatePreconditions(entityTag);
+	if (rb != null)
+	{
+	    if (log.isTraceEnabled()) log.trace("Resource not modified, skipping Response generation");
+	    buffer.release();
+	    return rb;
+	}
+
+	if (log.isTraceEnabled()) log.trace("Generating buffered Response with Variant: {} and EntityTag: {}", variant, entityTag);
+	return Response.ok(buffer, variant).
+		tag(entityTag).
+		lastModified(lastModified);
+    }
+
+    /**
+     * Builds response of a streamed RDF graph.
+     * The graph is written while it is being parsed, so no entity tag is generated and preconditions are not
+     * evaluated. If no variant is acceptable, the graph is closed.
+     * 
+     * @param graph unparsed RDF graph
+     * @param variants supported variants
+     * @return response builder
+     */
+    public Response.ResponseBuilder getResponseBuilder(StreamingGraph graph, List<Variant> variants)
+    {
+	Variant variant = VariantList.select(getRequest(), variants);
+	if (variant == null)
+	{
+	    if (log.isTraceEnabled()) log.trace("Requested Variant is not on the list of acceptable Response Variants: {}", variants);
+	    graph.close();
+	    return Response.notAcceptable(variants);
+	}
+
+	if (log.isTraceEnabled()) log.trace("Generating streaming RDF Response with Variant: {}", variant);
+	return Response.ok(graph, variant);
+    }
+
+    /**
+     * Builds response of an RDF model loaded together with origin validators.
+     * The entity tag is derived from the origin <code>ETag</code> if there is one, so the model does not need to
+     * be hashed. Otherwise the model is buffered and hashed while it is serialized. If the origin responded to a
+     * conditional request with <code>304 Not Modified</code>, so does this response.
+     * 
+     * @param model validated RDF model
+     * @param variants supported variants
+     * @return response builder
+     */
+    public Response.ResponseBuilder getResponseBuilder(Validated<Model> model, List<Variant> variants)
+    {
+	if (model.isNotModified())
+	{
+	    if (log.isTraceEnabled()) log.trace("Origin resource not modified, skipping Response generation");
+	    return Response.notModified(model.getEntityTag()).
+		    lastModified(model.getLastModified());
+	}
+
+	EntityTag entityTag = model.getEntityTag();
+	if (entityTag == null) return getResponseBuilder(model.getResult(), model.getLastModified(), variants);
+	return getResponseBuilder(entityTag, model.getLastModified(), model.getResult(), variants);
     }
 
     public Response.ResponseBuilder getResponseBuilder(EntityTag entityTag, Object entity, List<Variant> variants)
+    {
+	return getResponseBuilder(entityTag, null, entity, variants);
+    }
+
+    /**
+     * Builds response of an entity, evaluating request preconditions against its validators.
+     * 
+     * @param entityTag entity tag
+     * @param lastModified last modification date, or null if unknown
+     * @param entity response entity
+     * @param variants supported variants
+     * @return response builder
+     */
+    public Response.ResponseBuilder getResponseBuilder(EntityTag entityTag, Date lastModified, Object entity, List<Variant> variants)
     {	
-	Response.ResponseBuilder rb = getRequest().evaluatePreconditions(entityTag);
+	Response.ResponseBuilder rb;
+	if (lastModified != null) rb = getRequest().evaluatePreconditions(lastModified, entityTag);
+	else rb = getRequest().evaluatePreconditions(entityTag);
 	if (rb != null)
 	{
 	    if (log.isTraceEnabled()) log.trace("Resource not modified, skipping Response generation");
@@ -100,7 +244,7 @@ public class ModelResponse // extends ResponseBuilder
 	}
 	else
 	{
-	    Variant variant = getRequest().selectVariant(variants);
+	    Variant variant = VariantList.select(getRequest(), variants);
 	    if (variant == null)
 	    {
 		if (log.isTraceEnabled()) log.trace("Requested Variant {} is not on the list of acceptable Response Variants: {}", variant, variants);
@@ -110,7 +254,8 @@ public class ModelResponse // extends ResponseBuilder
 	    {
 		if (log.isTraceEnabled()) log.trace("Generating RDF Response with Variant: {} and EntityTag: {}", variant, entityTag);
 		return Response.ok(entity, variant).
-			tag(entityTag);
+			tag(entityTag).
+			lastModified(lastModified);
 	    }
 	}	
     }
@@ -143,6 +288,14 @@ public class ModelResponse // extends ResponseBuilder
     }
     */
     
+    /**
+     * Returns entity tag of a model, hashed in parallel if it is large. Used for representations that are
+     * streamed instead of buffered.
+     *
+     * @param model RDF model
+     * @return entity tag
+     * @see org.graphity.util.ParallelHashing
+     */
     public EntityTag getEntityTag(Model model)
     {
         return new EntityTag(Long.toHexString(ModelUtils.hashModel(model)));
@@ -0,0 +1,293 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.model;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.atlas.web.TypedInputStream;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Origin response that is forwarded to the client byte-for-byte.
+ * Status, media type and cache-related headers of the origin are copied to the response, and the body is
+ * transferred through a reusable per-thread buffer without being parsed. The origin request must not ask for
+ * compression (see {@link org.graphity.server.util.DataManager#getRawHttpClient()}), since the forwarded
+ * validators belong to the bytes the origin sent.
+ * If the origin media type does not match the negotiated one, the body can instead be read as a typed stream
+ * and converted.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see <a href="https://jersey.java.net/nonav/apidocs/1.16/jersey/javax/ws/rs/core/StreamingOutput.html">JAX-RS StreamingOutput</a>
+ */
+public class ProxyResponse implements StreamingOutput, Closeable
+{
+    private static final Logger log = LoggerFactory.getLogger(ProxyResponse.class);
+
+    /** Size of the transfer buffer in bytes */
+    public static final int BUFFER_SIZE = 32 * 1024;
+
+    /** Origin headers that are forwarded to the client */
+    public static final List<String> FORWARDED_HEADERS = Collections.unmodifiableList(Arrays.asList(HttpHeaders.ETAG,
+	    HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL, HttpHeaders.EXPIRES, HttpHeaders.CONTENT_LANGUAGE));
+
+    private static final ThreadLocal<byte[]> buffer = new ThreadLocal<byte[]>()
+    {
+	@Override
+	protected byte[] initialValue()
+	{
+	    return new byte[BUFFER_SIZE];
+	}
+    };
+
+    private final HttpResponse response;
+    private volatile boolean complete = false;
+    private boolean closed = false;
+
+    /**
+     * Wraps origin response.
+     *
+     * @param response HTTP response of the origin
+     */
+    public ProxyResponse(HttpResponse response)
+    {
+	if (response == null) throw new IllegalArgumentException("HttpResponse cannot be null");
+	this.response = response;
+    }
+
+    /**
+     * Returns status code of the origin response.
+     *
+     * @return status code
+     */
+    public int getStatus()
+    {
+	return getResponse().getStatusLine().getStatusCode();
+    }
+
+    /**
+     * Returns true if the origin response is successful (2xx).
+     *
+     * @return true if successful
+     */
+    public boolean isSuccess()
+    {
+	return getStatus() >= 200 && getStatus() < 300;
+    }
+
+    /**
+     * Returns media type of the origin response body, or null if there is none.
+     *
+     * @return media type or null
+     */
+    public MediaType getMediaType()
+    {
+	HttpEntity entity = getResponse().getEntity();
+	if (entity == null || entity.getContentType() == null) return null;
+
+	return MediaType.valueOf(entity.getContentType().getValue());
+    }
+
+    /**
+     * Returns true if the origin response body can be sent as the given media type without conversion.
+     * This is the case if the media types match, or if both denote the same RDF syntax.
+     *
+     * @param mediaType negotiated media type
+     * @return true if the body can be forwarded as it is
+     */
+    public boolean isCompatible(MediaType mediaType)
+    {
+	if (mediaType == null) throw new IllegalArgumentException("MediaType cannot be null");
+
+	MediaType originType = getMediaType();
+	if (originType == null) return false;
+	if (originType.getType().equalsIgnoreCase(mediaType.getType()) &&
+		originType.getSubtype().equalsIgnoreCase(mediaType.getSubtype()))
+	    return true;
+
+	Lang originLang = RDFLanguages.contentTypeToLang(originType.getType() + "/" + originType.getSubtype());
+	Lang lang = RDFLanguages.contentTypeToLang(mediaType.getType() + "/" + mediaType.getSubtype());
+	return originLang != null && lang != null && RDFLanguages.sameLang(originLang, lang);
+    }
+
+    /**
+     * Returns response builder that forwards the origin response with its own media type.
+     *
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder()
+    {
+	return getResponseBuilder(getMediaType());
+    }
+
+    /**
+     * Returns response builder that forwards the origin response.
+     *
+     * @param mediaType media type of the response (must be compatible with the origin body)
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder(MediaType mediaType)
+    {
+	ResponseBuilder rb = Response.status(getStatus());
+
+	for (String name : FORWARDED_HEADERS)
+	{
+	    Header header = getResponse().getFirstHeader(name);
+	    if (header != null) rb.header(name, header.getValue());
+	}
+
+	if (getResponse().getEntity() == null)
+	{
+	    close();
+	    return rb;
+	}
+
+	if (log.isTraceEnabled()) log.trace("Forwarding origin response with status: {} and MediaType: {}", getStatus(), mediaType);
+	return rb.entity(this).type(mediaType);
+    }
+
+    /**
+     * Returns origin response body as a typed stream, so that it can be parsed.
+     * Closing the stream releases the connection like {@link #close()}, aborting it if the body was not read to
+     * the end.
+     *
+     * @return typed stream
+     * @throws IOException if the body cannot be read
+     */
+    public TypedInputStream getStream() throws IOException
+    {
+	HttpEntity entity = getResponse().getEntity();
+	if (entity == null) throw new IOException("Origin response has no body");
+
+	InputStream in = new FilterInputStream(entity.getContent())
+	{
+	    @Override
+	    public int read() throws IOException
+	    {
+		return onRead(super.read());
+	    }
+
+	    @Override
+	    public int read(byte[] bytes, int offset, int length) throws IOException
+	    {
+		return onRead(super.read(bytes, offset, length));
+	    }
+
+	    @Override
+	    public void close()
+	    {
+		ProxyResponse.this.close();
+	    }
+	};
+	return new TypedInputStream(in, entity.getContentType() == null ? null : entity.getContentType().getValue());
+    }
+
+    private int onRead(int result)
+    {
+	if (result == -1) complete = true;
+	return result;
+    }
+
+    /**
+     * Copies origin response body to the client.
+     * The output is flushed whenever no more origin bytes are immediately available, so that the client
+     * receives data as soon as the origin sends it.
+     *
+     * @param output response stream
+     * @throws IOException if transfer fails
+     * @throws WebApplicationException
+     */
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException
+    {
+	try
+	{
+	    InputStream in = getResponse().getEntity().getContent();
+	    byte[] bytes = buffer.get();
+	    long count = 0;
+	    int read;
+
+	    while ((read = in.read(bytes)) != -1)
+	    {
+		output.write(bytes, 0, read);
+		count += read;
+		if (in.available() == 0) output.flush();
+	    }
+
+	    complete = true;
+	    if (log.isTraceEnabled()) log.trace("Forwarded {} bytes of origin response", count);
+	}
+	finally
+	{
+	    close();
+	}
+    }
+
+    /**
+     * Releases the connection of the origin response.
+     * If the body was read to the end, the connection is returned to the pool. Otherwise (e.g. the client went
+     * away, or the response was never written) the connection is aborted, instead of pulling the rest of a
+     * possibly very large body from the origin only to discard it.
+     * Can be called more than once.
+     */
+    @Override
+    public void close()
+    {
+	if (closed) return;
+	closed = true;
+
+	HttpEntity entity = getResponse().getEntity();
+	try
+	{
+	    if (!complete && entity instanceof ConnectionReleaseTrigger)
+	    {
+		if (log.isDebugEnabled()) log.debug("Origin response was not read to the end, aborting its connection");
+		((ConnectionReleaseTrigger)entity).abortConnection();
+	    }
+	    else EntityUtils.consume(entity);
+	}
+	catch (IOException ex)
+	{
+	    if (log.isWarnEnabled()) log.warn("Could not release origin response", ex);
+	}
+    }
+
+    public HttpResponse getResponse()
+    {
+	return response;
+    }
+
+}
@@ -17,7 +17,6 @@
 package org.graphity.server.model;
 
 import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.ResourceFactory;
@@ -30,6 +29,9 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import org.graphity.query.StreamingGraph;
+import org.graphity.server.util.QueryTemplate;
+import org.graphity.server.util.Validated;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -95,6 +97,7 @@ public class QueriedResourceBase extends LDPResourceBase implements QueriedResou
     
     /**
      * Handles GET request and returns response with RDF description of this resource.
+     * If <code>gs:streamResults</code> is enabled, the description is streamed from the SPARQL endpoint.
      * 
      * @return response with RDF description
      */
@@ -102,17 +105,58 @@ public class QueriedResourceBase extends LDPResourceBase implements QueriedResou
     @Override
     public Response get()
     {
-	Model description = describe();
+	if (isStreamResults())
+	{
+	    StreamingGraph description = getEndpoint().streamModel(getQuery());
+	    description.setNotFoundIfEmpty(true); // 404 Not Found is sent by the writer if no triples arrive
+	    if (log.isDebugEnabled()) log.debug("Returning @GET Response with streamed {} description", description.getLang());
+	    return ModelResponse.fromRequest(getRequest()).
+		    getResponseBuilder(description, getVariants()).
+		    cacheControl(getCacheControl()).
+		    build();
+	}
 
-	if (description.isEmpty())
+	Validated<Model> description = describe(Validated.getIfNoneMatch(getRequest()));
+	if (description.isNotModified()) return getResponseBuilder(description).build();
+
+	if (description.getResult().isEmpty())
 	{
 	    if (log.isDebugEnabled()) log.debug("DESCRIBE Model is empty; returning 404 Not Found");
 	    throw new WebApplicationException(Response.Status.NOT_FOUND);
 	}
-	if (log.isDebugEnabled()) log.debug("Returning @GET Response with {} statements in Model", description.size());
-	return getResponse(description);
+	if (log.isDebugEnabled()) log.debug("Returning @GET Response with {} statements in Model", description.getResult().size());
+	return getResponseBuilder(description).build();
+    }
+
+    /**
+     * Returns RDF description of this resource together with the validators of the origin response.
+     * If the endpoint is not a {@link SPARQLEndpointBase}, the description carries no validators.
+     * 
+     * @param ifNoneMatch <code>If-None-Match</code> value forwarded to the origin, or null
+     * @return validated RDF description
+     */
+    public Validated<Model> describe(String ifNoneMatch)
+    {
+	if (getEndpoint() instanceof SPARQLEndpointBase)
+	    return ((SPARQLEndpointBase)getEndpoint()).loadValidatedModel(getQuery(), ifNoneMatch);
+
+	return new Validated<>(describe());
     }
     
+    /**
+     * Returns true if the description is streamed to the client instead of being loaded into a model.
+     * Uses <code>gs:streamResults</code> parameter value from web.xml.
+     * <code>HEAD</code> responses are never streamed, since their entity is not written and would not be closed.
+     * 
+     * @return true if streaming is enabled
+     */
+    public boolean isStreamResults()
+    {
+	if (getRequest().getMethod().equals("HEAD")) return false;
+
+	return getConfig().isStreamResults();
+    }
+
     /**
      * Returns query used to retrieve RDF description of this resource
      * 
@@ -125,14 +169,37 @@ public class QueriedResourceBase extends LDPResourceBase implements QueriedResou
     }
     
     /**
-     * Given a resource URI, returns query that can be used to retrieve its RDF description
+     * Given a resource URI, returns query that can be used to retrieve its RDF description.
+     * The URI is bound to the query template, which is not parsed again.
      * 
      * @param uri resource URI
      * @return query object
+     * @throws WebApplicationException with status 400 if the URI cannot be bound
+     * @see getQueryTemplate()
      */
     public Query getQuery(String uri)
     {
-	return QueryFactory.create("DESCRIBE <" + uri + ">");
+	try
+	{
+	    return getQueryTemplate().bind(uri);
+	}
+	catch (IllegalArgumentException ex)
+	{
+	    if (log.isDebugEnabled()) log.debug("Cannot bind resource URI to query template: {}", ex.getMessage());
+	    throw new WebApplicationException(ex, Response.Status.BAD_REQUEST);
+	}
+    }
+
+    /**
+     * Returns query template used to retrieve RDF descriptions.
+     * Uses <code>gs:resourceQuery</code> parameter value from web.xml, if present. Otherwise the template is
+     * <code>DESCRIBE ?this</code>. The template is parsed once, when the configuration is resolved.
+     * 
+     * @return query template
+     */
+    public QueryTemplate getQueryTemplate()
+    {
+	return getConfig().getResourceQuery();
     }
 
     /**
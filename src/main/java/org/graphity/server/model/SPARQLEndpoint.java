@@ -20,6 +20,7 @@ import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.ResultSetRewindable;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.update.UpdateRequest;
+import org.graphity.query.StreamingGraph;
 
 /**
  * Extended SPARQL endpoint interface, includes query and update as well as JAX-RS helper methods.
@@ -44,6 +45,17 @@ public interface SPARQLEndpoint extends SPARQLQueryEndpoint, SPARQLUpdateEndpoin
      */
     Model loadModel(Query query);
 
+    /**
+     * Streams RDF graph from the endpoint by executing a SPARQL query (<code>DESCRIBE</code> or <code>CONSTRUCT</code>).
+     * The returned graph is not parsed yet and must be closed after it has been consumed.
+     * 
+     * @param query SPARQL query
+     * @return unparsed RDF graph
+     * @see <a href="http://www.w3.org/TR/2013/REC-sparql11-query-20130321/#describe">DESCRIBE</a>
+     * @see <a href="http://www.w3.org/TR/2013/REC-sparql11-query-20130321/#construct">CONSTRUCT</a>
+     */
+    StreamingGraph streamModel(Query query);
+
     /**
      * Loads RDF model from the endpoint by executing a SPARQL query (<code>DESCRIBE</code>)
      * 
@@ -20,24 +20,30 @@ import com.hp.hpl.jena.datatypes.RDFDatatype;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
 import com.hp.hpl.jena.query.ResultSetRewindable;
 import com.hp.hpl.jena.rdf.model.*;
-import com.hp.hpl.jena.sparql.engine.http.Service;
 import com.hp.hpl.jena.update.UpdateRequest;
 import com.sun.jersey.api.core.ResourceConfig;
+import java.io.IOException;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 import javax.naming.ConfigurationException;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.*;
-import org.apache.jena.atlas.web.ContentType;
-import org.apache.jena.riot.Lang;
-import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.atlas.web.TypedInputStream;
+import org.apache.jena.riot.WebContent;
+import org.graphity.query.StreamingGraph;
+import org.graphity.query.StreamingResultSet;
+import org.graphity.server.ServerConfig;
+import org.graphity.server.provider.ResultSetWriter;
 import org.graphity.server.util.DataManager;
-import org.graphity.server.vocabulary.GS;
+import org.graphity.server.util.HashingBuffer;
+import org.graphity.server.util.Validated;
+import org.graphity.server.util.VariantList;
 import org.graphity.util.ResultSetUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,11 +65,16 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
      * 
      * @see <a href="http://jena.apache.org/documentation/javadoc/arq/com/hp/hpl/jena/query/ResultSetRewindable.html">Jena ResultSetRewindable</a>
      */
-    public static final List<Variant> RESULT_SET_VARIANTS = Variant.VariantListBuilder.newInstance().
+    public static final List<Variant> RESULT_SET_VARIANTS = new VariantList(Variant.VariantListBuilder.newInstance().
 			mediaTypes(org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_XML_TYPE,
-			    org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE).
-			add().build();
+			    org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE,
+			    org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_BINARY_TYPE,
+			    org.graphity.server.MediaType.TEXT_CSV_TYPE,
+			    org.graphity.server.MediaType.TEXT_TAB_SEPARATED_VALUES_TYPE).
+			add().build());
     
+    private static final ResultSetWriter RESULT_SET_WRITER = new ResultSetWriter();
+
     private final Resource resource;
     private final Request request;
     private final ResourceConfig resourceConfig;
@@ -208,6 +219,8 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
      * Returns response builder for a SPARQL query.
      * Contains the main SPARQL endpoint JAX-RS implementation logic.
      * Uses <code>gs:resultLimit</code> parameter value from web.xml as <code>LIMIT</code> value on <code>SELECT</code> queries, if present.
+     * If <code>gs:streamResults</code> is enabled, query results are streamed from the origin endpoint.
+     * If <code>gs:rawProxy</code> is enabled, origin responses are forwarded without parsing.
      * 
      * @param query SPARQL query
      * @return response builder
@@ -216,25 +229,116 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
     {
 	if (query == null) throw new WebApplicationException(Response.Status.BAD_REQUEST);
 
+        if (query.isSelectType() && getConfig().getResultLimit() != null)
+            query.setLimit(getConfig().getResultLimit());
+
+        if (isRawProxy() && (query.isSelectType() || query.isConstructType() || query.isDescribeType()))
+            return getProxyResponseBuilder(query);
+
         if (query.isSelectType())
         {
             if (log.isDebugEnabled()) log.debug("SPARQL endpoint executing SELECT query: {}", query);
-            if (getResourceConfig().getProperty(GS.resultLimit.getURI()) != null)
-                query.setLimit(Long.parseLong(getResourceConfig().getProperty(GS.resultLimit.getURI()).toString()));
-
-            return getResponseBuilder(loadResultSetRewindable(query));
+            if (isStreamResults()) return getResponseBuilder(streamResultSet(query), RESULT_SET_VARIANTS);
+            return getResponseBuilder(loadValidatedResultSet(query, Validated.getIfNoneMatch(getRequest())), RESULT_SET_VARIANTS);
         }
 
         if (query.isConstructType() || query.isDescribeType())
         {
             if (log.isDebugEnabled()) log.debug("SPARQL endpoint executing CONSTRUCT/DESCRIBE query: {}", query);
-            return getResponseBuilder(loadModel(query));
+            if (isStreamResults()) return getResponseBuilder(streamModel(query));
+            return ModelResponse.fromRequest(getRequest()).
+                    getResponseBuilder(loadValidatedModel(query, Validated.getIfNoneMatch(getRequest())), getVariants());
         }
         
 	if (log.isWarnEnabled()) log.warn("SPARQL endpoint received unknown type of query: {}", query);
 	throw new WebApplicationException(Response.Status.BAD_REQUEST);
     }
 
+    /**
+     * Returns response builder that proxies the origin response of a SPARQL query.
+     * The query is sent to the origin with the media type negotiated with the client. If the origin responds
+     * with a compatible media type (or an error), its response is forwarded byte-for-byte. Otherwise the
+     * response is parsed and converted to the negotiated media type.
+     * 
+     * @param query <code>SELECT</code>, <code>CONSTRUCT</code> or <code>DESCRIBE</code> query
+     * @return response builder
+     */
+    public ResponseBuilder getProxyResponseBuilder(Query query)
+    {
+        List<Variant> variants;
+        if (query.isSelectType()) variants = RESULT_SET_VARIANTS;
+        else variants = getVariants();
+
+        Variant variant = VariantList.select(getRequest(), variants);
+        if (variant == null)
+        {
+            if (log.isTraceEnabled()) log.trace("Requested Variant is not on the list of acceptable Response Variants: {}", variants);
+            return Response.notAcceptable(variants);
+        }
+
+        final String endpointURI = getOrigin().getURI();
+        final Query proxiedQuery = query;
+        final String acceptHeader = getOriginAcceptHeader(variant.getMediaType());
+        ProxyResponse origin = DataManager.get().getOriginGuard().execute(new Callable<ProxyResponse>()
+        {
+            @Override
+            public ProxyResponse call()
+            {
+                return new ProxyResponse(DataManager.get().proxyQuery(endpointURI, proxiedQuery, null, acceptHeader));
+            }
+        });
+        if (!origin.isSuccess()) return origin.getResponseBuilder();
+        if (origin.isCompatible(variant.getMediaType())) return origin.getResponseBuilder(variant.getMediaType());
+
+        if (log.isDebugEnabled()) log.debug("Origin response MediaType {} does not match Variant {}, converting", origin.getMediaType(), variant);
+        try
+        {
+            TypedInputStream stream = origin.getStream();
+            if (!query.isSelectType()) return Response.ok(new StreamingGraph(stream), variant);
+
+            if (WebContent.contentTypeResultsJSON.equals(stream.getContentType()))
+                return Response.ok(new StreamingResultSet(ResultSetFactory.fromJSON(stream), origin), variant);
+            return Response.ok(new StreamingResultSet(ResultSetFactory.fromXML(stream), origin), variant);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            origin.close();
+            if (log.isErrorEnabled()) log.error("Could not convert origin response", ex);
+            throw new WebApplicationException(ex, 502); // Bad Gateway
+        }
+    }
+
+    /**
+     * Returns <code>Accept</code> header of a proxied origin request. Binary syntaxes are only understood by
+     * Graphity, so standard syntaxes are requested from the origin instead, and converted.
+     * 
+     * @param mediaType negotiated media type
+     * @return header value
+     */
+    public String getOriginAcceptHeader(MediaType mediaType)
+    {
+        if (mediaType.isCompatible(org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_BINARY_TYPE))
+            return org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_XML + "," +
+                org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_JSON + ";q=0.9";
+        if (mediaType.isCompatible(org.graphity.server.MediaType.APPLICATION_RDF_BINARY_TYPE))
+            return WebContent.defaultGraphAcceptHeader;
+        return mediaType.toString();
+    }
+
+    /**
+     * Returns true if origin responses are forwarded to the client without being parsed, whenever conversion
+     * is not needed. Uses <code>gs:rawProxy</code> parameter value from web.xml.
+     * <code>HEAD</code> responses are never proxied, since their entity is not written and would not be closed.
+     * 
+     * @return true if raw proxy mode is enabled
+     */
+    public boolean isRawProxy()
+    {
+	if (getRequest().getMethod().equals("HEAD")) return false;
+
+	return getConfig().isRawProxy();
+    }
+
     /**
      * Returns configured SPARQL endpoint resource.
      * This endpoint is a proxy for the remote endpoint.
@@ -250,9 +354,11 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
     /**
      * Returns SPARQL endpoint resource for supplied webapp configuration.
      * Uses <code>gs:endpoint</code> parameter value from web.xml as endpoint URI.
+     * Its credentials are registered once, when the configuration is resolved.
      * 
      * @param resourceConfig webapp config
      * @return endpoint resource
+     * @see org.graphity.server.ServerConfig#get(com.sun.jersey.api.core.ResourceConfig)
      */
     public Resource getOrigin(ResourceConfig resourceConfig)
     {
@@ -260,15 +366,10 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
 
         try
         {
-            Object endpointUri = resourceConfig.getProperty(GS.endpoint.getURI());
-            if (endpointUri == null) throw new ConfigurationException("SPARQL endpoint not configured (gs:endpoint not set in web.xml)");
+            Resource endpoint = ServerConfig.get(resourceConfig).getEndpoint();
+            if (endpoint == null) throw new ConfigurationException("SPARQL endpoint not configured (gs:endpoint not set in web.xml)");
 
-            String authUser = (String)resourceConfig.getProperty(Service.queryAuthUser.getSymbol());
-            String authPwd = (String)resourceConfig.getProperty(Service.queryAuthPwd.getSymbol());
-            if (authUser != null && authPwd != null)
-                DataManager.get().putAuthContext(endpointUri.toString(), authUser, authPwd);
-
-            return ResourceFactory.createResource(endpointUri.toString());
+            return endpoint;
         }
         catch (ConfigurationException ex)
         {
@@ -291,35 +392,36 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
     }
     
     /**
-     * Builds a list of acceptable response variants/
+     * Returns response builder for a streamed RDF graph.
+     * 
+     * @param graph unparsed RDF graph
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder(StreamingGraph graph)
+    {
+        return ModelResponse.fromRequest(getRequest()).
+                getResponseBuilder(graph, getVariants());
+    }
+    
+    /**
+     * Returns list of acceptable response variants, precomputed from the configuration.
      * 
      * @return supported variants
+     * @see org.graphity.server.ServerConfig#getVariants()
      */
     public List<Variant> getVariants()
     {
-        List<Variant> variants = new ArrayList<>();
-        Iterator<Lang> it = RDFLanguages.getRegisteredLanguages().iterator();
-        
-        // RDF/XML as the default one - the first one gets selected by selectVariant()
-        variants.add(new Variant(new MediaType(Lang.RDFXML.getContentType().getType(),
-                Lang.RDFXML.getContentType().getSubType()),
-            null, null));
-
-        while (it.hasNext())
-        {
-            Lang lang = it.next();
-            if (!lang.equals(Lang.RDFNULL) && !lang.equals(Lang.RDFXML))
-            {
-                ContentType ct = lang.getContentType();
-                //List<String> altTypes = lang.getAltContentTypes();
-                MediaType mediaType = new MediaType(ct.getType(), ct.getSubType()); // MediaType.valueOf(ct.getContentType()
-                variants.add(new Variant(mediaType, null, null));
-            }
-        }
-        
-        return variants;
+        return getConfig().getVariants();
     }
 
+    /**
+     * Returns entity tag of a result set, consuming it. Rewindable result sets are hashed in parallel if they
+     * are large. Used for representations that are streamed instead of buffered.
+     *
+     * @param resultSet result set
+     * @return entity tag
+     * @see org.graphity.util.ParallelHashing
+     */
     public EntityTag getEntityTag(ResultSet resultSet)
     {
         return new EntityTag(Long.toHexString(ResultSetUtils.hashResultSet(resultSet)));
@@ -333,14 +435,120 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
     public ResponseBuilder getResponseBuilder(ResultSetRewindable resultSet, List<Variant> variants)
     {
         resultSet.reset();
-        EntityTag entityTag = getEntityTag(resultSet);
-	resultSet.reset(); // ResultSet needs to be rewinded back to the beginning
-	return getResponseBuilder(entityTag, resultSet, variants);
+	return getResponseBuilder(resultSet, null, variants);
+    }
+
+    /**
+     * Returns response builder for a result set, tagged with the hash of its representation.
+     * The result set is serialized in the selected format into a pooled buffer, and the bytes are hashed in the
+     * same pass. If the representation does not fit into the buffer, the result set is rewound, tagged with its
+     * hash and written straight to the response; result sets that are not rewindable are copied into memory.
+     * 
+     * @param resultSet result set
+     * @param lastModified last modification date, or null if unknown
+     * @param variants supported variants
+     * @return response builder
+     * @see ModelResponse#getResponseBuilder(org.graphity.server.util.HashingBuffer, java.util.Date, javax.ws.rs.core.Variant)
+     */
+    public ResponseBuilder getResponseBuilder(ResultSet resultSet, Date lastModified, List<Variant> variants)
+    {
+	Variant variant = VariantList.select(getRequest(), variants);
+	if (variant == null)
+	{
+	    if (log.isTraceEnabled()) log.trace("Requested Variant is not on the list of acceptable Response Variants: {}", variants);
+	    return Response.notAcceptable(variants);
+	}
+
+	ResultSetRewindable results = resultSet instanceof ResultSetRewindable ?
+		(ResultSetRewindable)resultSet : ResultSetFactory.makeRewindable(resultSet);
+	HashingBuffer buffer = HashingBuffer.acquire();
+	try
+	{
+	    RESULT_SET_WRITER.write(results, variant.getMediaType(), buffer);
+	}
+	catch (HashingBuffer.LimitExceededException ex)
+	{
+	    buffer.release();
+	    if (log.isDebugEnabled()) log.debug("Result set of {} solutions is too large to buffer, streaming it", results.size());
+	    results.reset();
+	    EntityTag entityTag = getEntityTag(results);
+	    results.reset();
+	    return getResponseBuilder(entityTag, lastModified, results, variants);
+	}
+	catch (RuntimeException ex)
+	{
+	    buffer.release();
+	    throw ex;
+	}
+	return ModelResponse.fromRequest(getRequest()).getResponseBuilder(buffer, lastModified, variant);
     }
     
+    /**
+     * Returns response builder for a result set loaded together with origin validators.
+     * The entity tag is derived from the origin <code>ETag</code> if there is one, so the result set does not
+     * need to be hashed. Otherwise the result set is buffered and hashed while it is serialized. If the origin
+     * responded to a conditional request with <code>304 Not Modified</code>, so does this response.
+     * 
+     * @param resultSet validated result set
+     * @param variants supported variants
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder(Validated<ResultSetRewindable> resultSet, List<Variant> variants)
+    {
+        if (resultSet.isNotModified())
+        {
+            if (log.isTraceEnabled()) log.trace("Origin result set not modified, skipping Response generation");
+            return Response.notModified(resultSet.getEntityTag()).
+                    lastModified(resultSet.getLastModified());
+        }
+
+        EntityTag entityTag = resultSet.getEntityTag();
+        if (entityTag == null) return getResponseBuilder(resultSet.getResult(), resultSet.getLastModified(), variants);
+        return getResponseBuilder(entityTag, resultSet.getLastModified(), resultSet.getResult(), variants);
+    }
+
+    /**
+     * Returns response builder for a forward-only result set, which is written to the client while it is being read
+     * from the origin. Since the result set cannot be read twice, no entity tag is generated and the response is not
+     * subject to preconditions.
+     * 
+     * @param resultSet streaming result set
+     * @param variants supported variants
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder(StreamingResultSet resultSet, List<Variant> variants)
+    {
+	Variant variant = VariantList.select(getRequest(), variants);
+	if (variant == null)
+	{
+	    if (log.isTraceEnabled()) log.trace("Requested Variant is not on the list of acceptable Response Variants: {}", variants);
+	    resultSet.close();
+	    return Response.notAcceptable(variants);
+	}
+
+	if (log.isTraceEnabled()) log.trace("Generating streaming ResultSet Response with Variant: {}", variant);
+	return Response.ok(resultSet, variant);
+    }
+
     public ResponseBuilder getResponseBuilder(EntityTag entityTag, Object entity, List<Variant> variants)
+    {
+	return getResponseBuilder(entityTag, null, entity, variants);
+    }
+
+    /**
+     * Returns response builder for an entity, evaluating request preconditions against its validators.
+     * 
+     * @param entityTag entity tag
+     * @param lastModified last modification date, or null if unknown
+     * @param entity response entity
+     * @param variants supported variants
+     * @return response builder
+     */
+    public ResponseBuilder getResponseBuilder(EntityTag entityTag, Date lastModified, Object entity, List<Variant> variants)
     {	
-	Response.ResponseBuilder rb = getRequest().evaluatePreconditions(entityTag);
+	Response.ResponseBuilder rb;
+	if (lastModified != null) rb = getRequest().evaluatePreconditions(lastModified, entityTag);
+	else rb = getRequest().evaluatePreconditions(entityTag);
 	if (rb != null)
 	{
 	    if (log.isTraceEnabled()) log.trace("Resource not modified, skipping Response generation");
@@ -348,7 +556,7 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
 	}
 	else
 	{
-	    Variant variant = getRequest().selectVariant(variants);
+	    Variant variant = VariantList.select(getRequest(), variants);
 	    if (variant == null)
 	    {
 		if (log.isTraceEnabled()) log.trace("Requested Variant {} is not on the list of acceptable Response Variants: {}", variant, variants);
@@ -358,18 +566,64 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
 	    {
 		if (log.isTraceEnabled()) log.trace("Generating RDF Response with Variant: {} and EntityTag: {}", variant, entityTag);
 		return Response.ok(entity, variant).
-			tag(entityTag);
+			tag(entityTag).
+			lastModified(lastModified);
 	    }
 	}	
     }
 
     @Override
-    public Model loadModel(Query query)
+    public Model loadModel(final Query query)
     {
 	if (log.isDebugEnabled()) log.debug("Loading Model from SPARQL endpoint: {} using Query: {}", getOrigin(), query);
-	return DataManager.get().loadModel(getOrigin().getURI(), query);
+	final String endpointURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<Model>()
+	{
+	    @Override
+	    public Model call()
+	    {
+		return DataManager.get().loadModel(endpointURI, query);
+	    }
+	});
     }
     
+    /**
+     * Loads RDF model from the origin endpoint together with the validators of the origin response.
+     * 
+     * @param query <code>CONSTRUCT</code> or <code>DESCRIBE</code> query
+     * @param ifNoneMatch <code>If-None-Match</code> value forwarded to the origin, or null
+     * @return validated RDF model
+     * @see DataManager#loadValidatedModel(java.lang.String, com.hp.hpl.jena.query.Query, javax.ws.rs.core.MultivaluedMap, java.lang.String)
+     */
+    public Validated<Model> loadValidatedModel(final Query query, final String ifNoneMatch)
+    {
+	if (log.isDebugEnabled()) log.debug("Loading Model from SPARQL endpoint: {} using Query: {}", getOrigin(), query);
+	final String endpointURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<Validated<Model>>()
+	{
+	    @Override
+	    public Validated<Model> call()
+	    {
+		return DataManager.get().loadValidatedModel(endpointURI, query, null, ifNoneMatch);
+	    }
+	});
+    }
+
+    @Override
+    public StreamingGraph streamModel(final Query query)
+    {
+	if (log.isDebugEnabled()) log.debug("Streaming Model from SPARQL endpoint: {} using Query: {}", getOrigin(), query);
+	final String endpointURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<StreamingGraph>()
+	{
+	    @Override
+	    public StreamingGraph call()
+	    {
+		return DataManager.get().streamModel(endpointURI, query);
+	    }
+	});
+    }
+
     @Override
     public Model describe(Query query)
     {
@@ -388,10 +642,75 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
 	return loadModel(query);
     }
    
-    public ResultSetRewindable loadResultSetRewindable(Query query)
+    public ResultSetRewindable loadResultSetRewindable(final Query query)
     {
 	if (log.isDebugEnabled()) log.debug("Loading ResultSet from SPARQL endpoint: {} using Query: {}", getOrigin().getURI(), query);
-	return DataManager.get().loadResultSet(getOrigin().getURI(), query); // .getResultSetRewindable()
+	final String endpointURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<ResultSetRewindable>()
+	{
+	    @Override
+	    public ResultSetRewindable call()
+	    {
+		return DataManager.get().loadResultSet(endpointURI, query);
+	    }
+	});
+    }
+
+    /**
+     * Loads result set from the origin endpoint together with the validators of the origin response.
+     * 
+     * @param query <code>SELECT</code> query
+     * @param ifNoneMatch <code>If-None-Match</code> value forwarded to the origin, or null
+     * @return validated result set
+     * @see DataManager#loadValidatedResultSet(java.lang.String, com.hp.hpl.jena.query.Query, javax.ws.rs.core.MultivaluedMap, java.lang.String)
+     */
+    public Validated<ResultSetRewindable> loadValidatedResultSet(final Query query, final String ifNoneMatch)
+    {
+	if (log.isDebugEnabled()) log.debug("Loading ResultSet from SPARQL endpoint: {} using Query: {}", getOrigin().getURI(), query);
+	final String endpointURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<Validated<ResultSetRewindable>>()
+	{
+	    @Override
+	    public Validated<ResultSetRewindable> call()
+	    {
+		return DataManager.get().loadValidatedResultSet(endpointURI, query, null, ifNoneMatch);
+	    }
+	});
+    }
+
+    /**
+     * Streams result set from the origin endpoint. The result set must be closed after it has been consumed, which
+     * {@link org.graphity.server.provider.ResultSetWriter} does once it is written.
+     * 
+     * @param query <code>SELECT</code> query
+     * @return forward-only result set
+     */
+    public StreamingResultSet streamResultSet(final Query query)
+    {
+	if (log.isDebugEnabled()) log.debug("Streaming ResultSet from SPARQL endpoint: {} using Query: {}", getOrigin().getURI(), query);
+	final String endpointURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<StreamingResultSet>()
+	{
+	    @Override
+	    public StreamingResultSet call()
+	    {
+		return DataManager.get().streamResultSet(endpointURI, query);
+	    }
+	});
+    }
+
+    /**
+     * Returns true if query results are streamed to the client instead of being copied into memory.
+     * Uses <code>gs:streamResults</code> parameter value from web.xml.
+     * <code>HEAD</code> responses are never streamed, since their entity is not written and would not be closed.
+     * 
+     * @return true if streaming is enabled
+     */
+    public boolean isStreamResults()
+    {
+	if (getRequest().getMethod().equals("HEAD")) return false;
+	
+	return getConfig().isStreamResults();
     }
 
     @Override
@@ -404,19 +723,36 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
     }
 
     @Override
-    public boolean ask(Query query)
+    public boolean ask(final Query query)
     {
 	if (query == null) throw new IllegalArgumentException("Query must be not null");
         if (!query.isAskType()) throw new IllegalArgumentException("Query must be ASK");
         
-	return DataManager.get().ask(getOrigin().getURI(), query);
+	final String endpointURI = getOrigin().getURI();
+	return DataManager.get().getOriginGuard().execute(new Callable<Boolean>()
+	{
+	    @Override
+	    public Boolean call()
+	    {
+		return DataManager.get().ask(endpointURI, query);
+	    }
+	});
     }
 
     @Override
-    public void update(UpdateRequest updateRequest)
+    public void update(final UpdateRequest updateRequest)
     {
 	if (log.isDebugEnabled()) log.debug("Executing update on SPARQL endpoint: {} using UpdateRequest: {}", getOrigin(), updateRequest);
-	DataManager.get().executeUpdateRequest(getOrigin().getURI(), updateRequest);
+	final String endpointURI = getOrigin().getURI();
+	DataManager.get().getOriginGuard().executeWrite(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		DataManager.get().executeUpdateRequest(endpointURI, updateRequest);
+		return null;
+	    }
+	});
     }
 
     private Resource getResource()
@@ -446,6 +782,16 @@ public class SPARQLEndpointBase implements SPARQLEndpoint, HTTPProxy
 	return resourceConfig;
     }
 
+    /**
+     * Returns server configuration resolved from this web application's parameters.
+     * 
+     * @return server configuration
+     */
+    public ServerConfig getConfig()
+    {
+	return ServerConfig.get(getResourceConfig());
+    }
+
     @Override
     public AnonId getId()
     {
@@ -0,0 +1,73 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import org.graphity.server.util.HashingBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes already serialized response body from a buffer and returns the buffer to its pool.
+ * Needs to be registered in the application.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.ApplicationBase
+ * @see org.graphity.server.model.ModelResponse
+ * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyWriter.html">JAX-RS MessageBodyWriter</a>
+ */
+@Provider
+public class HashingBufferWriter implements MessageBodyWriter<HashingBuffer>
+{
+    private static final Logger log = LoggerFactory.getLogger(HashingBufferWriter.class);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+        return HashingBuffer.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(HashingBuffer buffer, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+	return buffer.size();
+    }
+
+    @Override
+    public void writeTo(HashingBuffer buffer, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException
+    {
+	if (log.isTraceEnabled()) log.trace("Writing buffered {} response of {} bytes", mediaType, buffer.size());
+
+	try
+	{
+	    buffer.writeTo(entityStream);
+	}
+	finally
+	{
+	    buffer.release();
+	}
+    }
+
+}
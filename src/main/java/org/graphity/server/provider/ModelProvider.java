@@ -20,6 +20,7 @@ import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.shared.NoReaderForLangException;
 import com.hp.hpl.jena.shared.NoWriterForLangException;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,16 +34,29 @@ import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParserRegistry;
+import org.apache.jena.riot.RiotException;
+import org.graphity.server.util.UploadGraph;
+import org.graphity.util.RDFBinary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Reads RDF from request body or writes RDF to response.
+ * Supports RDF syntaxes known to RIOT, including the binary one used between services.
+ * Models are written with RIOT writers where there is one for the syntax. Models up to the pretty-print limit
+ * are pretty-printed; larger ones are written with streaming (blocked or flat) variants, which start writing
+ * immediately and do not index the whole model first.
+ * If upload streaming is enabled, request bodies are not parsed when they are read, so that Graph Store uploads
+ * can be forwarded to the origin without holding them in memory.
  * Needs to be registered in the application.
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
  * @see org.graphity.server.ApplicationBase
+ * @see org.graphity.util.RDFBinary
  * @see <a href="http://jena.apache.org/documentation/javadoc/jena/com/hp/hpl/jena/rdf/model/Model.html">Jena Model</a>
  * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyReader.html">JAX-RS MessageBodyReader</a>
  * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyWriter.html">JAX-RS MessageBodyWriter</a>
@@ -53,7 +67,59 @@ import org.slf4j.LoggerFactory;
 public class ModelProvider implements MessageBodyReader<Model>, MessageBodyWriter<Model>
 {    
     private static final Logger log = LoggerFactory.getLogger(ModelProvider.class);
+
+    /** Default maximum number of triples in models that are pretty-printed */
+    public static final long DEFAULT_PRETTY_PRINT_LIMIT = 10000;
+    /** Size of the output buffer in bytes */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static volatile long prettyPrintLimit = DEFAULT_PRETTY_PRINT_LIMIT;
+    private static volatile boolean streamUploads = false;
+
+    /**
+     * Returns maximum number of triples in models that are pretty-printed.
+     *
+     * @return limit
+     */
+    public static long getPrettyPrintLimit()
+    {
+	return prettyPrintLimit;
+    }
+
+    /**
+     * Sets maximum number of triples in models that are pretty-printed. 0 always selects streaming writers,
+     * <code>Long.MAX_VALUE</code> always selects pretty ones.
+     *
+     * @param limit limit, not negative
+     */
+    public static void setPrettyPrintLimit(long limit)
+    {
+	if (limit < 0) throw new IllegalArgumentException("Pretty-print limit must be not negative");
+	prettyPrintLimit = limit;
+    }
     
+    /**
+     * Returns true if request bodies are read as unparsed uploads.
+     *
+     * @return true if upload streaming is enabled
+     */
+    public static boolean isStreamUploads()
+    {
+	return streamUploads;
+    }
+
+    /**
+     * Enables or disables upload streaming. If enabled, models read from request bodies are backed by
+     * {@link UploadGraph}, which the Graph Store forwards to the origin as a stream, and which is parsed into
+     * memory only if the model is accessed otherwise.
+     *
+     * @param stream true to enable upload streaming
+     */
+    public static void setStreamUploads(boolean stream)
+    {
+	streamUploads = stream;
+    }
+
     // READER
     
     @Override
@@ -67,8 +133,6 @@ public class ModelProvider implements MessageBodyReader<Model>, MessageBodyWrite
     {
 	if (log.isTraceEnabled()) log.trace("Reading Model with HTTP headers: {} MediaType: {}", httpHeaders, mediaType);
 	
-	Model model = ModelFactory.createDefaultModel();	
-
         Lang lang = RDFLanguages.contentTypeToLang(mediaType.toString());
         if (lang == null)
         {
@@ -79,6 +143,17 @@ public class ModelProvider implements MessageBodyReader<Model>, MessageBodyWrite
 	String syntax = lang.getName();
 	if (log.isDebugEnabled()) log.debug("Syntax used to read Model: {}", syntax);
 
+	if (isStreamUploads() && RDFParserRegistry.isTriples(lang))
+	    return ModelFactory.createModelForGraph(new UploadGraph(entityStream, lang));
+
+	// binary RDF is only known to RIOT, not to Model readers
+	Model model = ModelFactory.createDefaultModel();
+	if (lang.equals(RDFBinary.LANG))
+	{
+	    RDFBinary.read(entityStream, model.getGraph());
+	    return model;
+	}
+
 	// extract base URI from httpHeaders?
 	return model.read(entityStream, null, syntax);
     }
@@ -109,10 +184,63 @@ public class ModelProvider implements MessageBodyReader<Model>, MessageBodyWrite
             if (log.isErrorEnabled()) log.error("MediaType {} not supported by Jena", mediaType);
             throw new WebApplicationException(ex, Response.Status.INTERNAL_SERVER_ERROR);
         }
-	String syntax = lang.getName();
-	if (log.isDebugEnabled()) log.debug("Syntax used to write Model: {}", syntax);
+	write(model, lang, entityStream);
+    }
 
-	model.write(entityStream, syntax);
+    /**
+     * Serializes model in the given syntax. Also used to serialize responses into a buffer before they are sent.
+     * The output is buffered and flushed, but not closed.
+     * 
+     * @param model RDF model
+     * @param lang RDF syntax
+     * @param out output stream
+     * @see #getFormat(org.apache.jena.riot.Lang, boolean)
+     * @see org.graphity.server.model.ModelResponse#getResponseBuilder(com.hp.hpl.jena.rdf.model.Model, java.util.Date, java.util.List)
+     */
+    public void write(Model model, Lang lang, OutputStream out)
+    {
+	// binary RDF is only known to RIOT, not to Model writers, and buffers by itself
+	if (lang.equals(RDFBinary.LANG))
+	{
+	    RDFBinary.write(out, model.getGraph());
+	    return;
+	}
+
+	RDFFormat format = getFormat(lang, model.size() <= getPrettyPrintLimit());
+	if (log.isDebugEnabled()) log.debug("Format used to write Model: {}", format != null ? format : lang.getName());
+
+	BufferedOutputStream buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+	if (format != null) RDFDataMgr.write(buffer, model, format);
+	else model.write(buffer, lang.getName());
+
+	try
+	{
+	    buffer.flush();
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+    /**
+     * Returns RIOT writer format of a syntax. Turtle and TriG are pretty-printed or written in blocks of
+     * subjects; RDF/XML is written plain, as by the legacy <code>RDF/XML</code> writer, since the abbreviating one
+     * is not suited for large models either way.
+     * 
+     * @param lang RDF syntax
+     * @param pretty true if the format should be pretty-printed rather than streamed
+     * @return RIOT format, or null if the syntax has no RIOT writer and is written by the model
+     */
+    public RDFFormat getFormat(Lang lang, boolean pretty)
+    {
+	if (lang.equals(Lang.TURTLE)) return pretty ? RDFFormat.TURTLE_PRETTY : RDFFormat.TURTLE_BLOCKS;
+	if (lang.equals(Lang.TRIG)) return pretty ? RDFFormat.TRIG_PRETTY : RDFFormat.TRIG_BLOCKS;
+	if (lang.equals(Lang.NTRIPLES)) return RDFFormat.NTRIPLES;
+	if (lang.equals(Lang.NQUADS)) return RDFFormat.NQUADS;
+	if (lang.equals(Lang.RDFXML)) return RDFFormat.RDFXML_PLAIN;
+	if (lang.equals(Lang.RDFJSON)) return RDFFormat.RDFJSON;
+	return null;
     }
     
 }
@@ -17,7 +17,6 @@
 package org.graphity.server.provider;
 
 import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.sun.jersey.api.core.HttpContext;
 import com.sun.jersey.core.spi.component.ComponentContext;
 import com.sun.jersey.spi.inject.Injectable;
@@ -27,6 +26,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.Provider;
+import org.graphity.server.util.ParsedQueryCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,7 +67,7 @@ public class QueryParamProvider extends PerRequestTypeInjectableProvider<QueryPa
 		if (log.isTraceEnabled()) log.trace("Providing Injectable<Query> with @QueryParam({}) and value: {}", paramName, value);
 		try
 		{
-		    return QueryFactory.create(value);
+		    return ParsedQueryCache.get().getQuery(value);
 		}
 		catch (Exception ex)
 		{
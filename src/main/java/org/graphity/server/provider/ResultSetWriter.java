@@ -18,6 +18,7 @@ package org.graphity.server.provider;
 
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.query.ResultSetFormatter;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
@@ -28,6 +29,8 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
+import org.graphity.util.ResultSetBinary;
+import org.graphity.util.ResultSetText;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,12 +40,16 @@ import org.slf4j.LoggerFactory;
  * 
  * @author Martynas Jusevičius <martynas@graphity.org>
  * @see org.graphity.server.ApplicationBase
+ * @see org.graphity.util.ResultSetBinary
+ * @see org.graphity.util.ResultSetText
  * @see <a href="http://www.w3.org/TR/rdf-sparql-XMLres/">SPARQL Query Results XML Format</a>
  * @see <a href="http://jena.apache.org/documentation/javadoc/arq/com/hp/hpl/jena/query/ResultSet.html">Jena ResultSet</a>
  * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyWriter.html">JAX-RS MessageBodyWriter</a>
  */
 @Provider
-@Produces({org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_XML, org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_JSON})
+@Produces({org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_XML, org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_JSON,
+    org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_BINARY, org.graphity.server.MediaType.TEXT_CSV,
+    org.graphity.server.MediaType.TEXT_TAB_SEPARATED_VALUES})
 public class ResultSetWriter implements MessageBodyWriter<ResultSet>
 {
     private static final Logger log = LoggerFactory.getLogger(ResultSetWriter.class);
@@ -61,11 +68,43 @@ public class ResultSetWriter implements MessageBodyWriter<ResultSet>
 
     @Override
     public void writeTo(ResultSet results, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException
+    {
+	try
+	{
+	    write(results, mediaType, entityStream);
+	}
+	finally
+	{
+	    // streaming results hold the origin connection until they are written
+	    if (results instanceof Closeable)
+	    {
+		if (log.isTraceEnabled()) log.trace("Closing streamed ResultSet: {}", results);
+		((Closeable)results).close();
+	    }
+	}
+    }
+
+    /**
+     * Serializes result set in the format of the given media type. Also used to serialize responses into a
+     * buffer before they are sent.
+     * 
+     * @param results result set
+     * @param mediaType SPARQL results media type
+     * @param out output stream
+     * @see org.graphity.server.model.SPARQLEndpointBase#getResponseBuilder(com.hp.hpl.jena.query.ResultSet, java.util.Date, java.util.List)
+     */
+    public void write(ResultSet results, MediaType mediaType, OutputStream out)
     {
 	if (mediaType.equals(org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_JSON_TYPE))
-	    ResultSetFormatter.outputAsJSON(entityStream, results);
+	    ResultSetFormatter.outputAsJSON(out, results);
+	else if (mediaType.equals(org.graphity.server.MediaType.APPLICATION_SPARQL_RESULTS_BINARY_TYPE))
+	    ResultSetBinary.write(out, results);
+	else if (mediaType.equals(org.graphity.server.MediaType.TEXT_CSV_TYPE))
+	    ResultSetText.writeCSV(out, results);
+	else if (mediaType.equals(org.graphity.server.MediaType.TEXT_TAB_SEPARATED_VALUES_TYPE))
+	    ResultSetText.writeTSV(out, results);
 	else
-	    ResultSetFormatter.outputAsXML(entityStream, results);
+	    ResultSetFormatter.outputAsXML(out, results);
     }
     
 }
@@ -0,0 +1,224 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.provider;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.shared.NoWriterForLangException;
+import com.hp.hpl.jena.sparql.core.Quad;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import org.apache.jena.atlas.lib.Tuple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.writer.WriterStreamRDFBlocks;
+import org.graphity.query.StreamingGraph;
+import org.graphity.util.RDFBinary;
+import org.graphity.util.RDFBinaryWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes streamed RDF graph to the response.
+ * Triples of streamable formats (N-Triples, N-Quads, Turtle, TriG, binary RDF) are written as soon as they are
+ * parsed from the origin response, without building an intermediate model. Other formats (e.g. RDF/XML) are
+ * buffered in a model.
+ * Needs to be registered in the application.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.ApplicationBase
+ * @see org.graphity.query.StreamingGraph
+ * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/ext/MessageBodyWriter.html">JAX-RS MessageBodyWriter</a>
+ */
+@Provider
+public class StreamingGraphWriter implements MessageBodyWriter<StreamingGraph>
+{
+    private static final Logger log = LoggerFactory.getLogger(StreamingGraphWriter.class);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+        return StreamingGraph.class.isAssignableFrom(type) && RDFLanguages.contentTypeToLang(mediaType.toString()) != null;
+    }
+
+    @Override
+    public long getSize(StreamingGraph graph, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+    {
+	return -1;
+    }
+
+    @Override
+    public void writeTo(StreamingGraph graph, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException
+    {
+	if (log.isTraceEnabled()) log.trace("Writing StreamingGraph with HTTP headers: {} MediaType: {}", httpHeaders, mediaType);
+
+	try
+	{
+	    Lang lang = RDFLanguages.contentTypeToLang(mediaType.toString());
+	    if (lang == null)
+	    {
+		Throwable ex = new NoWriterForLangException("Media type not supported");
+		if (log.isErrorEnabled()) log.error("MediaType {} not supported by Jena", mediaType);
+		throw new WebApplicationException(ex, Response.Status.INTERNAL_SERVER_ERROR);
+	    }
+
+	    StreamRDF writer = createStreamWriter(lang, entityStream);
+	    if (writer != null)
+	    {
+		if (log.isDebugEnabled()) log.debug("Streaming {} origin response as: {}", graph.getLang(), lang);
+		graph.parse(new DeferredStreamRDF(writer, graph.isNotFoundIfEmpty()));
+	    }
+	    else
+	    {
+		if (log.isDebugEnabled()) log.debug("Syntax {} cannot be streamed, buffering {} origin response in Model", lang, graph.getLang());
+		Model model = graph.toModel();
+		if (model.isEmpty() && graph.isNotFoundIfEmpty())
+		{
+		    if (log.isDebugEnabled()) log.debug("Streamed Model is empty; returning 404 Not Found");
+		    throw new WebApplicationException(Response.Status.NOT_FOUND);
+		}
+		model.write(entityStream, lang.getName());
+	    }
+	}
+	finally
+	{
+	    graph.close();
+	}
+    }
+
+    /**
+     * Returns stream writer for the given syntax, or null if the syntax cannot be written as a stream.
+     *
+     * @param lang RDF syntax
+     * @param out output stream
+     * @return stream writer or null
+     */
+    public StreamRDF createStreamWriter(Lang lang, OutputStream out)
+    {
+	if (RDFLanguages.sameLang(lang, Lang.NTRIPLES) || RDFLanguages.sameLang(lang, Lang.NQUADS))
+	    return StreamRDFLib.writer(out);
+	if (RDFLanguages.sameLang(lang, Lang.TURTLE) || RDFLanguages.sameLang(lang, Lang.TRIG))
+	    return new WriterStreamRDFBlocks(out);
+	if (RDFLanguages.sameLang(lang, RDFBinary.LANG))
+	    return new RDFBinaryWriter(out);
+
+	return null;
+    }
+
+    /**
+     * Stream that holds back the start of the output (and prefixes) until the first triple arrives.
+     * Nothing is written to the response of an empty graph before it is known to be empty, so that 404 Not Found
+     * can still be returned instead.
+     */
+    protected static class DeferredStreamRDF implements StreamRDF
+    {
+	private final StreamRDF stream;
+	private final boolean notFoundIfEmpty;
+	private final Map<String, String> prefixes = new LinkedHashMap<>();
+	private String base = null;
+	private boolean started = false;
+
+	public DeferredStreamRDF(StreamRDF stream, boolean notFoundIfEmpty)
+	{
+	    this.stream = stream;
+	    this.notFoundIfEmpty = notFoundIfEmpty;
+	}
+
+	@Override
+	public void start()
+	{
+	}
+
+	@Override
+	public void triple(Triple triple)
+	{
+	    ensureStarted();
+	    stream.triple(triple);
+	}
+
+	@Override
+	public void quad(Quad quad)
+	{
+	    ensureStarted();
+	    stream.quad(quad);
+	}
+
+	@Override
+	public void tuple(Tuple<Node> tuple)
+	{
+	    ensureStarted();
+	    stream.tuple(tuple);
+	}
+
+	@Override
+	public void base(String base)
+	{
+	    if (started) stream.base(base);
+	    else this.base = base;
+	}
+
+	@Override
+	public void prefix(String prefix, String iri)
+	{
+	    if (started) stream.prefix(prefix, iri);
+	    else prefixes.put(prefix, iri);
+	}
+
+	@Override
+	public void finish()
+	{
+	    if (!started)
+	    {
+		if (notFoundIfEmpty)
+		{
+		    if (log.isDebugEnabled()) log.debug("Streamed graph is empty; returning 404 Not Found");
+		    throw new WebApplicationException(Response.Status.NOT_FOUND);
+		}
+		ensureStarted();
+	    }
+
+	    stream.finish();
+	}
+
+	private void ensureStarted()
+	{
+	    if (started) return;
+	    started = true;
+
+	    stream.start();
+	    if (base != null) stream.base(base);
+	    for (Entry<String, String> prefix : prefixes.entrySet())
+		stream.prefix(prefix.getKey(), prefix.getValue());
+	}
+
+    }
+
+}
@@ -16,7 +16,6 @@
  */
 package org.graphity.server.provider;
 
-import com.hp.hpl.jena.update.UpdateFactory;
 import com.hp.hpl.jena.update.UpdateRequest;
 import com.sun.jersey.api.core.HttpContext;
 import com.sun.jersey.core.spi.component.ComponentContext;
@@ -27,6 +26,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.Provider;
+import org.graphity.server.util.ParsedQueryCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,7 +67,7 @@ public class UpdateRequestFormParamProvider extends PerRequestTypeInjectableProv
 		if (log.isTraceEnabled()) log.trace("Providing Injectable<UpdateRequest> with @QueryParam({}) and value: {}", paramName, value);
 		try
 		{
-		    return UpdateFactory.create(value);
+		    return ParsedQueryCache.get().getUpdateRequest(value);
 		}
 		catch (Exception ex)
 		{
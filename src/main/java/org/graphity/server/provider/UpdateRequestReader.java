@@ -16,7 +16,6 @@
  */
 package org.graphity.server.provider;
 
-import com.hp.hpl.jena.update.UpdateFactory;
 import com.hp.hpl.jena.update.UpdateRequest;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,6 +27,7 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.Provider;
 import org.graphity.server.MediaType;
+import org.graphity.server.util.ParsedQueryCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,7 +57,7 @@ public class UpdateRequestReader implements MessageBodyReader<UpdateRequest>
     public UpdateRequest readFrom(Class<UpdateRequest> type, Type type1, Annotation[] antns, javax.ws.rs.core.MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream in) throws IOException, WebApplicationException
     {
 	if (log.isTraceEnabled()) log.trace("Reading UpdateRequest with HTTP headers: {} MediaType: {}", httpHeaders, mediaType);
-	return UpdateFactory.read(in);
+	return ParsedQueryCache.get().getUpdateRequest(in);
     }
     
 }
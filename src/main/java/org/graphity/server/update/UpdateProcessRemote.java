@@ -20,13 +20,14 @@ import com.hp.hpl.jena.sparql.engine.http.Service;
 import com.hp.hpl.jena.sparql.util.Context;
 import com.hp.hpl.jena.update.GraphStore;
 import com.hp.hpl.jena.update.UpdateRequest;
-import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientResponse;
-import com.sun.jersey.api.client.WebResource;
-import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
-import com.sun.jersey.api.client.filter.LoggingFilter;
 import java.util.Map;
+import org.apache.http.client.HttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.apache.jena.atlas.web.auth.HttpAuthenticator;
+import org.apache.jena.atlas.web.auth.PreemptiveBasicAuthenticator;
+import org.apache.jena.atlas.web.auth.SimpleAuthenticator;
 import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.web.HttpOp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +42,8 @@ public class UpdateProcessRemote extends com.hp.hpl.jena.sparql.modify.UpdatePro
     private final UpdateRequest request ;
     private final String endpointURI ;
     private String user = null, password = null ;
+    private HttpClient client = null ;
+    private HttpContext httpContext = null ;
 
     public UpdateProcessRemote(UpdateRequest request, String serviceURI, Context context)
     {
@@ -68,6 +71,25 @@ public class UpdateProcessRemote extends com.hp.hpl.jena.sparql.modify.UpdatePro
 	}
     }
 
+    /**
+     * Creates remote update process that is sent using the supplied HTTP client.
+     * Authentication is expected to be carried by the HTTP context, so that the (possibly shared) client
+     * does not need to be modified.
+     * 
+     * @param request update request
+     * @param serviceURI remote endpoint URI
+     * @param context SPARQL context
+     * @param client HTTP client
+     * @param httpContext HTTP context of this request
+     */
+    public UpdateProcessRemote(UpdateRequest request, String serviceURI, Context context, HttpClient client, HttpContext httpContext)
+    {
+	this(request, serviceURI, context);
+	if (client == null) throw new IllegalArgumentException("HttpClient cannot be null");
+	this.client = client ;
+	this.httpContext = httpContext ;
+    }
+
     @Override
     public GraphStore getGraphStore()
     {
@@ -77,25 +99,17 @@ public class UpdateProcessRemote extends com.hp.hpl.jena.sparql.modify.UpdatePro
     @Override
     public void execute()
     {
-	Client client = Client.create();
-	WebResource wr = client.resource(endpointURI);
-	client.addFilter(new LoggingFilter(System.out));
-	
-	if (user != null && password != null)
+	HttpAuthenticator authenticator = null;
+	if (client == null && user != null && password != null)
 	{
 	    if (log.isDebugEnabled()) log.debug("Setting HTTP Basic auth for endpoint {} with username {}", endpointURI, user);
-	    client.addFilter(new HTTPBasicAuthFilter(user, password));
+	    authenticator = new PreemptiveBasicAuthenticator(new SimpleAuthenticator(user, password.toCharArray()));
 	}
 	
 	String reqStr = request.toString();
 
 	if (log.isDebugEnabled()) log.debug("Sending SPARQL request {} to endpoint {}", reqStr, endpointURI);
-	ClientResponse response =
-	    wr.type(WebContent.contentTypeSPARQLUpdate).
-	    accept(WebContent.contentTypeResultsXML).
-	    post(ClientResponse.class, reqStr);
-	
-	if (log.isDebugEnabled()) log.debug("SPARQL endpoint response: {}", response);
+	HttpOp.execHttpPost(endpointURI, WebContent.contentTypeSPARQLUpdate, reqStr, client, httpContext, authenticator);
     }
 
     public final void setBasicAuthentication(String user, String password)
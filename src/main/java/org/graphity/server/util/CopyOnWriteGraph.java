@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+
+/**
+ * Graph that records changes separately from a shared base graph.
+ * Used to hand out cached or coalesced query results, so that one caller cannot modify the result seen by
+ * others. The base graph is never modified nor closed. Results that are not shared are returned as they are.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class CopyOnWriteGraph extends GraphBase
+{
+
+    private final Graph base;
+    private final Graph additions = Factory.createGraphMem();
+    private final Graph deletions = Factory.createGraphMem();
+
+    /**
+     * Creates graph over shared base graph, with the same namespace prefixes.
+     *
+     * @param base shared graph
+     */
+    public CopyOnWriteGraph(Graph base)
+    {
+	if (base == null) throw new IllegalArgumentException("Graph cannot be null");
+	this.base = base;
+	getPrefixMapping().setNsPrefixes(base.getPrefixMapping());
+    }
+
+    /**
+     * Creates model over shared base model, with the same namespace prefixes.
+     *
+     * @param base shared model
+     * @return model that can be modified without affecting the base
+     */
+    public static Model createModel(Model base)
+    {
+	if (base == null) throw new IllegalArgumentException("Model cannot be null");
+
+	return ModelFactory.createModelForGraph(new CopyOnWriteGraph(base.getGraph()));
+    }
+
+    /**
+     * Returns shared base graph.
+     *
+     * @return base graph
+     */
+    public Graph getBase()
+    {
+	return base;
+    }
+
+    @Override
+    public void performAdd(Triple t)
+    {
+	deletions.delete(t);
+	if (!base.contains(t)) additions.add(t);
+    }
+
+    @Override
+    public void performDelete(Triple t)
+    {
+	additions.delete(t);
+	if (base.contains(t)) deletions.add(t);
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+    {
+	ExtendedIterator<Triple> it = base.find(m);
+	if (!deletions.isEmpty()) it = it.filterDrop(new Filter<Triple>()
+	{
+	    @Override
+	    public boolean accept(Triple t)
+	    {
+		return deletions.contains(t);
+	    }
+	});
+	if (additions.isEmpty()) return it;
+	return it.andThen(additions.find(m));
+    }
+
+    @Override
+    protected boolean graphBaseContains(Triple t)
+    {
+	if (!t.isConcrete()) return super.graphBaseContains(t);
+	return additions.contains(t) || (base.contains(t) && !deletions.contains(t));
+    }
+
+    @Override
+    protected int graphBaseSize()
+    {
+	return base.size() - deletions.size() + additions.size();
+    }
+
+    /**
+     * Discards recorded changes, leaving the base graph open.
+     */
+    @Override
+    public void close()
+    {
+	additions.close();
+	deletions.close();
+	super.close();
+    }
+
+}
@@ -16,25 +16,79 @@
  */
 package org.graphity.server.util;
 
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
 import com.hp.hpl.jena.query.*;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
 import com.hp.hpl.jena.sparql.engine.http.Service;
+import com.hp.hpl.jena.sparql.resultset.ResultSetMem;
 import com.hp.hpl.jena.sparql.util.Context;
-import com.hp.hpl.jena.update.UpdateExecutionFactory;
 import com.hp.hpl.jena.update.UpdateRequest;
 import com.hp.hpl.jena.util.FileManager;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.ws.rs.core.MultivaluedMap;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DecompressingHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.jena.atlas.web.HttpException;
 import org.apache.jena.atlas.web.auth.HttpAuthenticator;
 import org.apache.jena.atlas.web.auth.PreemptiveBasicAuthenticator;
 import org.apache.jena.atlas.web.auth.SimpleAuthenticator;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.IRILib;
+import org.apache.jena.riot.web.HttpNames;
 import org.apache.jena.web.DatasetAdapter;
+import org.apache.jena.web.HttpSC;
 import org.graphity.query.QueryEngineHTTP;
+import org.graphity.query.StreamingGraph;
+import org.graphity.query.StreamingResultSet;
+import org.graphity.server.update.UpdateProcessRemote;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,26 +110,77 @@ import org.slf4j.LoggerFactory;
 
 public class DataManager extends FileManager
 {
-    private static DataManager s_instance = null;
+    private static volatile DataManager s_instance = null;
 
     private static final Logger log = LoggerFactory.getLogger(DataManager.class);
 
+    /** Default maximum number of pooled connections */
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    /** Default maximum number of pooled connections per origin (route) */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 50;
+    /** Default time in milliseconds after which idle pooled connections are closed */
+    public static final long DEFAULT_CONNECTION_IDLE_TIMEOUT = 30000;
+    /** Default number of threads that execute asynchronous requests */
+    public static final int DEFAULT_ASYNC_POOL_SIZE = 50;
+    /** Default maximum number of asynchronous requests waiting for a thread */
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+
+    /** Coalesced models are handed out as copy-on-write views, so that callers cannot modify each other's */
+    private static final RequestCoalescer.Sharing<Validated<Model>> MODEL_SHARING = new RequestCoalescer.Sharing<Validated<Model>>()
+    {
+	@Override
+	public Validated<Model> share(Validated<Model> model)
+	{
+	    if (model.getResult() == null) return model;
+	    return model.withResult(CopyOnWriteGraph.createModel(model.getResult()));
+	}
+    };
+    /** Coalesced graphs are handed out as copy-on-write views, so that callers cannot modify each other's */
+    private static final RequestCoalescer.Sharing<Validated<Graph>> GRAPH_SHARING = new RequestCoalescer.Sharing<Validated<Graph>>()
+    {
+	@Override
+	public Validated<Graph> share(Validated<Graph> graph)
+	{
+	    if (graph.getResult() == null) return graph;
+	    return graph.<Graph>withResult(new CopyOnWriteGraph(graph.getResult()));
+	}
+    };
+
     private final Context context;
+    private final PoolingClientConnectionManager connectionManager;
+    private final IdleConnectionMonitor idleConnectionMonitor;
+    private final HttpClient rawHttpClient;
+    private final HttpClient httpClient;
+    private final ThreadPoolExecutor asyncExecutor;
+    private final OriginGuard originGuard;
+    private final QueryResultCache resultCache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_WEIGHT);
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private final Object serviceContextLock = new Object();
+    private volatile Map<String, Context> serviceContextMap;
+    private volatile PrefixIndex<Context> serviceContextIndex;
+    private volatile Lang graphStoreSendLang = null;
 
     /**
-     * Returns global data manager
+     * Returns global data manager.
+     * The instance is created once and safely published, so the common path does not lock.
      * 
      * @return singleton instance
      */
     public static DataManager get()
     {
-        if (s_instance == null)
-        {
-            s_instance = new DataManager(FileManager.get(), ARQ.getContext());
-	    if (log.isDebugEnabled()) log.debug("new DataManager({}): {}", FileManager.get(), s_instance);
-        }
+	DataManager instance = s_instance;
+        if (instance == null)
+	    synchronized (DataManager.class)
+	    {
+		instance = s_instance;
+		if (instance == null)
+		{
+		    s_instance = instance = new DataManager(FileManager.get(), ARQ.getContext());
+		    if (log.isDebugEnabled()) log.debug("new DataManager({}): {}", FileManager.get(), instance);
+		}
+	    }
         
-        return s_instance;
+        return instance;
     }
 
     /**
@@ -84,9 +189,340 @@ public class DataManager extends FileManager
      * @param context SPARQL context
      */
     public DataManager(FileManager fMgr, Context context)
+    {
+	this(fMgr, context, new PoolingClientConnectionManager(SchemeRegistryFactory.createSystemDefault()));
+    }
+
+    /**
+     * Creates data manager from file manager, SPARQL context and HTTP connection pool.
+     * All remote requests (SPARQL queries, updates and Graph Store operations) are sent over the pool.
+     * The system default scheme registry shares one SSL context, so TLS sessions are reused as well.
+     *
+     * @param fMgr file manager
+     * @param context SPARQL context
+     * @param connectionManager pooling HTTP connection manager
+     */
+    public DataManager(FileManager fMgr, Context context, PoolingClientConnectionManager connectionManager)
     {
 	super(fMgr);
+	if (connectionManager == null) throw new IllegalArgumentException("PoolingClientConnectionManager cannot be null");
 	this.context = context;
+	this.connectionManager = connectionManager;
+	connectionManager.setMaxTotal(DEFAULT_MAX_CONNECTIONS);
+	connectionManager.setDefaultMaxPerRoute(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+	this.idleConnectionMonitor = new IdleConnectionMonitor(connectionManager, DEFAULT_CONNECTION_IDLE_TIMEOUT);
+	this.originGuard = new OriginGuard(OriginGuard.DEFAULT_MAX_REQUESTS, OriginGuard.DEFAULT_TIMEOUT);
+	this.rawHttpClient = createHttpClient(connectionManager);
+	this.httpClient = new DecompressingHttpClient(rawHttpClient);
+	this.asyncExecutor = createAsyncExecutor(DEFAULT_ASYNC_POOL_SIZE, DEFAULT_ASYNC_QUEUE_SIZE);
+	@SuppressWarnings("unchecked")
+	Map<String,Context> serviceContexts = context != null && context.isDefined(Service.serviceContext) ?
+		(Map<String,Context>)context.get(Service.serviceContext) : null;
+	publishServiceContextMap(serviceContexts != null ?
+		new LinkedHashMap<>(serviceContexts) :
+		new LinkedHashMap<String, Context>());
+	idleConnectionMonitor.start();
+    }
+
+    /**
+     * Creates executor of asynchronous requests, with a fixed number of daemon threads and a bounded queue.
+     * Requests submitted while the queue is full are rejected with {@link RejectedExecutionException}, so
+     * that pending requests cannot pile up in memory when origins are slower than the incoming traffic.
+     *
+     * @param poolSize number of threads
+     * @param queueSize maximum number of requests waiting for a thread
+     * @return thread pool executor
+     */
+    protected ThreadPoolExecutor createAsyncExecutor(int poolSize, int queueSize)
+    {
+	return new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory()
+	{
+	    private final AtomicInteger count = new AtomicInteger();
+
+	    @Override
+	    public Thread newThread(Runnable runnable)
+	    {
+		Thread thread = new Thread(runnable, "DataManager-async-" + count.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+    }
+
+    /**
+     * Creates HTTP client that keeps connections to origins alive and leases them from the given pool.
+     * Connections are kept alive for as long as the origin allows, but no longer than the idle timeout.
+     * The client does not ask for compressed responses; {@link #getHttpClient()} wraps it with decompression.
+     * Requests sent while the origin guard executes a read get its timeouts.
+     *
+     * @param connectionManager pooling connection manager
+     * @return HTTP client
+     */
+    protected HttpClient createHttpClient(ClientConnectionManager connectionManager)
+    {
+	HttpParams httpParams = new BasicHttpParams();
+	HttpProtocolParams.setVersion(httpParams, HttpVersion.HTTP_1_1);
+	HttpProtocolParams.setContentCharset(httpParams, WebContent.charsetUTF8);
+	HttpConnectionParams.setTcpNoDelay(httpParams, true);
+	HttpConnectionParams.setSocketBufferSize(httpParams, 32*1024);
+
+	DefaultHttpClient client = new DefaultHttpClient(connectionManager, httpParams)
+	{
+	    @Override
+	    protected HttpParams determineParams(HttpRequest request)
+	    {
+		return getOriginGuard().getRequestParams(super.determineParams(request));
+	    }
+	};
+	client.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy()
+	{
+	    @Override
+	    public long getKeepAliveDuration(HttpResponse response, HttpContext httpContext)
+	    {
+		long duration = super.getKeepAliveDuration(response, httpContext);
+		if (duration < 0 || duration > getConnectionIdleTimeout()) return getConnectionIdleTimeout();
+		return duration;
+	    }
+	});
+
+	return client;
+    }
+
+    /**
+     * Creates HTTP context for a request to a remote endpoint or graph store.
+     * If the service context of the URI has credentials, they are set for preemptive HTTP Basic
+     * authentication on the HTTP context, leaving the shared client untouched.
+     *
+     * @param endpointURI endpoint or graph store URI
+     * @return new HTTP context
+     */
+    public HttpContext createHttpContext(String endpointURI)
+    {
+	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
+
+	HttpContext httpContext = new BasicHttpContext();
+	Context serviceContext = getServiceContext(endpointURI);
+	if (serviceContext != null)
+	{
+	    String usr = serviceContext.getAsString(Service.queryAuthUser);
+	    String pwd = serviceContext.getAsString(Service.queryAuthPwd);
+
+	    if (usr != null || pwd != null)
+	    {
+		usr = usr==null?"":usr;
+		pwd = pwd==null?"":pwd;
+
+		if (log.isDebugEnabled()) log.debug("Setting HTTP Basic authentication for endpoint URI {} with username: {} ", endpointURI, usr);
+		CredentialsProvider credsProvider = new BasicCredentialsProvider();
+		credsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(usr, pwd));
+		httpContext.setAttribute(ClientContext.CREDS_PROVIDER, credsProvider);
+
+		URI uri = URI.create(endpointURI);
+		AuthCache authCache = new BasicAuthCache();
+		authCache.put(new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme()), new BasicScheme());
+		httpContext.setAttribute(ClientContext.AUTH_CACHE, authCache);
+	    }
+	}
+
+	return httpContext;
+    }
+
+    /**
+     * Returns HTTP client shared by all remote requests.
+     *
+     * @return pooled HTTP client
+     */
+    public HttpClient getHttpClient()
+    {
+	return httpClient;
+    }
+
+    /**
+     * Returns HTTP client of proxied requests, sharing the connection pool with {@link #getHttpClient()}.
+     * It does not ask origins to compress responses, so that their bodies, and the validators (e.g. ETags) that
+     * belong to those exact bytes, can be forwarded to clients as they are.
+     *
+     * @return pooled HTTP client without decompression
+     */
+    public HttpClient getRawHttpClient()
+    {
+	return rawHttpClient;
+    }
+
+    /**
+     * Returns cache of remote query results, used by <code>loadModel()</code> and <code>loadResultSet()</code>.
+     * Results are only cached for endpoints that have a positive time-to-live.
+     *
+     * @return query result cache
+     */
+    public QueryResultCache getResultCache()
+    {
+	return resultCache;
+    }
+
+    /**
+     * Returns coalescer that lets identical concurrent queries and Graph Store reads share one origin request.
+     *
+     * @return request coalescer
+     */
+    public RequestCoalescer getRequestCoalescer()
+    {
+	return requestCoalescer;
+    }
+
+    /**
+     * Returns HTTP connection pool.
+     *
+     * @return pooling connection manager
+     */
+    public PoolingClientConnectionManager getConnectionManager()
+    {
+	return connectionManager;
+    }
+
+    /**
+     * Returns statistics of the whole HTTP connection pool.
+     *
+     * @return leased, pending, available and maximum connection counts
+     */
+    public PoolStats getConnectionPoolStats()
+    {
+	return getConnectionManager().getTotalStats();
+    }
+
+    /**
+     * Returns HTTP connection pool statistics for the origin of an endpoint or graph store.
+     *
+     * @param endpointURI endpoint or graph store URI
+     * @return leased, pending, available and maximum connection counts
+     */
+    public PoolStats getConnectionPoolStats(String endpointURI)
+    {
+	return getConnectionManager().getStats(getRoute(endpointURI));
+    }
+
+    /**
+     * Sets maximum number of pooled connections to the origin of an endpoint or graph store.
+     *
+     * @param endpointURI endpoint or graph store URI
+     * @param max maximum number of connections
+     */
+    public void setMaxConnections(String endpointURI, int max)
+    {
+	getConnectionManager().setMaxPerRoute(getRoute(endpointURI), max);
+    }
+
+    /**
+     * Returns HTTP route for the origin of an endpoint or graph store.
+     *
+     * @param endpointURI endpoint or graph store URI
+     * @return route
+     */
+    protected HttpRoute getRoute(String endpointURI)
+    {
+	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
+
+	URI uri = URI.create(endpointURI);
+	boolean secure = uri.getScheme().equalsIgnoreCase("https");
+	int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+	return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+    }
+
+    /**
+     * Returns time after which idle pooled connections are closed.
+     *
+     * @return timeout in milliseconds
+     */
+    public long getConnectionIdleTimeout()
+    {
+	return idleConnectionMonitor.getIdleTimeout();
+    }
+
+    /**
+     * Sets time after which idle pooled connections are closed.
+     *
+     * @param idleTimeout timeout in milliseconds
+     */
+    public void setConnectionIdleTimeout(long idleTimeout)
+    {
+	idleConnectionMonitor.setIdleTimeout(idleTimeout);
+    }
+
+    /**
+     * Returns syntax used to send graphs to Graph Stores.
+     *
+     * @return RDF syntax, or null if the accessor default (N-Triples) is used
+     */
+    public Lang getGraphStoreSendLang()
+    {
+	return graphStoreSendLang;
+    }
+
+    /**
+     * Sets syntax used to send graphs to Graph Stores, e.g. binary RDF for stores that support it.
+     *
+     * @param lang RDF syntax, or null for the accessor default
+     * @see org.graphity.util.RDFBinary
+     */
+    public void setGraphStoreSendLang(Lang lang)
+    {
+	if (log.isDebugEnabled()) log.debug("Setting Graph Store send Lang to {}", lang);
+	this.graphStoreSendLang = lang;
+    }
+
+    /**
+     * Returns executor of asynchronous requests.
+     *
+     * @return thread pool executor
+     */
+    public ThreadPoolExecutor getAsyncExecutor()
+    {
+	return asyncExecutor;
+    }
+
+    /**
+     * Returns guard that bounds how many request threads wait for origins, and for how long.
+     * Reads and writes executed through it run on the request thread; reads are limited by HTTP timeouts.
+     *
+     * @return origin guard
+     */
+    public OriginGuard getOriginGuard()
+    {
+	return originGuard;
+    }
+
+    /**
+     * Sets number of threads that execute asynchronous requests.
+     * It should not exceed the maximum number of pooled connections, as threads would be waiting for them.
+     *
+     * @param poolSize number of threads
+     */
+    public void setAsyncPoolSize(int poolSize)
+    {
+	if (poolSize < 1) throw new IllegalArgumentException("Async pool size must be positive");
+
+	if (poolSize > getAsyncExecutor().getMaximumPoolSize())
+	{
+	    getAsyncExecutor().setMaximumPoolSize(poolSize);
+	    getAsyncExecutor().setCorePoolSize(poolSize);
+	}
+	else
+	{
+	    getAsyncExecutor().setCorePoolSize(poolSize);
+	    getAsyncExecutor().setMaximumPoolSize(poolSize);
+	}
+    }
+
+    /**
+     * Stops asynchronous request threads, closes all pooled connections and stops idle connection eviction.
+     * Pending asynchronous requests are not executed.
+     */
+    public void shutdown()
+    {
+	if (log.isDebugEnabled()) log.debug("Shutting down HTTP connection pool with stats: {}", getConnectionPoolStats());
+	getAsyncExecutor().shutdownNow();
+	idleConnectionMonitor.shutdown();
+	getConnectionManager().shutdown();
     }
 
     /**
@@ -102,7 +538,12 @@ public class DataManager extends FileManager
 	if (log.isDebugEnabled()) log.debug("Remote service {} Query: {} ", endpointURI, query);
 	if (query == null) throw new IllegalArgumentException("Query must be not null");
 
-	QueryEngineHTTP request = new QueryEngineHTTP(endpointURI, query);
+	return createQueryEngine(endpointURI, query, params, getHttpClient());
+    }
+
+    private QueryEngineHTTP createQueryEngine(String endpointURI, Query query, MultivaluedMap<String, String> params, HttpClient client)
+    {
+	QueryEngineHTTP request = new QueryEngineHTTP(endpointURI, query, client, createHttpContext(endpointURI));
 	if (params != null)
 	    for (Entry<String, List<String>> entry : params.entrySet())
 		if (!entry.getKey().equals("query")) // query param is handled separately
@@ -127,17 +568,90 @@ public class DataManager extends FileManager
      * @see <a href="http://www.w3.org/TR/2013/REC-sparql11-query-20130321/#construct">CONSTRUCT</a>
      */
     public Model loadModel(String endpointURI, Query query, MultivaluedMap<String, String> params)
+    {
+	return loadValidatedModel(endpointURI, query, params, null).getResult();
+    }
+
+    /**
+     * Loads RDF model from a remote SPARQL endpoint together with the validators of the origin response.
+     * Cached results keep the validators of the origin response they came from. If <code>If-None-Match</code>
+     * value is supplied and matches the entity tag of a cached or coalesced result, the result is empty and
+     * marked as not modified. If results of the endpoint are not cached, the value is forwarded to the origin
+     * as a conditional request, which can be answered with <code>304 Not Modified</code> as well.
+     * Only <code>DESCRIBE</code> and <code>CONSTRUCT</code> queries can be used with this method.
+     * 
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @param ifNoneMatch <code>If-None-Match</code> value of the client request, or null
+     * @return validated RDF model
+     */
+    public Validated<Model> loadValidatedModel(final String endpointURI, final Query query, final MultivaluedMap<String, String> params, final String ifNoneMatch)
     {
 	if (log.isDebugEnabled()) log.debug("Remote service {} Query: {} ", endpointURI, query);
 	if (query == null) throw new IllegalArgumentException("Query must be not null");
+	if (!query.isConstructType() && !query.isDescribeType()) throw new QueryExecException("Query to load Model must be CONSTRUCT or DESCRIBE");
+
+	final String key = QueryResultCache.createKey(endpointURI, query, params);
+	final long generation = getResultCache().getGeneration();
+	final boolean cached = getResultCache().getTimeToLive(endpointURI) > 0;
+	if (cached)
+	{
+	    Validated<Model> model = getResultCache().getValidatedModel(key);
+	    if (model != null)
+	    {
+		if (log.isTraceEnabled()) log.trace("Remote service {} Query result served from cache", endpointURI);
+		return model.evaluate(ifNoneMatch);
+	    }
+	}
 
+	// identical concurrent queries share one execution; generation keeps them from joining one started before a write
+	// cacheable results are requested unconditionally, so that they can be cached and shared
+	final String originIfNoneMatch = cached ? null : ifNoneMatch;
+	return getRequestCoalescer().execute(getCoalescerKey(key, generation, originIfNoneMatch), new Callable<Validated<Model>>()
+	{
+	    @Override
+	    public Validated<Model> call()
+	    {
+		return executeModel(endpointURI, query, params, key, generation, originIfNoneMatch);
+	    }
+	}, MODEL_SHARING).evaluate(ifNoneMatch);
+    }
+
+    /**
+     * Returns key of an origin request for the request coalescer.
+     */
+    private static String getCoalescerKey(String key, long generation, String ifNoneMatch)
+    {
+	if (ifNoneMatch == null) return key + "\n" + generation;
+	return key + "\n" + generation + "\n" + ifNoneMatch;
+    }
+
+    /**
+     * Executes <code>CONSTRUCT</code> or <code>DESCRIBE</code> query on a remote endpoint and caches the result.
+     * If the result has been cached, the caller gets a copy-on-write view of it.
+     */
+    private Validated<Model> executeModel(String endpointURI, Query query, MultivaluedMap<String, String> params, String key, long generation, String ifNoneMatch)
+    {
 	QueryExecution qex = sparqlService(endpointURI, query, params);
+	if (ifNoneMatch != null && qex instanceof QueryEngineHTTP) ((QueryEngineHTTP)qex).setIfNoneMatch(ifNoneMatch);
 	try
 	{
-	    if (query.isConstructType()) return qex.execConstruct();
-	    if (query.isDescribeType()) return qex.execDescribe();
+	    Model model;
+	    if (query.isConstructType()) model = qex.execConstruct();
+	    else model = qex.execDescribe();
 
-	    throw new QueryExecException("Query to load Model must be CONSTRUCT or DESCRIBE");
+	    Validated<Model> validated = validate(model, qex, false);
+	    if (getResultCache().getTimeToLive(endpointURI) > 0 &&
+		    getResultCache().putModel(endpointURI, key, validated, GraphDependencies.of(query, params), generation))
+		return validated.withResult(CopyOnWriteGraph.createModel(model));
+	    return validated;
+	}
+	catch (QueryExceptionHTTP ex)
+	{
+	    if (ex.getResponseCode() == HttpSC.NOT_MODIFIED_304) return validate(null, qex, true);
+	    if (log.isDebugEnabled()) log.debug("Remote query execution exception: {}", ex);
+	    throw ex;
 	}
 	catch (QueryExecException ex)
 	{
@@ -149,6 +663,17 @@ public class DataManager extends FileManager
 	    qex.close();
 	}
     }
+
+    /**
+     * Wraps result with the validators captured by a remote query execution.
+     */
+    private static <T> Validated<T> validate(T result, QueryExecution qex, boolean notModified)
+    {
+	if (!(qex instanceof QueryEngineHTTP)) return new Validated<>(result);
+
+	QueryEngineHTTP request = (QueryEngineHTTP)qex;
+	return new Validated<>(result, request.getEntityTag(), request.getLastModified(), notModified);
+    }
     
     /**
      * Loads RDF model from a remote SPARQL endpoint using a query and optional request parameters.
@@ -164,6 +689,55 @@ public class DataManager extends FileManager
     {
 	return loadModel(endpointURI, query, null);
     }
+
+    /**
+     * Streams RDF graph from a remote SPARQL endpoint using a query and optional request parameters.
+     * Only <code>DESCRIBE</code> and <code>CONSTRUCT</code> queries can be used with this method.
+     * Unlike {@link #loadModel(String,Query,MultivaluedMap)}, the response is not parsed into a model but
+     * returned unparsed. The returned graph holds the HTTP connection and must be closed by the caller.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @return unparsed RDF graph
+     */
+    public StreamingGraph streamModel(String endpointURI, Query query, MultivaluedMap<String, String> params)
+    {
+	if (log.isDebugEnabled()) log.debug("Remote service {} streaming Query: {} ", endpointURI, query);
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+	if (!query.isConstructType() && !query.isDescribeType()) throw new QueryExecException("Query to stream Model must be CONSTRUCT or DESCRIBE");
+
+	QueryExecution qex = sparqlService(endpointURI, query, params);
+	if (!(qex instanceof QueryEngineHTTP))
+	{
+	    qex.close();
+	    throw new QueryExecException("Remote QueryExecution does not support streaming: " + qex);
+	}
+
+	try
+	{
+	    return new StreamingGraph((QueryEngineHTTP)qex);
+	}
+	catch (QueryExecException ex)
+	{
+	    if (log.isDebugEnabled()) log.debug("Remote query execution exception: {}", ex);
+	    throw ex;
+	}
+    }
+
+    /**
+     * Streams RDF graph from a remote SPARQL endpoint using a query.
+     * This is a convenience method for {@link streamModel(String,Query,MultivaluedMap<String, String>)}
+     * with null request parameters.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @return unparsed RDF graph
+     */
+    public StreamingGraph streamModel(String endpointURI, Query query)
+    {
+	return streamModel(endpointURI, query, null);
+    }
     
     /**
      * Loads RDF model from another RDF model using a SPARQL query.
@@ -210,16 +784,74 @@ public class DataManager extends FileManager
      * @see <a href="http://www.w3.org/TR/2013/REC-sparql11-query-20130321/#select">SELECT</a>
      */
     public ResultSetRewindable loadResultSet(String endpointURI, Query query, MultivaluedMap<String, String> params)
+    {
+	return loadValidatedResultSet(endpointURI, query, params, null).getResult();
+    }
+
+    /**
+     * Loads result set from a remote SPARQL endpoint together with the validators of the origin response.
+     * Conditional requests and cached results are handled as in
+     * {@link #loadValidatedModel(String,Query,MultivaluedMap,String)}.
+     * Only <code>SELECT</code> queries can be used with this method.
+     * 
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @param ifNoneMatch <code>If-None-Match</code> value of the client request, or null
+     * @return validated result set
+     */
+    public Validated<ResultSetRewindable> loadValidatedResultSet(final String endpointURI, final Query query, final MultivaluedMap<String, String> params, final String ifNoneMatch)
     {
 	if (log.isDebugEnabled()) log.debug("Remote service {} Query execution: {} ", endpointURI, query);
 	if (query == null) throw new IllegalArgumentException("Query must be not null");
+	if (!query.isSelectType()) throw new QueryExecException("Query to load ResultSet must be SELECT");
+
+	final String key = QueryResultCache.createKey(endpointURI, query, params);
+	final long generation = getResultCache().getGeneration();
+	final boolean cached = getResultCache().getTimeToLive(endpointURI) > 0;
+	if (cached)
+	{
+	    Validated<ResultSetRewindable> results = getResultCache().getValidatedResultSet(key);
+	    if (results != null)
+	    {
+		if (log.isTraceEnabled()) log.trace("Remote service {} Query result served from cache", endpointURI);
+		return results.evaluate(ifNoneMatch);
+	    }
+	}
+
+	final String originIfNoneMatch = cached ? null : ifNoneMatch;
+	Validated<ResultSetMem> results = getRequestCoalescer().execute(getCoalescerKey(key, generation, originIfNoneMatch), new Callable<Validated<ResultSetMem>>()
+	{
+	    @Override
+	    public Validated<ResultSetMem> call()
+	    {
+		return executeResultSet(endpointURI, query, params, key, generation, originIfNoneMatch);
+	    }
+	});
+	if (results.isNotModified()) return results.<ResultSetRewindable>withResult(null);
+	return results.<ResultSetRewindable>withResult(new ResultSetMem(results.getResult(), false)).evaluate(ifNoneMatch); // own iterator over the shared rows
+    }
 
+    /**
+     * Executes <code>SELECT</code> query on a remote endpoint and caches the result.
+     * The result is shared with coalesced callers.
+     */
+    private Validated<ResultSetMem> executeResultSet(String endpointURI, Query query, MultivaluedMap<String, String> params, String key, long generation, String ifNoneMatch)
+    {
 	QueryExecution qex = sparqlService(endpointURI, query, params);
+	if (ifNoneMatch != null && qex instanceof QueryEngineHTTP) ((QueryEngineHTTP)qex).setIfNoneMatch(ifNoneMatch);
 	try
 	{
-	    if (query.isSelectType()) return ResultSetFactory.copyResults(qex.execSelect());
-	    
-	    throw new QueryExecException("Query to load ResultSet must be SELECT");
+	    Validated<ResultSetMem> results = validate(new ResultSetMem(qex.execSelect()), qex, false);
+	    if (getResultCache().getTimeToLive(endpointURI) > 0)
+		getResultCache().putResultSet(endpointURI, key, results, GraphDependencies.of(query, params), generation);
+	    return results;
+	}
+	catch (QueryExceptionHTTP ex)
+	{
+	    if (ex.getResponseCode() == HttpSC.NOT_MODIFIED_304) return validate((ResultSetMem)null, qex, true);
+	    if (log.isDebugEnabled()) log.debug("Remote query execution exception: {}", ex);
+	    throw ex;
 	}
 	catch (QueryExecException ex)
 	{
@@ -246,7 +878,50 @@ public class DataManager extends FileManager
     {
 	return loadResultSet(endpointURI, query, null);
     }
-    
+
+    /**
+     * Streams result set from a remote SPARQL endpoint using a query and optional request parameters.
+     * Only <code>SELECT</code> queries can be used with this method.
+     * Unlike {@link #loadResultSet(String,Query,MultivaluedMap)}, solutions are not copied into memory but parsed
+     * while they are being read. The returned result set holds the HTTP connection and must be closed by the caller.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @return forward-only result set
+     * @see <a href="http://www.w3.org/TR/2013/REC-sparql11-query-20130321/#select">SELECT</a>
+     */
+    public StreamingResultSet streamResultSet(String endpointURI, Query query, MultivaluedMap<String, String> params)
+    {
+	if (log.isDebugEnabled()) log.debug("Remote service {} streaming Query execution: {} ", endpointURI, query);
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+	if (!query.isSelectType()) throw new QueryExecException("Query to stream ResultSet must be SELECT");
+
+	try
+	{
+	    return new StreamingResultSet(sparqlService(endpointURI, query, params));
+	}
+	catch (QueryExecException ex)
+	{
+	    if (log.isDebugEnabled()) log.debug("Remote query execution exception: {}", ex);
+	    throw ex;
+	}
+    }
+
+    /**
+     * Streams result set from a remote SPARQL endpoint using a query.
+     * This is a convenience method for {@link streamResultSet(String,Query,MultivaluedMap<String, String>)} with
+     * null request parameters.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @return forward-only result set
+     */
+    public StreamingResultSet streamResultSet(String endpointURI, Query query)
+    {
+	return streamResultSet(endpointURI, query, null);
+    }
+
     /**
      * Loads result set from an RDF model using a SPARQL query.
      * Only <code>SELECT</code> queries can be used with this method.
@@ -367,11 +1042,17 @@ public class DataManager extends FileManager
      */
     public void executeUpdateRequest(String endpointURI, UpdateRequest updateRequest)
     {
-	// UpdateExecutionFactory.createRemote(updateRequest, endpointURI);
-	// uses custom UpdateProcessRemote class with HTTP Basic authentication support
-	//UpdateProcessRemote updateProcess = new UpdateProcessRemote(updateRequest, endpointURI);	
-	//updateProcess.execute();
-        UpdateExecutionFactory.createRemote(updateRequest, endpointURI, getContext()).execute();
+	// uses custom UpdateProcessRemote class which sends the request over the pooled client
+	UpdateProcessRemote updateProcess = new UpdateProcessRemote(updateRequest, endpointURI, getContext(),
+		getHttpClient(), createHttpContext(endpointURI));
+	try
+	{
+	    updateProcess.execute();
+	}
+	finally
+	{
+	    getResultCache().invalidate(GraphDependencies.of(updateRequest));
+	}
     }
 
     /**
@@ -398,7 +1079,7 @@ public class DataManager extends FileManager
     public Model getModel(String graphStoreURI)
     {
 	if (log.isDebugEnabled()) log.debug("GET Model from Graph Store {} default graph", graphStoreURI);
-        return getDatasetAccessor(graphStoreURI).getModel();
+	return getValidatedModel(graphStoreURI, null, null).getResult();
     }
     
     /**
@@ -413,7 +1094,35 @@ public class DataManager extends FileManager
     public Model getModel(String graphStoreURI, String graphURI)
     {
 	if (log.isDebugEnabled()) log.debug("GET Model from Graph Store {} with named graph URI: {}", graphStoreURI, graphURI);
-	return getDatasetAccessor(graphStoreURI).getModel(graphURI);	
+	return getValidatedModel(graphStoreURI, graphURI, null).getResult();
+    }
+
+    /**
+     * Loads RDF model from a remote SPARQL Graph Store together with the validators of the origin response.
+     * If <code>If-None-Match</code> value is supplied, the request is sent to the origin as a conditional
+     * request, and the result is empty if the origin responds with <code>304 Not Modified</code>.
+     * Identical concurrent requests, conditional or not, share one origin request.
+     * 
+     * @param graphStoreURI Graph Store URI
+     * @param graphURI named graph URI, or null for the default graph
+     * @param ifNoneMatch <code>If-None-Match</code> value forwarded to the origin, or null
+     * @return validated RDF model, with null result if the graph is not found or not modified
+     */
+    public Validated<Model> getValidatedModel(final String graphStoreURI, String graphURI, final String ifNoneMatch)
+    {
+	final Node graphName = graphURI != null ? NodeFactory.createURI(graphURI) : null;
+	String key = "GET\n" + graphStoreURI + "\n" + (graphURI != null ? graphURI : "");
+	Validated<Graph> graph = getRequestCoalescer().execute(getCoalescerKey(key, getResultCache().getGeneration(), ifNoneMatch), new Callable<Validated<Graph>>()
+	{
+	    @Override
+	    public Validated<Graph> call()
+	    {
+		return getDatasetGraphAccessor(graphStoreURI).httpGet(graphName, ifNoneMatch);
+	    }
+	}, GRAPH_SHARING);
+
+	if (graph.getResult() == null) return graph.<Model>withResult(null);
+	return graph.withResult(ModelFactory.createModelForGraph(graph.getResult()));
     }
 
     /**
@@ -425,7 +1134,14 @@ public class DataManager extends FileManager
     public void addModel(String graphStoreURI, Model model)
     {
 	if (log.isDebugEnabled()) log.debug("POST Model to Graph Store {} default graph", graphStoreURI);
-	getDatasetAccessor(graphStoreURI).add(model);
+	try
+	{
+	    getDatasetAccessor(graphStoreURI).add(model);
+	}
+	finally
+	{
+	    getResultCache().invalidate(Collections.singleton(GraphDependencies.DEFAULT_GRAPH));
+	}
     }
     
     /**
@@ -438,7 +1154,14 @@ public class DataManager extends FileManager
     public void addModel(String graphStoreURI, String graphURI, Model model)
     {
 	if (log.isDebugEnabled()) log.debug("POST Model to Graph Store {} with named graph URI: {}", graphStoreURI, graphURI);
-	getDatasetAccessor(graphStoreURI).add(graphURI, model);
+	try
+	{
+	    getDatasetAccessor(graphStoreURI).add(graphURI, model);
+	}
+	finally
+	{
+	    getResultCache().invalidate(GraphDependencies.of(graphURI));
+	}
     }
 
     /**
@@ -451,7 +1174,14 @@ public class DataManager extends FileManager
     public void putModel(String graphStoreURI, Model model)
     {
 	if (log.isDebugEnabled()) log.debug("PUT Model to Graph Store {} default graph", graphStoreURI);
-	getDatasetAccessor(graphStoreURI).putModel(model);
+	try
+	{
+	    getDatasetAccessor(graphStoreURI).putModel(model);
+	}
+	finally
+	{
+	    getResultCache().invalidate(Collections.singleton(GraphDependencies.DEFAULT_GRAPH));
+	}
     }
 
     /**
@@ -465,7 +1195,14 @@ public class DataManager extends FileManager
     public void putModel(String graphStoreURI, String graphURI, Model model)
     {
 	if (log.isDebugEnabled()) log.debug("PUT Model to Graph Store {} with named graph URI {}", graphStoreURI, graphURI);
-	getDatasetAccessor(graphStoreURI).putModel(graphURI, model);
+	try
+	{
+	    getDatasetAccessor(graphStoreURI).putModel(graphURI, model);
+	}
+	finally
+	{
+	    getResultCache().invalidate(GraphDependencies.of(graphURI));
+	}
     }
 
     /**
@@ -477,7 +1214,14 @@ public class DataManager extends FileManager
     public void deleteDefault(String graphStoreURI)
     {
 	if (log.isDebugEnabled()) log.debug("DELETE default graph from Graph Store {}", graphStoreURI);
-	getDatasetAccessor(graphStoreURI).deleteDefault();
+	try
+	{
+	    getDatasetAccessor(graphStoreURI).deleteDefault();
+	}
+	finally
+	{
+	    getResultCache().invalidate(Collections.singleton(GraphDependencies.DEFAULT_GRAPH));
+	}
     }
 
     /**
@@ -490,7 +1234,262 @@ public class DataManager extends FileManager
     public void deleteModel(String graphStoreURI, String graphURI)
     {
 	if (log.isDebugEnabled()) log.debug("DELETE named graph with URI {} from Graph Store {}", graphURI, graphStoreURI);
-        getDatasetAccessor(graphStoreURI).deleteModel(graphURI);
+	try
+	{
+	    getDatasetAccessor(graphStoreURI).deleteModel(graphURI);
+	}
+	finally
+	{
+	    getResultCache().invalidate(GraphDependencies.of(graphURI));
+	}
+    }
+
+    /**
+     * Executes request asynchronously on the async thread pool.
+     * The returned future is completed (and the optional callback notified) when the request finishes.
+     * Cancelling the future notifies the callback, but does not abort a request that has already started.
+     * The HTTP client is blocking, so this does not save threads: each running request holds a pool thread
+     * until the origin has responded and the response has been read, and at most
+     * {@link #getAsyncExecutor() pool size} requests run at once while the rest wait in a bounded queue.
+     * If the queue is full, the request is rejected immediately instead of piling up.
+     *
+     * @param <T> result type
+     * @param request request to execute
+     * @param callback callback or null, if none
+     * @return future result
+     * @throws RejectedExecutionException if the async queue is full or the data manager has been shut down
+     */
+    public <T> Future<T> submit(final Callable<T> request, FutureCallback<T> callback)
+    {
+	if (request == null) throw new IllegalArgumentException("Callable must be not null");
+
+	final BasicFuture<T> future = new BasicFuture<>(callback);
+	try
+	{
+	    getAsyncExecutor().execute(new Runnable()
+	    {
+		@Override
+		public void run()
+		{
+		    if (future.isCancelled()) return;
+
+		    try
+		    {
+			future.completed(request.call());
+		    }
+		    catch (Exception ex)
+		    {
+			if (log.isDebugEnabled()) log.debug("Asynchronous request failed: {}", ex);
+			future.failed(ex);
+		    }
+		}
+	    });
+	}
+	catch (RejectedExecutionException ex)
+	{
+	    if (getAsyncExecutor().isShutdown()) throw new RejectedExecutionException("Asynchronous request rejected, DataManager has been shut down", ex);
+
+	    int queued = getAsyncExecutor().getQueue().size();
+	    if (log.isWarnEnabled()) log.warn("Rejecting asynchronous request, {} requests are already queued", queued);
+	    throw new RejectedExecutionException("Asynchronous request rejected, all " + getAsyncExecutor().getMaximumPoolSize() +
+		    " async threads are busy and " + queued + " requests are already queued", ex);
+	}
+	return future;
+    }
+
+    /**
+     * Loads RDF model from a remote SPARQL endpoint asynchronously.
+     * The request blocks an async pool thread until it completes, see {@link #submit(Callable,FutureCallback)}.
+     * 
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @param callback callback or null, if none
+     * @return future RDF model
+     * @throws RejectedExecutionException if the async queue is full
+     * @see #loadModel(String,Query,MultivaluedMap)
+     */
+    public Future<Model> loadModelAsync(final String endpointURI, final Query query, final MultivaluedMap<String, String> params, FutureCallback<Model> callback)
+    {
+	return submit(new Callable<Model>()
+	{
+	    @Override
+	    public Model call()
+	    {
+		return loadModel(endpointURI, query, params);
+	    }
+	}, callback);
+    }
+
+    /**
+     * Loads result set from a remote SPARQL endpoint asynchronously.
+     * The request blocks an async pool thread until it completes, see {@link #submit(Callable,FutureCallback)}.
+     * 
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @param callback callback or null, if none
+     * @return future result set
+     * @throws RejectedExecutionException if the async queue is full
+     * @see #loadResultSet(String,Query,MultivaluedMap)
+     */
+    public Future<ResultSetRewindable> loadResultSetAsync(final String endpointURI, final Query query, final MultivaluedMap<String, String> params, FutureCallback<ResultSetRewindable> callback)
+    {
+	return submit(new Callable<ResultSetRewindable>()
+	{
+	    @Override
+	    public ResultSetRewindable call()
+	    {
+		return loadResultSet(endpointURI, query, params);
+	    }
+	}, callback);
+    }
+
+    /**
+     * Returns boolean result from a remote SPARQL endpoint asynchronously.
+     * The request blocks an async pool thread until it completes, see {@link #submit(Callable,FutureCallback)}.
+     * 
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @param callback callback or null, if none
+     * @return future boolean result
+     * @throws RejectedExecutionException if the async queue is full
+     * @see #ask(String,Query,MultivaluedMap)
+     */
+    public Future<Boolean> askAsync(final String endpointURI, final Query query, final MultivaluedMap<String, String> params, FutureCallback<Boolean> callback)
+    {
+	return submit(new Callable<Boolean>()
+	{
+	    @Override
+	    public Boolean call()
+	    {
+		return ask(endpointURI, query, params);
+	    }
+	}, callback);
+    }
+
+    /**
+     * Executes update request on a remote SPARQL endpoint asynchronously.
+     * The request blocks an async pool thread until it completes, see {@link #submit(Callable,FutureCallback)}.
+     * 
+     * @param endpointURI remote endpoint URI
+     * @param updateRequest update request
+     * @param callback callback or null, if none
+     * @return future that completes with null
+     * @throws RejectedExecutionException if the async queue is full
+     * @see #executeUpdateRequest(String,UpdateRequest)
+     */
+    public Future<Void> executeUpdateRequestAsync(final String endpointURI, final UpdateRequest updateRequest, FutureCallback<Void> callback)
+    {
+	return submit(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		executeUpdateRequest(endpointURI, updateRequest);
+		return null;
+	    }
+	}, callback);
+    }
+
+    /**
+     * Loads RDF model from a graph on a remote SPARQL Graph Store asynchronously.
+     * The request blocks an async pool thread until it completes, see {@link #submit(Callable,FutureCallback)}.
+     * 
+     * @param graphStoreURI Graph Store URI
+     * @param graphURI named graph URI, or null for the default graph
+     * @param callback callback or null, if none
+     * @return future RDF model
+     * @throws RejectedExecutionException if the async queue is full
+     * @see #getModel(String,String)
+     */
+    public Future<Model> getModelAsync(final String graphStoreURI, final String graphURI, FutureCallback<Model> callback)
+    {
+	return submit(new Callable<Model>()
+	{
+	    @Override
+	    public Model call()
+	    {
+		if (graphURI == null) return getModel(graphStoreURI);
+		return getModel(graphStoreURI, graphURI);
+	    }
+	}, callback);
+    }
+
+    /**
+     * Adds RDF model to a graph on a remote SPARQL Graph Store asynchronously.
+     * The request blocks an async pool thread until it completes, see {@link #submit(Callable,FutureCallback)}.
+     * 
+     * @param graphStoreURI remote graph store URI
+     * @param graphURI named graph URI, or null for the default graph
+     * @param model RDF model to be added
+     * @param callback callback or null, if none
+     * @return future that completes with null
+     * @throws RejectedExecutionException if the async queue is full
+     * @see #addModel(String,String,Model)
+     */
+    public Future<Void> addModelAsync(final String graphStoreURI, final String graphURI, final Model model, FutureCallback<Void> callback)
+    {
+	return submit(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		if (graphURI == null) addModel(graphStoreURI, model);
+		else addModel(graphStoreURI, graphURI, model);
+		return null;
+	    }
+	}, callback);
+    }
+
+    /**
+     * Sends a query to a remote SPARQL endpoint and returns the raw HTTP response, without parsing the body.
+     * Used to proxy origin responses to clients, so the request is sent without asking for compression.
+     * The response entity holds a pooled connection and must be consumed or closed by the caller.
+     * 
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @param acceptHeader value of the <code>Accept</code> header sent to the endpoint
+     * @return HTTP response
+     */
+    public HttpResponse proxyQuery(String endpointURI, Query query, MultivaluedMap<String, String> params, String acceptHeader)
+    {
+	if (log.isDebugEnabled()) log.debug("Proxying Query to remote service {} with Accept: {}", endpointURI, acceptHeader);
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+
+	return createQueryEngine(endpointURI, query, params, getRawHttpClient()).execRaw(acceptHeader);
+    }
+
+    /**
+     * Retrieves graph from a remote SPARQL Graph Store and returns the raw HTTP response, without parsing the body.
+     * Used to proxy origin responses to clients, so the request is sent without asking for compression.
+     * The response entity holds a pooled connection and must be consumed or closed by the caller.
+     * 
+     * @param graphStoreURI remote graph store URI
+     * @param graphURI named graph URI or null, if the default graph is retrieved
+     * @param acceptHeader value of the <code>Accept</code> header sent to the graph store
+     * @return HTTP response
+     */
+    public HttpResponse proxyGraph(String graphStoreURI, String graphURI, String acceptHeader)
+    {
+	if (log.isDebugEnabled()) log.debug("Proxying GET from Graph Store {} with named graph URI: {}", graphStoreURI, graphURI);
+
+	String target;
+	if (graphURI == null) target = graphStoreURI + "?" + HttpNames.paramGraphDefault + "=";
+	else target = graphStoreURI + "?" + HttpNames.paramGraph + "=" + IRILib.encodeUriComponent(graphURI);
+
+	HttpGet request = new HttpGet(target);
+	request.addHeader(HttpNames.hAccept, acceptHeader);
+	try
+	{
+	    return getRawHttpClient().execute(request, createHttpContext(graphStoreURI));
+	}
+	catch (IOException ex)
+	{
+	    throw new HttpException(ex);
+	}
     }
 
     /**
@@ -501,11 +1500,22 @@ public class DataManager extends FileManager
      */
     public DatasetAccessor getDatasetAccessor(String graphStoreURI)
     {
-        HttpAuthenticator authenticator = getHttpAuthenticator(graphStoreURI);
         //if (authenticator != null) return DatasetAccessorFactory.createHTTP(graphStoreURI, authenticator);
         //else return DatasetAccessorFactory.createHTTP(graphStoreURI);
-        if (authenticator != null) return new DatasetAdapter(new DatasetGraphAccessorHTTP(graphStoreURI, authenticator));
-        else return new DatasetAdapter(new DatasetGraphAccessorHTTP(graphStoreURI));
+        return new DatasetAdapter(getDatasetGraphAccessor(graphStoreURI));
+    }
+
+    /**
+     * Returns dataset graph accessor for a given graph store URI, using the pooled HTTP client.
+     * 
+     * @param graphStoreURI graph store URI
+     * @return graph accessor
+     */
+    public DatasetGraphAccessorHTTP getDatasetGraphAccessor(String graphStoreURI)
+    {
+        DatasetGraphAccessorHTTP accessor = new DatasetGraphAccessorHTTP(graphStoreURI, getHttpClient(), createHttpContext(graphStoreURI));
+        if (getGraphStoreSendLang() != null) accessor.setSendLang(getGraphStoreSendLang());
+        return accessor;
     }
     
     /**
@@ -559,42 +1569,41 @@ public class DataManager extends FileManager
 
     /**
      * Given a URI (e.g. with encoded SPARQL query string), finds matching SPARQL endpoint in the service
-     * context map.
+     * context map. If several endpoint URIs are prefixes of the URI, the longest one matches.
      * 
      * @param filenameOrURI SPARQL request URI
      * @return matching map entry, or null if none
      */
     public Entry<String, Context> findEndpoint(String filenameOrURI)
     {
-	if (getServiceContextMap() != null)
-	{
-	    Iterator<Entry<String, Context>> it = getServiceContextMap().entrySet().iterator();
+	if (filenameOrURI == null) throw new IllegalArgumentException("URI must be not null");
 
-	    while (it.hasNext())
-	    {
-		Entry<String, Context> endpoint = it.next(); 
-		if (filenameOrURI.startsWith(endpoint.getKey()))
-		    return endpoint;
-	    }
-	}
-	
-	return null;
+	return serviceContextIndex.findLongestPrefix(filenameOrURI);
     }
 
     /**
      * Returns the service context map. Endpoint URIs are used as keys.
+     * The map is a read-only snapshot: it is never modified, but replaced by a modified copy when a service
+     * context is put. Reads therefore take no locks, and are not affected by concurrent updates.
      * 
-     * @return service context map
+     * @return read-only service context map
      */
     public Map<String,Context> getServiceContextMap()
     {
-	if (!getContext().isDefined(Service.serviceContext))
-	{
-	    Map<String,Context> serviceContext = new HashMap<>();
-	    getContext().put(Service.serviceContext, serviceContext);
-	}
-	
-	return (Map<String,Context>)getContext().get(Service.serviceContext);
+	return serviceContextMap;
+    }
+
+    /**
+     * Publishes new service context map, and sets it on the SPARQL context for use by query engines.
+     * The endpoint prefix index is rebuilt before the map is published.
+     * 
+     * @param map new service context map, not to be modified afterwards
+     */
+    private void publishServiceContextMap(Map<String,Context> map)
+    {
+	serviceContextIndex = new PrefixIndex<>(map);
+	serviceContextMap = Collections.unmodifiableMap(map);
+	if (getContext() != null) getContext().put(Service.serviceContext, serviceContextMap);
     }
 
     /**
@@ -607,7 +1616,7 @@ public class DataManager extends FileManager
     {
 	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
 	
-	getServiceContextMap().put(endpointURI, context);
+	putServiceContext(endpointURI, context);
     }
 
     /**
@@ -621,7 +1630,7 @@ public class DataManager extends FileManager
 	if (endpoint == null) throw new IllegalArgumentException("Endpoint Resource must be not null");
 	if (!endpoint.isURIResource()) throw new IllegalArgumentException("Endpoint Resource must be URI Resource (not a blank node)");
 	
-	getServiceContextMap().put(endpoint.getURI(), context);
+	putServiceContext(endpoint.getURI(), context);
     }
 
     /**
@@ -657,12 +1666,26 @@ public class DataManager extends FileManager
 	return getServiceContextMap().get(endpointURI);
     }
     
+    /**
+     * Binds service context to a SPARQL endpoint, replacing the existing one.
+     * The service context map is copied on write, so this should happen rarely (e.g. at startup).
+     * 
+     * @param endpointURI endpoint URI
+     * @param context context
+     * @return previous context of the endpoint, or null if none
+     */
     public Context putServiceContext(String endpointURI, Context context)
     {
 	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
 	if (context == null) throw new IllegalArgumentException("Context must be not null");
 
-        return getServiceContextMap().put(endpointURI, context);
+	synchronized (serviceContextLock)
+	{
+	    Map<String,Context> map = new LinkedHashMap<>(getServiceContextMap());
+	    Context previous = map.put(endpointURI, context);
+	    publishServiceContextMap(map);
+	    return previous;
+	}
     }
     
     /**
@@ -702,7 +1725,9 @@ public class DataManager extends FileManager
     }
 
     /**
-     * Configures HTTP Basic authentication for SPARQL service context
+     * Configures HTTP Basic authentication for SPARQL service context.
+     * If the endpoint already has the same credentials, its context is returned without an update, so this can
+     * be called on every request.
      * 
      * @param endpointURI endpoint or graph store URI
      * @param authUser username
@@ -716,12 +1741,18 @@ public class DataManager extends FileManager
 	if (authUser == null) throw new IllegalArgumentException("SPARQL endpoint authentication username cannot be null");
 	if (authPwd == null) throw new IllegalArgumentException("SPARQL endpoint authentication password cannot be null");
 
+	Context existing = getServiceContextMap().get(endpointURI);
+	if (existing != null && authUser.equals(existing.getAsString(Service.queryAuthUser)) &&
+		authPwd.equals(existing.getAsString(Service.queryAuthPwd)))
+	    return existing;
+
 	if (log.isDebugEnabled()) log.debug("Setting username/password credentials for SPARQL endpoint: {}", endpointURI);
 	Context queryContext = new Context();
 	queryContext.put(Service.queryAuthUser, authUser);
 	queryContext.put(Service.queryAuthPwd, authPwd);
 
-        return putServiceContext(endpointURI, queryContext);
+        putServiceContext(endpointURI, queryContext);
+	return queryContext;
     }
 
 }
\ No newline at end of file
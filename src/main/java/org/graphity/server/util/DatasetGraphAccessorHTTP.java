@@ -19,14 +19,23 @@
 package org.graphity.server.util;
 
 
+import org.apache.http.Header ;
 import org.apache.http.HttpEntity ;
+import org.apache.http.HttpHeaders ;
+import org.apache.http.HttpResponse ;
 import org.apache.http.HttpVersion ;
+import org.apache.http.client.HttpClient ;
+import org.apache.http.client.methods.HttpGet ;
 import org.apache.http.client.methods.HttpHead ;
 import org.apache.http.client.methods.HttpUriRequest ;
 import org.apache.http.params.BasicHttpParams ;
 import org.apache.http.params.HttpConnectionParams ;
 import org.apache.http.params.HttpParams ;
 import org.apache.http.params.HttpProtocolParams ;
+import org.apache.http.impl.cookie.DateParseException ;
+import org.apache.http.impl.cookie.DateUtils ;
+import org.apache.http.protocol.HttpContext ;
+import org.apache.http.util.EntityUtils ;
 import org.apache.jena.atlas.web.HttpException ;
 import org.apache.jena.atlas.web.auth.HttpAuthenticator;
 import org.apache.jena.atlas.web.auth.SimpleAuthenticator;
@@ -42,9 +51,19 @@ import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.shared.JenaException ;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.InputStreamEntity;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.web.DatasetGraphAccessor;
 import org.apache.jena.web.HttpSC;
+import org.graphity.util.RDFBinary;
+import org.graphity.util.RDFBinaryWriter;
 
 /**
  * A dataset graph accessor that talks to stores that implement the SPARQL 1.1 Graph Store Protocol
@@ -57,9 +76,15 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
     private final String remote ;
     private static final HttpResponseHandler noResponse = HttpResponseLib.nullResponse ;
     private HttpAuthenticator authenticator;
+    private HttpClient client = null ;
+    private HttpContext httpContext = null ;
 
+    /** Default format used to send a graph to the server */ 
+    private static final RDFFormat defaultSendLang = RDFFormat.NTRIPLES_UTF8; //RDFFormat.RDFXML_PLAIN ;
     /** Format used to send a graph to the server */ 
-    private static RDFFormat sendLang = RDFFormat.NTRIPLES_UTF8; //RDFFormat.RDFXML_PLAIN ;
+    private RDFFormat sendLang = defaultSendLang ;
+    /** Dictionary size of binary RDF written from streamed uploads, which keeps their memory use flat */
+    private static final int uploadDictionarySize = 1 << 16 ;
 
     /** 
      * Create a DatasetUpdater for the remote URL 
@@ -79,7 +104,20 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
         this(remote);
         this.setAuthenticator(authenticator);
     }
-    
+
+    /**
+     * Create a DatasetUpdater for the remote URL that sends requests using a (pooled) HTTP client.
+     * Authentication should be set on the HTTP context, since an authenticator would modify the client.
+     * @param remote Remote URL
+     * @param client HTTP client
+     * @param httpContext HTTP context
+     */
+    public DatasetGraphAccessorHTTP(String remote, HttpClient client, HttpContext httpContext) {
+        this(remote);
+        this.client = client ;
+        this.httpContext = httpContext ;
+    }
+
     /**
      * Sets authentication credentials for the remote URL
      * @param username User name
@@ -113,7 +151,7 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
     {
         HttpCaptureResponse<Graph> graph = HttpResponseLib.graphHandler() ;
         try {
-            HttpOp.execHttpGet(url, GetAcceptHeader, graph, this.authenticator) ;
+            HttpOp.execHttpGet(url, GetAcceptHeader, graph, this.client, this.httpContext, this.authenticator) ;
         } catch (HttpException ex) {
             if ( ex.getResponseCode() == HttpSC.NOT_FOUND_404 )
                 return null ;
@@ -122,6 +160,92 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
         return graph.get(); 
     }
     
+    /**
+     * Gets a graph together with the validators (<code>ETag</code>, <code>Last-Modified</code>) of the response.
+     * If <code>If-None-Match</code> value is supplied and a HTTP client is set, the request is conditional and
+     * the result is empty if the server responds with <code>304 Not Modified</code>.
+     * @param graphName graph name, or null for the default graph
+     * @param ifNoneMatch <code>If-None-Match</code> value, or null
+     * @return validated graph, with null result if not found or not modified
+     */
+    public Validated<Graph> httpGet(Node graphName, String ifNoneMatch)
+    {
+        String url = graphName == null ? targetDefault() : target(graphName) ;
+        HttpCaptureResponse<Graph> graph = HttpResponseLib.graphHandler() ;
+        ValidatorCapture handler = new ValidatorCapture(graph) ;
+
+        if ( this.client == null || ifNoneMatch == null ) {
+            try {
+                HttpOp.execHttpGet(url, GetAcceptHeader, handler, this.client, this.httpContext, this.authenticator) ;
+            } catch (HttpException ex) {
+                if ( ex.getResponseCode() == HttpSC.NOT_FOUND_404 )
+                    return new Validated<>(null) ;
+                throw ex ;
+            }
+            return new Validated<>(graph.get(), handler.entityTag, handler.lastModified) ;
+        }
+
+        HttpGet httpGet = new HttpGet(url) ;
+        httpGet.addHeader(HttpNames.hAccept, GetAcceptHeader) ;
+        httpGet.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch) ;
+        try {
+            HttpResponse response = this.client.execute(httpGet, this.httpContext) ;
+            int statusCode = response.getStatusLine().getStatusCode() ;
+            try {
+                if ( statusCode == HttpSC.NOT_MODIFIED_304 ) {
+                    handler.capture(response) ;
+                    return new Validated<>(null, handler.entityTag, handler.lastModified, true) ;
+                }
+                if ( statusCode == HttpSC.NOT_FOUND_404 )
+                    return new Validated<>(null) ;
+                if ( statusCode >= 400 )
+                    throw new HttpException(statusCode, response.getStatusLine().getReasonPhrase()) ;
+
+                handler.handle(url, response) ;
+                return new Validated<>(graph.get(), handler.entityTag, handler.lastModified) ;
+            } finally {
+                EntityUtils.consume(response.getEntity()) ;
+            }
+        } catch (IOException ex) {
+            throw new HttpException(ex) ;
+        }
+    }
+
+    /** Response handler that records validators before passing the response on */
+    private static class ValidatorCapture implements HttpResponseHandler
+    {
+        private final HttpResponseHandler handler ;
+        private String entityTag = null ;
+        private Date lastModified = null ;
+
+        ValidatorCapture(HttpResponseHandler handler)
+        {
+            this.handler = handler ;
+        }
+
+        @Override
+        public void handle(String baseIRI, HttpResponse response) throws IOException
+        {
+            capture(response) ;
+            handler.handle(baseIRI, response) ;
+        }
+
+        void capture(HttpResponse response)
+        {
+            Header eTag = response.getFirstHeader(HttpHeaders.ETAG) ;
+            if ( eTag != null )
+                entityTag = eTag.getValue() ;
+            Header lastModifiedHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED) ;
+            if ( lastModifiedHeader != null ) {
+                try {
+                    lastModified = DateUtils.parseDate(lastModifiedHeader.getValue()) ;
+                } catch (DateParseException ex) {
+                    lastModified = null ; // malformed date is not a validator
+                }
+            }
+        }
+    }
+
     @Override
     public boolean httpHead()
     {
@@ -138,7 +262,7 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
     {
         HttpUriRequest httpHead = new HttpHead(url) ;
         try {
-            HttpOp.execHttpHead(url, WebContent.defaultGraphAcceptHeader, noResponse, null, null, this.authenticator) ;
+            HttpOp.execHttpHead(url, WebContent.defaultGraphAcceptHeader, noResponse, this.client, this.httpContext, this.authenticator) ;
             return true ;
         } catch (HttpException ex) {
             if ( ex.getResponseCode() == HttpSC.NOT_FOUND_404 )
@@ -156,7 +280,7 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
     private void doPut(String url, Graph data)
     {
         HttpEntity entity = graphToHttpEntity(data) ;
-        HttpOp.execHttpPut(url, entity, null, null, this.authenticator) ;
+        HttpOp.execHttpPut(url, entity, this.client, this.httpContext, this.authenticator) ;
     }
     
     @Override
@@ -168,7 +292,7 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
     private void doDelete(String url)
     {
         try {
-            HttpOp.execHttpDelete(url, noResponse, null, null, this.authenticator) ;
+            HttpOp.execHttpDelete(url, noResponse, this.client, this.httpContext, this.authenticator) ;
         } catch (HttpException ex) {
             if ( ex.getResponseCode() == HttpSC.NOT_FOUND_404 )
                 return ;
@@ -184,7 +308,7 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
     private void doPost(String url, Graph data)
     {
         HttpEntity entity = graphToHttpEntity(data) ;
-        HttpOp.execHttpPost(url, entity, null, null, this.authenticator) ;
+        HttpOp.execHttpPost(url, entity, this.client, this.httpContext, this.authenticator) ;
     }
 
     @Override
@@ -226,14 +350,25 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
     }
     
     private HttpEntity graphToHttpEntity(final Graph graph) {
+            if ( graph instanceof UploadGraph && ! ((UploadGraph)graph).isConsumed() ) {
+                HttpEntity uploadEntity = uploadToHttpEntity((UploadGraph)graph) ;
+                if ( uploadEntity != null )
+                    return uploadEntity ;
+            }
             ByteArrayOutputStream out = new ByteArrayOutputStream() ;
+            if ( getSendLang().equals(RDFBinary.LANG) ) {
+                RDFBinary.write(out, graph) ;
+                ByteArrayEntity binaryEntity = new ByteArrayEntity(out.toByteArray()) ;
+                binaryEntity.setContentType(RDFBinary.CONTENT_TYPE) ;
+                return binaryEntity ;
+            }
             Model model = ModelFactory.createModelForGraph(graph) ;
             model.write(out, getSendLang().getName()); //model.write(out, WebContent.langNTriples) ;
             byte[] bytes = out.toByteArray() ;
             ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray()) ;
             InputStreamEntity reqEntity = new InputStreamEntity(in, bytes.length) ;
             //reqEntity.setContentType(getSendLang().getContentType().getContentType());
-            reqEntity.setContentType(getSendLang().getAltContentTypes().get(0)) ;
+            reqEntity.setContentType(getSendContentType()) ;
             reqEntity.setContentEncoding("UTF-8") ;
             HttpEntity entity = reqEntity ;
             return entity;
@@ -254,9 +389,89 @@ public class DatasetGraphAccessorHTTP implements DatasetGraphAccessor
         */
     }
     
+    /**
+     * Streams an unparsed upload to the server. If the upload is in the send syntax, it is passed through
+     * without parsing, otherwise it is parsed into a writer of the send syntax while the request is written.
+     * Either way memory use does not depend on the size of the upload.
+     * @param upload unparsed upload
+     * @return chunked entity, or null if there is no streaming writer for the send syntax
+     */
+    private HttpEntity uploadToHttpEntity(final UploadGraph upload) {
+        if ( upload.getLang().equals(getSendLang()) ) {
+            InputStreamEntity entity = new InputStreamEntity(upload.getStream(), -1) ;
+            entity.setContentType(getSendContentType()) ;
+            entity.setChunked(true) ;
+            return entity ;
+        }
+        if ( ! getSendLang().equals(RDFBinary.LANG) && ! getSendLang().equals(Lang.NTRIPLES) )
+            return null ;
+
+        UploadEntity entity = new UploadEntity(upload, getSendLang()) ;
+        entity.setContentType(getSendContentType()) ;
+        entity.setChunked(true) ;
+        return entity ;
+    }
+
+    private String getSendContentType() {
+        if ( getSendLang().equals(RDFBinary.LANG) )
+            return RDFBinary.CONTENT_TYPE ;
+        return getSendLang().getAltContentTypes().get(0) ;
+    }
+
+    /** Entity that parses an upload into the send syntax as it is written. It can be written once. */
+    private static class UploadEntity extends AbstractHttpEntity
+    {
+        private final UploadGraph upload ;
+        private final Lang lang ;
+
+        UploadEntity(UploadGraph upload, Lang lang)
+        {
+            this.upload = upload ;
+            this.lang = lang ;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException
+        {
+            StreamRDF writer ;
+            if ( lang.equals(RDFBinary.LANG) )
+                writer = new RDFBinaryWriter(out, uploadDictionarySize) ;
+            else
+                writer = StreamRDFLib.writer(out) ;
+            upload.parse(writer) ;
+        }
+
+        @Override
+        public InputStream getContent()
+        {
+            throw new UnsupportedOperationException("Upload entity can only be written") ;
+        }
+
+        @Override
+        public boolean isRepeatable()       { return false ; }
+
+        @Override
+        public long getContentLength()      { return -1 ; }
+
+        @Override
+        public boolean isStreaming()        { return ! upload.isConsumed() ; }
+    }
+    
     public Lang getSendLang()
     {
         return sendLang.getLang();
     }
+
+    /**
+     * Sets syntax used to send graphs to the server, e.g. binary RDF between services.
+     * @param lang RDF syntax that RIOT can write
+     */
+    public void setSendLang(Lang lang)
+    {
+        if (lang == null) throw new IllegalArgumentException("Lang must be not null") ;
+        RDFFormat format = RDFWriterRegistry.defaultSerialization(lang) ;
+        if (format == null) throw new IllegalArgumentException("No writer for Lang: " + lang) ;
+        this.sendLang = format ;
+    }
     
 }
\ No newline at end of file
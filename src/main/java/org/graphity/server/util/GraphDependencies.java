@@ -0,0 +1,316 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.modify.request.*;
+import com.hp.hpl.jena.sparql.syntax.Element;
+import com.hp.hpl.jena.sparql.syntax.ElementNamedGraph;
+import com.hp.hpl.jena.sparql.syntax.ElementSubQuery;
+import com.hp.hpl.jena.sparql.syntax.ElementVisitorBase;
+import com.hp.hpl.jena.sparql.syntax.ElementWalker;
+import com.hp.hpl.jena.update.Update;
+import com.hp.hpl.jena.update.UpdateRequest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.ws.rs.core.MultivaluedMap;
+import org.apache.jena.atlas.lib.Sink;
+import org.apache.jena.riot.web.HttpNames;
+
+/**
+ * Extracts graphs that queries read from and updates write to, so that cached query results can be
+ * invalidated precisely when a graph changes.
+ * Graphs are identified by URI. The default graph is denoted by {@link #DEFAULT_GRAPH}, and any (or every)
+ * named graph by {@link #NAMED_GRAPHS}, for example when a query uses <code>GRAPH ?g</code> or an update
+ * does <code>DROP NAMED</code>.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see QueryResultCache
+ * @see <a href="http://www.w3.org/TR/sparql11-update/#graphManagement">SPARQL 1.1 Update Graph Management</a>
+ */
+public class GraphDependencies
+{
+
+    /** Default graph of the origin dataset */
+    public static final String DEFAULT_GRAPH = Quad.defaultGraphIRI.getURI();
+
+    /** All named graphs of the origin dataset */
+    public static final String NAMED_GRAPHS = Quad.unionGraph.getURI();
+
+    private GraphDependencies()
+    {
+    }
+
+    /**
+     * Returns graphs that a query reads from.
+     * The dataset given in request parameters overrides the one in the query, as in SPARQL Protocol.
+     *
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @return set of graph URIs
+     */
+    public static Set<String> of(Query query, MultivaluedMap<String, String> params)
+    {
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+
+	List<String> defaultGraphURIs = query.getGraphURIs();
+	List<String> namedGraphURIs = query.getNamedGraphURIs();
+	if (params != null && params.containsKey(HttpNames.paramDefaultGraphURI))
+	    defaultGraphURIs = params.get(HttpNames.paramDefaultGraphURI);
+	if (params != null && params.containsKey(HttpNames.paramNamedGraphURI))
+	    namedGraphURIs = params.get(HttpNames.paramNamedGraphURI);
+
+	Set<String> graphs = new HashSet<>();
+	if (defaultGraphURIs == null || defaultGraphURIs.isEmpty()) graphs.add(DEFAULT_GRAPH);
+	else graphs.addAll(defaultGraphURIs);
+
+	addPatternGraphs(query, namedGraphURIs, graphs);
+	return graphs;
+    }
+
+    private static void addPatternGraphs(Query query, final Collection<String> namedGraphURIs, final Set<String> graphs)
+    {
+	Element pattern = query.getQueryPattern();
+	if (pattern == null) return; // e.g. DESCRIBE <uri>
+
+	ElementWalker.walk(pattern, new ElementVisitorBase()
+	{
+	    @Override
+	    public void visit(ElementNamedGraph el)
+	    {
+		Node graph = el.getGraphNameNode();
+		if (graph.isURI()) graphs.add(graph.getURI());
+		else if (namedGraphURIs == null || namedGraphURIs.isEmpty()) graphs.add(NAMED_GRAPHS);
+		else graphs.addAll(namedGraphURIs);
+	    }
+
+	    @Override
+	    public void visit(ElementSubQuery el)
+	    {
+		addPatternGraphs(el.getQuery(), namedGraphURIs, graphs);
+	    }
+	});
+    }
+
+    /**
+     * Returns graphs that an update request writes to.
+     *
+     * @param updateRequest update request
+     * @return set of graph URIs
+     */
+    public static Set<String> of(UpdateRequest updateRequest)
+    {
+	if (updateRequest == null) throw new IllegalArgumentException("UpdateRequest must be not null");
+
+	GraphCollector collector = new GraphCollector();
+	for (Update update : updateRequest.getOperations()) update.visit(collector);
+	return collector.getGraphs();
+    }
+
+    /**
+     * Returns graph written by a Graph Store operation.
+     *
+     * @param graphURI named graph URI, or null for the default graph
+     * @return singleton set of graph URI
+     */
+    public static Set<String> of(String graphURI)
+    {
+	if (graphURI == null) return Collections.singleton(DEFAULT_GRAPH);
+	return Collections.singleton(graphURI);
+    }
+
+    /**
+     * Returns true if a change to the affected graphs can change a result that depends on the given ones.
+     * If the origin uses the union of named graphs as its default graph, a change to any named graph also
+     * affects the default graph.
+     *
+     * @param dependencies graphs that a result was read from
+     * @param affected graphs that were written to
+     * @param unionDefaultGraph true if the default graph is the union of named graphs
+     * @return true if the result must be invalidated
+     */
+    public static boolean isAffected(Set<String> dependencies, Set<String> affected, boolean unionDefaultGraph)
+    {
+	if (dependencies == null) throw new IllegalArgumentException("Dependency set must be not null");
+	if (affected == null) throw new IllegalArgumentException("Affected graph set must be not null");
+
+	for (String graph : affected)
+	{
+	    if (dependencies.contains(graph)) return true;
+	    if (graph.equals(DEFAULT_GRAPH)) continue;
+
+	    // graph is a named graph, or all of them
+	    if (dependencies.contains(NAMED_GRAPHS)) return true;
+	    if (unionDefaultGraph && dependencies.contains(DEFAULT_GRAPH)) return true;
+	    if (graph.equals(NAMED_GRAPHS))
+		for (String dependency : dependencies)
+		    if (!dependency.equals(DEFAULT_GRAPH)) return true;
+	}
+
+	return false;
+    }
+
+    /**
+     * Collects graphs written by update operations, including streamed ones.
+     */
+    static class GraphCollector implements UpdateVisitor
+    {
+	private final Set<String> graphs = new HashSet<>();
+
+	public Set<String> getGraphs()
+	{
+	    return graphs;
+	}
+
+	private void add(Node graph)
+	{
+	    if (graph == null || Quad.isDefaultGraph(graph)) graphs.add(DEFAULT_GRAPH);
+	    else if (graph.isURI()) graphs.add(graph.getURI());
+	    else graphs.add(NAMED_GRAPHS); // variable
+	}
+
+	private void add(Target target)
+	{
+	    if (target.isDefault()) graphs.add(DEFAULT_GRAPH);
+	    else if (target.isAllNamed()) graphs.add(NAMED_GRAPHS);
+	    else if (target.isAll())
+	    {
+		graphs.add(DEFAULT_GRAPH);
+		graphs.add(NAMED_GRAPHS);
+	    }
+	    else add(target.getGraph());
+	}
+
+	private void add(List<Quad> quads, Node withGraph)
+	{
+	    for (Quad quad : quads)
+		if (quad.isDefaultGraph() && withGraph != null) add(withGraph);
+		else add(quad.getGraph());
+	}
+
+	@Override
+	public void visit(UpdateDrop update)
+	{
+	    add(update.getTarget());
+	}
+
+	@Override
+	public void visit(UpdateClear update)
+	{
+	    add(update.getTarget());
+	}
+
+	@Override
+	public void visit(UpdateCreate update)
+	{
+	    add(update.getGraph());
+	}
+
+	@Override
+	public void visit(UpdateLoad update)
+	{
+	    add(update.getDest());
+	}
+
+	@Override
+	public void visit(UpdateAdd update)
+	{
+	    add(update.getDest());
+	}
+
+	@Override
+	public void visit(UpdateCopy update)
+	{
+	    add(update.getDest());
+	}
+
+	@Override
+	public void visit(UpdateMove update)
+	{
+	    add(update.getSrc());
+	    add(update.getDest());
+	}
+
+	@Override
+	public void visit(UpdateDataInsert update)
+	{
+	    add(update.getQuads(), null);
+	}
+
+	@Override
+	public void visit(UpdateDataDelete update)
+	{
+	    add(update.getQuads(), null);
+	}
+
+	@Override
+	public void visit(UpdateDeleteWhere update)
+	{
+	    add(update.getQuads(), null);
+	}
+
+	@Override
+	public void visit(UpdateModify update)
+	{
+	    add(update.getDeleteQuads(), update.getWithIRI());
+	    add(update.getInsertQuads(), update.getWithIRI());
+	}
+
+	@Override
+	public Sink<Quad> createInsertDataSink()
+	{
+	    return new GraphSink();
+	}
+
+	@Override
+	public Sink<Quad> createDeleteDataSink()
+	{
+	    return new GraphSink();
+	}
+
+	/**
+	 * Collects graphs of quads that a streamed <code>INSERT DATA</code> or <code>DELETE DATA</code> sends.
+	 */
+	private class GraphSink implements Sink<Quad>
+	{
+
+	    @Override
+	    public void send(Quad quad)
+	    {
+		add(quad.getGraph());
+	    }
+
+	    @Override
+	    public void flush()
+	    {
+	    }
+
+	    @Override
+	    public void close()
+	    {
+	    }
+
+	}
+
+    }
+
+}
@@ -0,0 +1,214 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Growable in-memory output buffer that hashes bytes as they are written.
+ * Responses are serialized into a buffer once, and the hash of the bytes serves as the entity tag, so the data
+ * does not have to be traversed again to compute it. Buffers are pooled: they are acquired before serialization
+ * and released once the bytes have been sent (or are not needed, e.g. for <code>304 Not Modified</code>).
+ * A buffer that is never released is simply garbage collected.
+ * Buffers are limited in size, so that large representations are not held in memory: once the limit is
+ * exceeded, writing fails with {@link LimitExceededException} and the representation has to be streamed
+ * instead. The hash is 64-bit FNV-1a.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.provider.HashingBufferWriter
+ * @see <a href="http://www.isthe.com/chongo/tech/comp/fnv/">FNV hash</a>
+ */
+public class HashingBuffer extends OutputStream
+{
+
+    /** Maximum number of pooled buffers */
+    public static final int POOL_SIZE = 64;
+    /** Initial capacity of new buffers */
+    public static final int INITIAL_CAPACITY = 8 * 1024;
+    /** Buffers that have grown above this capacity are not returned to the pool */
+    public static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+    /** Default maximum number of buffered bytes */
+    public static final int DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final BlockingQueue<HashingBuffer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    private byte[] buf;
+    private int limit = Integer.MAX_VALUE;
+    private int count = 0;
+    private long hash = FNV_OFFSET_BASIS;
+    private boolean released = false;
+
+    /**
+     * Creates buffer with the given initial capacity. Use {@link #acquire()} to obtain a pooled one.
+     *
+     * @param capacity initial capacity in bytes
+     */
+    public HashingBuffer(int capacity)
+    {
+	if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative");
+	this.buf = new byte[capacity];
+    }
+
+    /**
+     * Returns maximum number of bytes that pooled buffers hold.
+     *
+     * @return maximum size in bytes
+     */
+    public static int getMaxSize()
+    {
+	return maxSize;
+    }
+
+    /**
+     * Sets maximum number of bytes that pooled buffers hold. Applies to buffers acquired afterwards.
+     *
+     * @param size maximum size in bytes
+     */
+    public static void setMaxSize(int size)
+    {
+	if (size < 0) throw new IllegalArgumentException("Maximum buffer size cannot be negative");
+	maxSize = size;
+    }
+
+    /**
+     * Returns empty buffer limited to the maximum size, from the pool if one is available.
+     *
+     * @return buffer that must be released after use
+     * @see #getMaxSize()
+     */
+    public static HashingBuffer acquire()
+    {
+	HashingBuffer buffer = pool.poll();
+	if (buffer == null) buffer = new HashingBuffer(INITIAL_CAPACITY);
+
+	synchronized (buffer)
+	{
+	    buffer.released = false;
+	    buffer.limit = getMaxSize();
+	}
+	return buffer;
+    }
+
+    /**
+     * Returns this buffer to the pool. The buffer must not be used afterwards. Releasing more than once has no
+     * effect.
+     */
+    public void release()
+    {
+	synchronized (this)
+	{
+	    if (released) return;
+	    released = true;
+	}
+
+	if (buf.length > MAX_POOLED_CAPACITY) return;
+	reset();
+	pool.offer(this);
+    }
+
+    @Override
+    public void write(int b)
+    {
+	ensureCapacity(count + 1);
+	buf[count++] = (byte)b;
+	hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+	if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+
+	ensureCapacity(count + len);
+	System.arraycopy(b, off, buf, count, len);
+	long h = hash;
+	for (int i = off; i < off + len; i++)
+	    h = (h ^ (b[i] & 0xff)) * FNV_PRIME;
+	hash = h;
+	count += len;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+	if (capacity < 0 || capacity > limit) throw new LimitExceededException(limit);
+	if (capacity > buf.length) buf = Arrays.copyOf(buf, Math.min(limit, Math.max(capacity, buf.length * 2)));
+    }
+
+    /**
+     * Writes buffered bytes to an output stream.
+     *
+     * @param out output stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException
+    {
+	out.write(buf, 0, count);
+    }
+
+    /**
+     * Discards buffered bytes and resets the hash.
+     */
+    public void reset()
+    {
+	count = 0;
+	hash = FNV_OFFSET_BASIS;
+    }
+
+    /**
+     * Returns hash of the bytes written so far.
+     *
+     * @return 64-bit hash
+     */
+    public long getHash()
+    {
+	return hash;
+    }
+
+    public int size()
+    {
+	return count;
+    }
+
+    /**
+     * Thrown when more bytes are written than the buffer may hold.
+     */
+    public static class LimitExceededException extends RuntimeException
+    {
+	private static final long serialVersionUID = 1L;
+
+	public LimitExceededException(int limit)
+	{
+	    super("Buffer size exceeds the limit of " + limit + " bytes");
+	}
+
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[HashingBuffer size: " + size() + " hash: " + Long.toHexString(getHash()) + "]";
+    }
+
+}
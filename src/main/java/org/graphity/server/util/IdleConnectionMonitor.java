@@ -0,0 +1,109 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.http.conn.ClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Daemon thread that periodically evicts expired and idle connections from a connection pool.
+ * HttpClient 4.2 does not evict pooled connections on its own, so connections closed by the origin
+ * would otherwise only be detected by the stale check when they are leased again.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see <a href="http://hc.apache.org/httpcomponents-client-4.2.x/tutorial/html/connmgmt.html#d5e659">Connection eviction policy</a>
+ */
+public class IdleConnectionMonitor extends Thread
+{
+    private static final Logger log = LoggerFactory.getLogger(IdleConnectionMonitor.class);
+
+    private final ClientConnectionManager connectionManager;
+    private volatile long idleTimeout;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Creates monitor for a connection manager.
+     *
+     * @param connectionManager monitored connection manager
+     * @param idleTimeout time in milliseconds after which idle connections are closed
+     */
+    public IdleConnectionMonitor(ClientConnectionManager connectionManager, long idleTimeout)
+    {
+	super("IdleConnectionMonitor");
+	if (connectionManager == null) throw new IllegalArgumentException("ClientConnectionManager cannot be null");
+	if (idleTimeout <= 0) throw new IllegalArgumentException("Idle timeout must be positive");
+
+	this.connectionManager = connectionManager;
+	this.idleTimeout = idleTimeout;
+	setDaemon(true);
+    }
+
+    @Override
+    public void run()
+    {
+	try
+	{
+	    while (!shutdown)
+	    {
+		synchronized (this)
+		{
+		    wait(getIdleTimeout() / 2);
+		}
+		if (shutdown) break;
+
+		getConnectionManager().closeExpiredConnections();
+		getConnectionManager().closeIdleConnections(getIdleTimeout(), TimeUnit.MILLISECONDS);
+		if (log.isTraceEnabled()) log.trace("Closed expired connections and connections idle longer than {} ms", getIdleTimeout());
+	    }
+	}
+	catch (InterruptedException ex)
+	{
+	    if (log.isDebugEnabled()) log.debug("IdleConnectionMonitor interrupted", ex);
+	}
+    }
+
+    /**
+     * Stops the monitor. Does not shut down the connection manager.
+     */
+    public void shutdown()
+    {
+	shutdown = true;
+	synchronized (this)
+	{
+	    notifyAll();
+	}
+    }
+
+    public ClientConnectionManager getConnectionManager()
+    {
+	return connectionManager;
+    }
+
+    public long getIdleTimeout()
+    {
+	return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout)
+    {
+	if (idleTimeout <= 0) throw new IllegalArgumentException("Idle timeout must be positive");
+	this.idleTimeout = idleTimeout;
+    }
+
+}
@@ -0,0 +1,270 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.DefaultedHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits how many request threads can wait for the origin at once, and for how long.
+ * Origin requests are executed on the request thread. If too many requests are already waiting, a request fails
+ * immediately with <code>503 Service Unavailable</code>. The deadline is enforced by the HTTP client itself:
+ * while a read is executed, connection pool lease, connect and socket timeouts of its HTTP requests are set to
+ * the time that remains (see {@link #getRequestParams(org.apache.http.params.HttpParams)}), and when one of them
+ * expires, the HTTP request fails, its connection is closed and the read fails with <code>504 Gateway Timeout</code>.
+ * A slow origin can therefore only tie up a bounded number of container threads, and never for much longer than
+ * the timeout, leaving the rest for unrelated traffic.
+ * Writes are not idempotent and cannot be abandoned while they may still commit at the origin, so they are
+ * only subject to the request limit, and run until they complete.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see DataManager#getOriginGuard()
+ */
+public class OriginGuard
+{
+    private static final Logger log = LoggerFactory.getLogger(OriginGuard.class);
+
+    /** Default maximum number of request threads waiting for the origin */
+    public static final int DEFAULT_MAX_REQUESTS = 50;
+    /** Default time in milliseconds to wait for the origin */
+    public static final long DEFAULT_TIMEOUT = 60000;
+    /** Value of <code>Retry-After</code> header sent with 503 responses, in seconds */
+    public static final int RETRY_AFTER = 5;
+
+    private final ThreadLocal<Long> deadline = new ThreadLocal<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private volatile int maxRequests;
+    private volatile long timeout;
+
+    /**
+     * Creates guard with request limit and timeout.
+     *
+     * @param maxRequests maximum number of waiting request threads
+     * @param timeout time in milliseconds to wait for the origin, or 0 to wait indefinitely
+     */
+    public OriginGuard(int maxRequests, long timeout)
+    {
+	setMaxRequests(maxRequests);
+	setTimeout(timeout);
+    }
+
+    /**
+     * Executes origin request on the calling thread, with HTTP timeouts limited to the guard timeout.
+     *
+     * @param <T> result type
+     * @param request origin request
+     * @return request result
+     * @throws WebApplicationException with status 503 if too many requests are waiting, or 504 on timeout
+     */
+    public <T> T execute(Callable<T> request)
+    {
+	if (request == null) throw new IllegalArgumentException("Callable must be not null");
+
+	admit();
+	Long previous = deadline.get();
+	if (getTimeout() > 0)
+	{
+	    long requestDeadline = System.currentTimeMillis() + getTimeout();
+	    if (previous == null || requestDeadline < previous) deadline.set(requestDeadline);
+	}
+	try
+	{
+	    return request.call();
+	}
+	catch (Exception ex)
+	{
+	    if (isTimeout(ex))
+	    {
+		timeoutCount.incrementAndGet();
+		if (log.isWarnEnabled()) log.warn("Origin request timed out after {} ms", getTimeout());
+		throw new WebApplicationException(ex, 504); // Gateway Timeout
+	    }
+	    if (ex instanceof RuntimeException) throw (RuntimeException)ex;
+	    throw new WebApplicationException(ex, 502); // Bad Gateway
+	}
+	finally
+	{
+	    if (previous != null) deadline.set(previous);
+	    else deadline.remove();
+	    waiting.decrementAndGet();
+	}
+    }
+
+    /**
+     * Executes non-idempotent origin request, such as an update or Graph Store write, on the calling thread.
+     * The request is subject to the request limit, but not to the timeout: it is never abandoned while it may
+     * still complete at the origin.
+     *
+     * @param <T> result type
+     * @param request origin request
+     * @return request result
+     * @throws WebApplicationException with status 503 if too many requests are waiting
+     */
+    public <T> T executeWrite(Callable<T> request)
+    {
+	if (request == null) throw new IllegalArgumentException("Callable must be not null");
+
+	admit();
+	Long previous = deadline.get();
+	deadline.remove();
+	try
+	{
+	    return request.call();
+	}
+	catch (RuntimeException ex)
+	{
+	    throw ex;
+	}
+	catch (Exception ex)
+	{
+	    throw new WebApplicationException(ex, 502); // Bad Gateway
+	}
+	finally
+	{
+	    if (previous != null) deadline.set(previous);
+	    else deadline.remove();
+	    waiting.decrementAndGet();
+	}
+    }
+
+    /**
+     * Returns parameters of an HTTP request sent from the calling thread.
+     * If the thread is executing a read, connection pool lease, connect and socket timeouts are set to the time
+     * that remains until its deadline; otherwise the parameters are returned unchanged.
+     *
+     * @param params request parameters
+     * @return parameters with timeouts
+     */
+    public HttpParams getRequestParams(HttpParams params)
+    {
+	Long requestDeadline = deadline.get();
+	if (requestDeadline == null) return params;
+
+	int remaining = (int)Math.max(1, Math.min(Integer.MAX_VALUE, requestDeadline - System.currentTimeMillis()));
+	HttpParams timeouts = new BasicHttpParams();
+	timeouts.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, remaining);
+	HttpConnectionParams.setConnectionTimeout(timeouts, remaining);
+	HttpConnectionParams.setSoTimeout(timeouts, remaining);
+	return new DefaultedHttpParams(timeouts, params);
+    }
+
+    /**
+     * Counts request as waiting, or rejects it if too many are waiting already.
+     */
+    private void admit()
+    {
+	if (waiting.incrementAndGet() > getMaxRequests())
+	{
+	    waiting.decrementAndGet();
+	    rejectedCount.incrementAndGet();
+	    if (log.isWarnEnabled()) log.warn("Rejecting origin request, {} requests are already waiting", getMaxRequests());
+	    throw new WebApplicationException(Response.status(Response.Status.SERVICE_UNAVAILABLE).
+		    header("Retry-After", RETRY_AFTER).build());
+	}
+    }
+
+    /**
+     * Checks whether request failed because one of its HTTP timeouts expired.
+     * Pool lease, connect and socket timeouts are all reported as <code>InterruptedIOException</code>, which
+     * HTTP and SPARQL clients wrap in their own exceptions.
+     *
+     * @param ex request exception
+     * @return true if caused by a timeout
+     */
+    private static boolean isTimeout(Throwable ex)
+    {
+	for (Throwable cause = ex; cause != null; cause = cause.getCause())
+	{
+	    if (cause instanceof WebApplicationException) return false;
+	    if (cause instanceof InterruptedIOException) return true;
+	}
+	return false;
+    }
+
+    public int getMaxRequests()
+    {
+	return maxRequests;
+    }
+
+    public final void setMaxRequests(int maxRequests)
+    {
+	if (maxRequests < 1) throw new IllegalArgumentException("Maximum number of requests must be positive");
+	this.maxRequests = maxRequests;
+    }
+
+    public long getTimeout()
+    {
+	return timeout;
+    }
+
+    public final void setTimeout(long timeout)
+    {
+	if (timeout < 0) throw new IllegalArgumentException("Timeout cannot be negative");
+	this.timeout = timeout;
+    }
+
+    /**
+     * Returns number of request threads currently waiting for the origin.
+     *
+     * @return waiting request count
+     */
+    public int getWaitingCount()
+    {
+	return waiting.get();
+    }
+
+    /**
+     * Returns number of requests rejected with 503 because too many were waiting.
+     *
+     * @return rejected request count
+     */
+    public long getRejectedCount()
+    {
+	return rejectedCount.get();
+    }
+
+    /**
+     * Returns number of requests failed with 504 because the origin did not respond in time.
+     *
+     * @return timed out request count
+     */
+    public long getTimeoutCount()
+    {
+	return timeoutCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[OriginGuard waiting: " + getWaitingCount() + "/" + getMaxRequests() + " timeout: " + getTimeout() +
+		" rejected: " + getRejectedCount() + " timed out: " + getTimeoutCount() + "]";
+    }
+
+}
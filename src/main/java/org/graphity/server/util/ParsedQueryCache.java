@@ -0,0 +1,312 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.update.Update;
+import com.hp.hpl.jena.update.UpdateFactory;
+import com.hp.hpl.jena.update.UpdateRequest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.graphity.util.QueryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of parsed SPARQL queries and updates, keyed by their string.
+ * Parsed objects are never handed out directly, since they are mutable (e.g. the endpoint sets query limits).
+ * Queries are returned as shallow copies that share the parsed pattern with the cached query, so that a hit
+ * costs no parsing (<code>Query.cloneQuery()</code> would serialize and parse the query again).
+ * Strings longer than the maximum length (such as large <code>INSERT DATA</code> updates) are parsed but not
+ * cached, and update request bodies of that length are parsed from the stream.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.provider.QueryParamProvider
+ * @see org.graphity.server.provider.UpdateRequestReader
+ */
+public class ParsedQueryCache
+{
+    private static final Logger log = LoggerFactory.getLogger(ParsedQueryCache.class);
+
+    /** Default maximum number of cached queries, and separately of cached updates */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    /** Default maximum length of cached query and update strings */
+    public static final int DEFAULT_MAX_LENGTH = 16 * 1024;
+
+    private static final ParsedQueryCache INSTANCE = new ParsedQueryCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_LENGTH);
+
+    private final Map<String, Query> queries;
+    private final Map<String, UpdateRequest> updates;
+    private final AtomicLong queryHitCount = new AtomicLong();
+    private final AtomicLong queryMissCount = new AtomicLong();
+    private final AtomicLong updateHitCount = new AtomicLong();
+    private final AtomicLong updateMissCount = new AtomicLong();
+    private volatile int maxEntries;
+    private volatile int maxLength;
+
+    /**
+     * Returns global parsed query cache
+     *
+     * @return singleton instance
+     */
+    public static ParsedQueryCache get()
+    {
+	return INSTANCE;
+    }
+
+    /**
+     * Creates cache with given bounds.
+     *
+     * @param maxEntries maximum number of cached queries (and of cached updates)
+     * @param maxLength maximum length of cached strings
+     */
+    public ParsedQueryCache(int maxEntries, int maxLength)
+    {
+	setMaxEntries(maxEntries);
+	setMaxLength(maxLength);
+	this.queries = createMap();
+	this.updates = createMap();
+    }
+
+    private <V> Map<String, V> createMap()
+    {
+	return new LinkedHashMap<String, V>(16, 0.75f, true) // access order
+	{
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+	    {
+		return size() > getMaxEntries();
+	    }
+	};
+    }
+
+    /**
+     * Returns parsed query, from cache if possible.
+     *
+     * @param queryString SPARQL query string
+     * @return query that can be modified by the caller
+     * @throws com.hp.hpl.jena.query.QueryParseException if the query cannot be parsed
+     */
+    public Query getQuery(String queryString)
+    {
+	if (queryString == null) throw new IllegalArgumentException("Query string must be not null");
+	if (queryString.length() > getMaxLength()) return QueryFactory.create(queryString);
+
+	Query query;
+	synchronized (queries)
+	{
+	    query = queries.get(queryString);
+	}
+
+	if (query == null)
+	{
+	    queryMissCount.incrementAndGet();
+	    query = QueryFactory.create(queryString); // parsed outside the lock
+	    synchronized (queries)
+	    {
+		queries.put(queryString, query);
+	    }
+	}
+	else queryHitCount.incrementAndGet();
+
+	return copy(query);
+    }
+
+    /**
+     * Returns parsed update request, from cache if possible.
+     *
+     * @param updateString SPARQL update string
+     * @return update request that can be modified by the caller
+     * @throws com.hp.hpl.jena.query.QueryParseException if the update cannot be parsed
+     */
+    public UpdateRequest getUpdateRequest(String updateString)
+    {
+	if (updateString == null) throw new IllegalArgumentException("Update string must be not null");
+	if (updateString.length() > getMaxLength()) return UpdateFactory.create(updateString);
+
+	UpdateRequest updateRequest;
+	synchronized (updates)
+	{
+	    updateRequest = updates.get(updateString);
+	}
+
+	if (updateRequest == null)
+	{
+	    updateMissCount.incrementAndGet();
+	    updateRequest = UpdateFactory.create(updateString);
+	    synchronized (updates)
+	    {
+		updates.put(updateString, updateRequest);
+	    }
+	}
+	else updateHitCount.incrementAndGet();
+
+	return copy(updateRequest);
+    }
+
+    /**
+     * Returns copy of a query, whose modifiers can be changed without affecting the original.
+     *
+     * @param query query
+     * @return copy of the query
+     * @see QueryUtils#copy(com.hp.hpl.jena.query.Query)
+     */
+    public Query copy(Query query)
+    {
+	return QueryUtils.copy(query);
+    }
+
+    /**
+     * Returns parsed update request read from a stream, from cache if it is short enough.
+     * Longer requests are parsed from the stream as it is read, without being held in memory as a string.
+     *
+     * @param in UTF-8 encoded SPARQL update stream
+     * @return update request that can be modified by the caller
+     * @throws IOException if the stream cannot be read
+     * @throws com.hp.hpl.jena.query.QueryParseException if the update cannot be parsed
+     */
+    public UpdateRequest getUpdateRequest(InputStream in) throws IOException
+    {
+	if (in == null) throw new IllegalArgumentException("InputStream must be not null");
+
+	byte[] head = new byte[getMaxLength() + 1];
+	int length = 0, count;
+	while (length < head.length && (count = in.read(head, length, head.length - length)) != -1)
+	    length += count;
+
+	if (length <= getMaxLength()) return getUpdateRequest(new String(head, 0, length, StandardCharsets.UTF_8));
+
+	if (log.isDebugEnabled()) log.debug("Update request is longer than {} bytes, parsing it from the stream", getMaxLength());
+	return UpdateFactory.read(new SequenceInputStream(new ByteArrayInputStream(head, 0, length), in));
+    }
+
+    /**
+     * Returns copy of an update request, sharing its (immutable) operations.
+     *
+     * @param updateRequest update request
+     * @return copy of the update request
+     */
+    protected UpdateRequest copy(UpdateRequest updateRequest)
+    {
+	UpdateRequest copy = new UpdateRequest();
+	copy.setPrefixMapping(new PrefixMappingImpl().setNsPrefixes(updateRequest.getPrefixMapping()));
+	if (updateRequest.explicitlySetBaseURI()) copy.setBaseURI(updateRequest.getBaseURI());
+	for (Update update : updateRequest.getOperations()) copy.add(update);
+	return copy;
+    }
+
+    /**
+     * Removes all cached queries and updates.
+     */
+    public void clear()
+    {
+	synchronized (queries)
+	{
+	    queries.clear();
+	}
+	synchronized (updates)
+	{
+	    updates.clear();
+	}
+    }
+
+    public int getMaxEntries()
+    {
+	return maxEntries;
+    }
+
+    public final void setMaxEntries(int maxEntries)
+    {
+	if (maxEntries < 0) throw new IllegalArgumentException("Maximum number of entries cannot be negative");
+	this.maxEntries = maxEntries;
+    }
+
+    public int getMaxLength()
+    {
+	return maxLength;
+    }
+
+    public final void setMaxLength(int maxLength)
+    {
+	if (maxLength < 0) throw new IllegalArgumentException("Maximum length cannot be negative");
+	this.maxLength = maxLength;
+    }
+
+    public long getQueryHitCount()
+    {
+	return queryHitCount.get();
+    }
+
+    public long getQueryMissCount()
+    {
+	return queryMissCount.get();
+    }
+
+    public long getUpdateHitCount()
+    {
+	return updateHitCount.get();
+    }
+
+    public long getUpdateMissCount()
+    {
+	return updateMissCount.get();
+    }
+
+    /**
+     * Returns ratio of query cache hits to all cacheable query lookups.
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double getQueryHitRate()
+    {
+	return getHitRate(getQueryHitCount(), getQueryMissCount());
+    }
+
+    /**
+     * Returns ratio of update cache hits to all cacheable update lookups.
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double getUpdateHitRate()
+    {
+	return getHitRate(getUpdateHitCount(), getUpdateMissCount());
+    }
+
+    private static double getHitRate(long hits, long misses)
+    {
+	if (hits + misses == 0) return 0;
+	return (double)hits / (hits + misses);
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[ParsedQueryCache query hits: " + getQueryHitCount() + " misses: " + getQueryMissCount() +
+		" update hits: " + getUpdateHitCount() + " misses: " + getUpdateMissCount() + "]";
+    }
+
+}
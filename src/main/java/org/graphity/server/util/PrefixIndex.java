@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Immutable radix tree over string keys, finding the longest key that is a prefix of a given string.
+ * Lookup time is proportional to the length of the string, not the number of keys. The index is built from a
+ * snapshot of a map and never changes afterwards, so it can be shared between threads once published.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @param <V> value type
+ * @see DataManager#findEndpoint(java.lang.String)
+ */
+public class PrefixIndex<V>
+{
+
+    private final Node<V> root = new Node<>("");
+    private final int size;
+
+    /**
+     * Builds index from map entries.
+     *
+     * @param map map with prefix keys
+     */
+    public PrefixIndex(Map<String, V> map)
+    {
+	if (map == null) throw new IllegalArgumentException("Map must be not null");
+
+	for (Entry<String, V> entry : map.entrySet())
+	    if (entry.getKey() != null)
+		insert(root, entry.getKey(), 0, new SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+	this.size = map.size();
+    }
+
+    private static <V> void insert(Node<V> node, String key, int pos, Entry<String, V> entry)
+    {
+	if (pos == key.length())
+	{
+	    node.entry = entry;
+	    return;
+	}
+
+	char c = key.charAt(pos);
+	Node<V> child = node.children.get(c);
+	if (child == null)
+	{
+	    Node<V> leaf = new Node<>(key.substring(pos));
+	    leaf.entry = entry;
+	    node.children.put(c, leaf);
+	    return;
+	}
+
+	int common = 0;
+	while (common < child.label.length() && pos + common < key.length() &&
+		child.label.charAt(common) == key.charAt(pos + common))
+	    common++;
+
+	if (common < child.label.length()) // split edge at the end of the common part
+	{
+	    Node<V> split = new Node<>(child.label.substring(0, common));
+	    child.label = child.label.substring(common);
+	    split.children.put(child.label.charAt(0), child);
+	    node.children.put(c, split);
+	    child = split;
+	}
+
+	insert(child, key, pos + common, entry);
+    }
+
+    /**
+     * Returns entry with the longest key that is a prefix of the given string.
+     *
+     * @param string string to match, e.g. request URI
+     * @return matching entry, or null if no key is a prefix
+     */
+    public Entry<String, V> findLongestPrefix(String string)
+    {
+	if (string == null) throw new IllegalArgumentException("String must be not null");
+
+	Entry<String, V> match = null;
+	Node<V> node = root;
+	int pos = 0;
+	while (node != null)
+	{
+	    if (node.entry != null) match = node.entry;
+	    if (pos == string.length()) break;
+
+	    node = node.children.get(string.charAt(pos));
+	    if (node != null)
+	    {
+		if (!string.startsWith(node.label, pos)) break;
+		pos += node.label.length();
+	    }
+	}
+
+	return match;
+    }
+
+    /**
+     * Returns number of indexed keys.
+     *
+     * @return key count
+     */
+    public int size()
+    {
+	return size;
+    }
+
+    /**
+     * Tree node. Edge label leads from the parent to this node.
+     */
+    private static class Node<V>
+    {
+	private final Map<Character, Node<V>> children = new HashMap<>(4);
+	private String label;
+	private Entry<String, V> entry;
+
+	Node(String label)
+	{
+	    this.label = label;
+	}
+    }
+
+}
@@ -0,0 +1,673 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.resultset.ResultSetMem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.core.MultivaluedMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory cache of remote SPARQL query results.
+ * Entries are keyed by endpoint URI, query and request parameters. The capacity is measured in result
+ * weight (number of triples of a model, or number of bound values of a result set) rather than in entries,
+ * and least recently used entries are evicted once the total weight exceeds it.
+ * Each endpoint has its own time-to-live; results of endpoints without a positive TTL are not cached.
+ * Cached results are never handed out directly: models are wrapped in copy-on-write graphs and result sets
+ * are re-created over the cached bindings, so callers cannot modify cache contents.
+ * Entries keep the validators (<code>ETag</code> and <code>Last-Modified</code>) of the origin response, so
+ * that conditional requests can be answered from cache.
+ * Every entry records the graphs its query read from, and writes invalidate exactly the entries that depend
+ * on the graphs they touched. Results of queries that were started before an invalidation are not cached, so
+ * that a slow read cannot bring stale data back.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see DataManager
+ * @see GraphDependencies
+ */
+public class QueryResultCache
+{
+    private static final Logger log = LoggerFactory.getLogger(QueryResultCache.class);
+
+    /** Default maximum total weight (triples and bound values) of cached results */
+    public static final long DEFAULT_MAX_WEIGHT = 1000000;
+
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final Map<String, Long> timesToLive = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private volatile long defaultTimeToLive = 0;
+    private volatile boolean unionDefaultGraph = false;
+    private long generation = 0;
+    private long maxWeight;
+    private long weight = 0;
+
+    /**
+     * Creates cache with given capacity.
+     *
+     * @param maxWeight maximum total weight of cached results
+     */
+    public QueryResultCache(long maxWeight)
+    {
+	if (maxWeight < 0) throw new IllegalArgumentException("Maximum weight cannot be negative");
+	this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Creates cache key from endpoint URI, query and request parameters.
+     * The query is serialized in its normalized (parsed) form and parameters are sorted by name, so that
+     * equivalent requests get the same key.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param query query object
+     * @param params name/value pairs of request parameters or null, if none
+     * @return cache key
+     */
+    public static String createKey(String endpointURI, Query query, MultivaluedMap<String, String> params)
+    {
+	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+
+	StringBuilder key = new StringBuilder(endpointURI).append('\n').append(query.serialize());
+	if (params != null)
+	    for (Entry<String, List<String>> param : new TreeMap<>(params).entrySet())
+		if (!param.getKey().equals("query")) // query param is handled separately
+		    for (String value : param.getValue())
+			key.append('\n').append(param.getKey()).append('=').append(value);
+
+	return key.toString();
+    }
+
+    /**
+     * Returns cached model, or null if there is none.
+     * The returned model can be modified without affecting the cached one.
+     *
+     * @param key cache key
+     * @return model or null
+     */
+    public Model getModel(String key)
+    {
+	Validated<Model> model = getValidatedModel(key);
+	if (model == null) return null;
+
+	return model.getResult();
+    }
+
+    /**
+     * Returns cached model together with the validators of the origin response it came from, or null if there
+     * is none. The returned model can be modified without affecting the cached one.
+     *
+     * @param key cache key
+     * @return validated model or null
+     */
+    public Validated<Model> getValidatedModel(String key)
+    {
+	Object value = get(key);
+	if (!(value instanceof Validated) || !(((Validated<?>)value).getResult() instanceof Model)) return null;
+
+	Validated<?> cached = (Validated<?>)value;
+	return cached.withResult(CopyOnWriteGraph.createModel((Model)cached.getResult()));
+    }
+
+    /**
+     * Caches model, if the TTL of its endpoint is positive and it fits into the cache.
+     * The given model must not be modified afterwards.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param key cache key
+     * @param model result model
+     * @param dependencies graphs the query read from
+     * @param generation cache generation obtained before the query was executed
+     * @return true if the model has been cached
+     * @see #getGeneration()
+     */
+    public boolean putModel(String endpointURI, String key, Model model, Set<String> dependencies, long generation)
+    {
+	return putModel(endpointURI, key, new Validated<>(model), dependencies, generation);
+    }
+
+    /**
+     * Caches model together with the validators of its origin response, if the TTL of its endpoint is positive
+     * and it fits into the cache. The given model must not be modified afterwards.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param key cache key
+     * @param model validated result model
+     * @param dependencies graphs the query read from
+     * @param generation cache generation obtained before the query was executed
+     * @return true if the model has been cached
+     * @see #getGeneration()
+     */
+    public boolean putModel(String endpointURI, String key, Validated<Model> model, Set<String> dependencies, long generation)
+    {
+	if (model == null || model.getResult() == null) throw new IllegalArgumentException("Model must be not null");
+
+	return put(endpointURI, key, model, model.getResult().size(), dependencies, generation);
+    }
+
+    /**
+     * Returns cached result set, or null if there is none.
+     * Every call returns a new result set positioned at the beginning.
+     *
+     * @param key cache key
+     * @return result set or null
+     */
+    public ResultSetRewindable getResultSet(String key)
+    {
+	Validated<ResultSetRewindable> resultSet = getValidatedResultSet(key);
+	if (resultSet == null) return null;
+
+	return resultSet.getResult();
+    }
+
+    /**
+     * Returns cached result set together with the validators of the origin response it came from, or null if
+     * there is none. Every call returns a new result set positioned at the beginning.
+     *
+     * @param key cache key
+     * @return validated result set or null
+     */
+    public Validated<ResultSetRewindable> getValidatedResultSet(String key)
+    {
+	Object value = get(key);
+	if (!(value instanceof Validated) || !(((Validated<?>)value).getResult() instanceof CachedResultSet)) return null;
+
+	Validated<?> cached = (Validated<?>)value;
+	CachedResultSet resultSet = (CachedResultSet)cached.getResult();
+	return cached.<ResultSetRewindable>withResult(new ResultSetMem(new ResultSetStream(resultSet.getResultVars(), null, resultSet.getBindings().iterator())));
+    }
+
+    /**
+     * Caches result set bindings, if the TTL of its endpoint is positive and they fit into the cache.
+     * The result set is rewound before and after reading.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param key cache key
+     * @param resultSet result set
+     * @param dependencies graphs the query read from
+     * @param generation cache generation obtained before the query was executed
+     * @see #getGeneration()
+     */
+    public void putResultSet(String endpointURI, String key, ResultSetRewindable resultSet, Set<String> dependencies, long generation)
+    {
+	putResultSet(endpointURI, key, new Validated<>(resultSet), dependencies, generation);
+    }
+
+    /**
+     * Caches result set bindings together with the validators of their origin response, if the TTL of its
+     * endpoint is positive and they fit into the cache. The result set is rewound before and after reading.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param key cache key
+     * @param resultSet validated result set
+     * @param dependencies graphs the query read from
+     * @param generation cache generation obtained before the query was executed
+     * @see #getGeneration()
+     */
+    public void putResultSet(String endpointURI, String key, Validated<? extends ResultSetRewindable> resultSet, Set<String> dependencies, long generation)
+    {
+	if (resultSet == null || resultSet.getResult() == null) throw new IllegalArgumentException("ResultSet must be not null");
+	if (getTimeToLive(endpointURI) <= 0) return;
+
+	ResultSetRewindable results = resultSet.getResult();
+	List<Binding> bindings = new ArrayList<>(results.size());
+	long resultWeight = 0;
+	results.reset();
+	while (results.hasNext())
+	{
+	    Binding binding = results.nextBinding();
+	    bindings.add(binding);
+	    resultWeight += Math.max(1, binding.size());
+	}
+	results.reset();
+
+	put(endpointURI, key, resultSet.withResult(new CachedResultSet(results.getResultVars(), bindings)), resultWeight, dependencies, generation);
+    }
+
+    protected Object get(String key)
+    {
+	if (key == null) throw new IllegalArgumentException("Key must be not null");
+
+	synchronized (entries)
+	{
+	    CacheEntry entry = entries.get(key);
+	    if (entry != null && entry.isExpired(System.currentTimeMillis()))
+	    {
+		remove(key);
+		expirationCount.incrementAndGet();
+		entry = null;
+	    }
+
+	    if (entry == null)
+	    {
+		missCount.incrementAndGet();
+		return null;
+	    }
+
+	    hitCount.incrementAndGet();
+	    return entry.getValue();
+	}
+    }
+
+    protected boolean put(String endpointURI, String key, Object value, long valueWeight, Set<String> dependencies, long generation)
+    {
+	if (key == null) throw new IllegalArgumentException("Key must be not null");
+	if (dependencies == null) throw new IllegalArgumentException("Dependency set must be not null");
+
+	long ttl = getTimeToLive(endpointURI);
+	if (ttl <= 0) return false;
+
+	synchronized (entries)
+	{
+	    if (generation != this.generation)
+	    {
+		if (log.isDebugEnabled()) log.debug("Cache was invalidated during query execution, not caching result of key: {}", key);
+		return false;
+	    }
+	    if (valueWeight > maxWeight)
+	    {
+		if (log.isDebugEnabled()) log.debug("Result of weight {} exceeds cache capacity {}, not caching", valueWeight, maxWeight);
+		return false;
+	    }
+
+	    remove(key);
+	    entries.put(key, new CacheEntry(endpointURI, value, valueWeight, dependencies, System.currentTimeMillis() + ttl));
+	    weight += valueWeight;
+	    evict();
+	    return true;
+	}
+    }
+
+    private CacheEntry remove(String key)
+    {
+	CacheEntry entry = entries.remove(key);
+	if (entry != null) weight -= entry.getWeight();
+	return entry;
+    }
+
+    /**
+     * Removes expired entries, then least recently used ones until the total weight fits the capacity.
+     * Nothing is removed while the total weight fits.
+     */
+    private void evict()
+    {
+	if (weight <= maxWeight) return;
+
+	long now = System.currentTimeMillis();
+	Iterator<CacheEntry> it = entries.values().iterator();
+	while (it.hasNext())
+	{
+	    CacheEntry entry = it.next();
+	    if (entry.isExpired(now))
+	    {
+		it.remove();
+		weight -= entry.getWeight();
+		expirationCount.incrementAndGet();
+	    }
+	}
+
+	it = entries.values().iterator();
+	while (it.hasNext() && weight > maxWeight)
+	{
+	    CacheEntry entry = it.next();
+	    it.remove();
+	    weight -= entry.getWeight();
+	    evictionCount.incrementAndGet();
+	}
+    }
+
+    /**
+     * Removes cached results that depend on any of the given graphs.
+     * Should be called after every write to the origin dataset, whether it succeeded or not.
+     *
+     * @param graphs graphs that were written to
+     * @return number of removed entries
+     * @see GraphDependencies
+     */
+    public int invalidate(Set<String> graphs)
+    {
+	if (graphs == null) throw new IllegalArgumentException("Graph set must be not null");
+
+	int count = 0;
+	synchronized (entries)
+	{
+	    generation++;
+
+	    Iterator<CacheEntry> it = entries.values().iterator();
+	    while (it.hasNext())
+	    {
+		CacheEntry entry = it.next();
+		if (GraphDependencies.isAffected(entry.getDependencies(), graphs, isUnionDefaultGraph()))
+		{
+		    it.remove();
+		    weight -= entry.getWeight();
+		    count++;
+		}
+	    }
+	}
+
+	invalidationCount.addAndGet(count);
+	if (log.isDebugEnabled()) log.debug("Invalidated {} cached results depending on graphs: {}", count, graphs);
+	return count;
+    }
+
+    /**
+     * Returns current generation of the cache, which changes with every graph invalidation.
+     * Must be obtained before executing a query whose result is to be cached.
+     *
+     * @return generation number
+     */
+    public long getGeneration()
+    {
+	synchronized (entries)
+	{
+	    return generation;
+	}
+    }
+
+    /**
+     * Removes all cached results of an endpoint.
+     *
+     * @param endpointURI remote endpoint URI
+     */
+    public void invalidate(String endpointURI)
+    {
+	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
+
+	synchronized (entries)
+	{
+	    Iterator<CacheEntry> it = entries.values().iterator();
+	    while (it.hasNext())
+	    {
+		CacheEntry entry = it.next();
+		if (entry.getEndpointURI().equals(endpointURI))
+		{
+		    it.remove();
+		    weight -= entry.getWeight();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void clear()
+    {
+	synchronized (entries)
+	{
+	    entries.clear();
+	    weight = 0;
+	}
+    }
+
+    /**
+     * Returns time-to-live of cached results of an endpoint.
+     *
+     * @param endpointURI remote endpoint URI
+     * @return TTL in milliseconds
+     */
+    public long getTimeToLive(String endpointURI)
+    {
+	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
+
+	Long ttl = timesToLive.get(endpointURI);
+	if (ttl == null) return getDefaultTimeToLive();
+	return ttl;
+    }
+
+    /**
+     * Sets time-to-live of cached results of an endpoint. Zero disables caching for the endpoint.
+     *
+     * @param endpointURI remote endpoint URI
+     * @param ttl TTL in milliseconds
+     */
+    public void setTimeToLive(String endpointURI, long ttl)
+    {
+	if (endpointURI == null) throw new IllegalArgumentException("Endpoint URI must be not null");
+	if (ttl < 0) throw new IllegalArgumentException("TTL cannot be negative");
+
+	timesToLive.put(endpointURI, ttl);
+	if (ttl == 0) invalidate(endpointURI);
+    }
+
+    /**
+     * Returns time-to-live of endpoints that do not have their own. Zero by default, i.e. no caching.
+     *
+     * @return TTL in milliseconds
+     */
+    public long getDefaultTimeToLive()
+    {
+	return defaultTimeToLive;
+    }
+
+    public void setDefaultTimeToLive(long ttl)
+    {
+	if (ttl < 0) throw new IllegalArgumentException("TTL cannot be negative");
+	this.defaultTimeToLive = ttl;
+    }
+
+    public long getMaxWeight()
+    {
+	synchronized (entries)
+	{
+	    return maxWeight;
+	}
+    }
+
+    /**
+     * Sets capacity of the cache, evicting entries if necessary.
+     *
+     * @param maxWeight maximum total weight of cached results
+     */
+    public void setMaxWeight(long maxWeight)
+    {
+	if (maxWeight < 0) throw new IllegalArgumentException("Maximum weight cannot be negative");
+
+	synchronized (entries)
+	{
+	    this.maxWeight = maxWeight;
+	    evict();
+	}
+    }
+
+    /**
+     * Returns current total weight of cached results.
+     *
+     * @return number of cached triples and bound values
+     */
+    public long getWeight()
+    {
+	synchronized (entries)
+	{
+	    return weight;
+	}
+    }
+
+    public int size()
+    {
+	synchronized (entries)
+	{
+	    return entries.size();
+	}
+    }
+
+    public long getHitCount()
+    {
+	return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+	return missCount.get();
+    }
+
+    /**
+     * Returns number of entries evicted to make room for new ones.
+     *
+     * @return eviction count
+     */
+    public long getEvictionCount()
+    {
+	return evictionCount.get();
+    }
+
+    /**
+     * Returns number of entries removed because their TTL had passed.
+     *
+     * @return expiration count
+     */
+    public long getExpirationCount()
+    {
+	return expirationCount.get();
+    }
+
+    /**
+     * Returns number of entries removed because a graph they depend on was written to.
+     *
+     * @return invalidation count
+     */
+    public long getInvalidationCount()
+    {
+	return invalidationCount.get();
+    }
+
+    /**
+     * Returns true if the origin default graph is the union of its named graphs, in which case writes to
+     * named graphs also invalidate results read from the default graph.
+     *
+     * @return true if default graph is union graph
+     */
+    public boolean isUnionDefaultGraph()
+    {
+	return unionDefaultGraph;
+    }
+
+    public void setUnionDefaultGraph(boolean unionDefaultGraph)
+    {
+	this.unionDefaultGraph = unionDefaultGraph;
+    }
+
+    /**
+     * Returns ratio of hits to all lookups.
+     *
+     * @return hit rate between 0 and 1
+     */
+    public double getHitRate()
+    {
+	long hits = getHitCount();
+	long lookups = hits + getMissCount();
+	if (lookups == 0) return 0;
+	return (double)hits / lookups;
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[QueryResultCache size: " + size() + " weight: " + getWeight() + "/" + getMaxWeight() +
+		" hits: " + getHitCount() + " misses: " + getMissCount() +
+		" evictions: " + getEvictionCount() + " expirations: " + getExpirationCount() +
+		" invalidations: " + getInvalidationCount() + "]";
+    }
+
+    private static class CacheEntry
+    {
+	private final String endpointURI;
+	private final Object value;
+	private final long weight;
+	private final Set<String> dependencies;
+	private final long expires;
+
+	CacheEntry(String endpointURI, Object value, long weight, Set<String> dependencies, long expires)
+	{
+	    this.endpointURI = endpointURI;
+	    this.value = value;
+	    this.weight = weight;
+	    this.dependencies = dependencies;
+	    this.expires = expires;
+	}
+
+	String getEndpointURI()
+	{
+	    return endpointURI;
+	}
+
+	Object getValue()
+	{
+	    return value;
+	}
+
+	long getWeight()
+	{
+	    return weight;
+	}
+
+	Set<String> getDependencies()
+	{
+	    return dependencies;
+	}
+
+	boolean isExpired(long now)
+	{
+	    return now >= expires;
+	}
+
+    }
+
+    private static class CachedResultSet
+    {
+	private final List<String> resultVars;
+	private final List<Binding> bindings;
+
+	CachedResultSet(List<String> resultVars, List<Binding> bindings)
+	{
+	    this.resultVars = Collections.unmodifiableList(new ArrayList<>(resultVars));
+	    this.bindings = Collections.unmodifiableList(bindings);
+	}
+
+	List<String> getResultVars()
+	{
+	    return resultVars;
+	}
+
+	List<Binding> getBindings()
+	{
+	    return bindings;
+	}
+
+    }
+
+}
@@ -0,0 +1,148 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import java.util.Collections;
+import org.graphity.util.QueryUtils;
+
+/**
+ * Query that is parsed once and bound to a resource URI per request.
+ * The resource is denoted by the <code>?this</code> variable, e.g. <code>DESCRIBE ?this</code> or
+ * <code>CONSTRUCT { ?this ?p ?o } WHERE { ?this ?p ?o }</code>. A <code>DESCRIBE</code> without a pattern is
+ * rebuilt with the URI in place of the variable, other queries are copied from their parsed parts (without
+ * parsing them again) and get a <code>VALUES</code> block with the URI. Since the URI is never concatenated into
+ * query syntax, it cannot alter the query.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.model.QueriedResourceBase#getQuery(java.lang.String)
+ * @see <a href="http://www.w3.org/TR/sparql11-query/#inline-data">SPARQL 1.1 VALUES</a>
+ */
+public class QueryTemplate
+{
+
+    /** Variable that is bound to the resource URI */
+    public static final Var THIS = Var.alloc("this");
+
+    /** Default template, describing the resource */
+    public static final String DESCRIBE = "DESCRIBE ?" + THIS.getVarName();
+
+    private final Query query;
+    private final boolean describeOnly;
+
+    /**
+     * Creates template from query object. The query must not be modified afterwards.
+     *
+     * @param query query with <code>?this</code> variable
+     */
+    public QueryTemplate(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+	this.query = query;
+	this.describeOnly = query.isDescribeType() && query.getQueryPattern() == null;
+
+	if (describeOnly && !query.getProjectVars().contains(THIS))
+	    throw new IllegalArgumentException("DESCRIBE template must describe ?" + THIS.getVarName());
+	if (!describeOnly && query.hasValues())
+	    throw new IllegalArgumentException("Query template cannot have its own VALUES block");
+    }
+
+    /**
+     * Parses template from query string.
+     *
+     * @param queryString SPARQL query string with <code>?this</code> variable
+     * @return query template
+     */
+    public static QueryTemplate create(String queryString)
+    {
+	return new QueryTemplate(QueryFactory.create(queryString));
+    }
+
+    /**
+     * Returns new query with <code>?this</code> bound to the given URI.
+     *
+     * @param uri absolute resource URI
+     * @return query object that can be modified by the caller
+     * @throws IllegalArgumentException if the URI contains characters that are not allowed in IRIs
+     */
+    public Query bind(String uri)
+    {
+	Node node = NodeFactory.createURI(checkURI(uri));
+
+	if (describeOnly)
+	{
+	    Query bound = new Query();
+	    bound.setSyntax(query.getSyntax());
+	    bound.setQueryDescribeType();
+	    bound.setPrefixMapping(new PrefixMappingImpl().setNsPrefixes(query.getPrefixMapping()));
+	    if (query.explicitlySetBaseURI()) bound.setBaseURI(query.getBaseURI());
+	    for (String graphURI : query.getGraphURIs()) bound.addGraphURI(graphURI);
+	    for (String graphURI : query.getNamedGraphURIs()) bound.addNamedGraphURI(graphURI);
+	    for (Var var : query.getProjectVars()) bound.addDescribeNode(var.equals(THIS) ? node : var);
+	    for (Node resultNode : query.getResultURIs()) bound.addDescribeNode(resultNode);
+	    return bound;
+	}
+
+	Query bound = QueryUtils.copy(query);
+	Binding binding = BindingFactory.binding(THIS, node);
+	bound.setValuesDataBlock(Collections.singletonList(THIS), Collections.singletonList(binding));
+	return bound;
+    }
+
+    /**
+     * Checks that URI contains no characters that are not allowed in IRIs.
+     *
+     * @param uri URI string
+     * @return the same URI
+     */
+    protected String checkURI(String uri)
+    {
+	if (uri == null) throw new IllegalArgumentException("URI must be not null");
+
+	for (int i = 0; i < uri.length(); i++)
+	{
+	    char c = uri.charAt(i);
+	    if (c <= ' ' || "<>\"{}|^`\\".indexOf(c) >= 0)
+		throw new IllegalArgumentException("URI '" + uri + "' contains illegal character at position " + i);
+	}
+	return uri;
+    }
+
+    /**
+     * Returns parsed template query. It must not be modified.
+     *
+     * @return query object
+     */
+    public Query getQuery()
+    {
+	return query;
+    }
+
+    @Override
+    public String toString()
+    {
+	return query.toString();
+    }
+
+}
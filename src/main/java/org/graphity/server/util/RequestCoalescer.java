@@ -0,0 +1,228 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces identical concurrent requests to the origin ("single flight").
+ * The first caller with a given key executes the request in its own thread; callers that arrive with the same
+ * key while it is in flight wait for it and receive the same result (or exception) instead of sending their own.
+ * Nothing is retained once the request completes, so this is not a cache.
+ * Results are shared between callers and must therefore not be modified by them, unless a {@link Sharing} is
+ * given, which is applied only to results that were actually handed to more than one caller.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see DataManager
+ */
+public class RequestCoalescer
+{
+    private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final ConcurrentMap<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong executionCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+
+    /**
+     * Executes request, or waits for an identical one that is already in flight.
+     *
+     * @param <T> result type
+     * @param key request key, identifying the origin and request
+     * @param request request to execute
+     * @return request result, shared with coalesced callers
+     */
+    public <T> T execute(String key, Callable<T> request)
+    {
+	return execute(key, request, null);
+    }
+
+    /**
+     * Executes request, or waits for an identical one that is already in flight.
+     * If the result is handed to more than one caller, each of them receives it through the given sharing.
+     *
+     * @param <T> result type
+     * @param key request key, identifying the origin and request
+     * @param request request to execute
+     * @param sharing sharing applied to coalesced results, or null if they are returned as they are
+     * @return request result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> request, Sharing<T> sharing)
+    {
+	if (key == null) throw new IllegalArgumentException("Key must be not null");
+	if (request == null) throw new IllegalArgumentException("Callable must be not null");
+
+	Flight<T> flight = new Flight<>(request);
+	while (true)
+	{
+	    Flight<T> existing = (Flight<T>)inFlight.putIfAbsent(key, flight);
+	    if (existing == null) break;
+	    if (existing.join())
+	    {
+		collapsedCount.incrementAndGet();
+		if (log.isTraceEnabled()) log.trace("Joining in-flight request with key: {}", key);
+		return share(get(existing), sharing);
+	    }
+	    inFlight.remove(key, existing); // completed, but not removed by its caller yet
+	}
+
+	executionCount.incrementAndGet();
+	boolean joined;
+	try
+	{
+	    flight.run();
+	}
+	finally
+	{
+	    joined = flight.land();
+	    inFlight.remove(key, flight);
+	}
+	if (joined) return share(get(flight), sharing);
+	return get(flight);
+    }
+
+    private static <T> T share(T result, Sharing<T> sharing)
+    {
+	if (sharing == null || result == null) return result;
+	return sharing.share(result);
+    }
+
+    private static <T> T get(FutureTask<T> task)
+    {
+	boolean interrupted = false;
+	try
+	{
+	    while (true)
+		try
+		{
+		    return task.get();
+		}
+		catch (InterruptedException ex)
+		{
+		    interrupted = true; // the origin request is running in another thread and will complete
+		}
+	}
+	catch (ExecutionException ex)
+	{
+	    if (ex.getCause() instanceof RuntimeException) throw (RuntimeException)ex.getCause();
+	    if (ex.getCause() instanceof Error) throw (Error)ex.getCause();
+	    throw new IllegalStateException("Coalesced request failed", ex.getCause());
+	}
+	finally
+	{
+	    if (interrupted) Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Returns number of requests that are currently in flight.
+     *
+     * @return in-flight request count
+     */
+    public int getInFlightCount()
+    {
+	return inFlight.size();
+    }
+
+    /**
+     * Returns number of requests that were actually sent to the origin.
+     *
+     * @return execution count
+     */
+    public long getExecutionCount()
+    {
+	return executionCount.get();
+    }
+
+    /**
+     * Returns number of requests that were collapsed into an identical in-flight one.
+     *
+     * @return collapsed request count
+     */
+    public long getCollapsedCount()
+    {
+	return collapsedCount.get();
+    }
+
+    /**
+     * Gives a caller its own view of a result that is shared with other callers.
+     *
+     * @param <T> result type
+     */
+    public interface Sharing<T>
+    {
+
+	/**
+	 * Returns view of the shared result that the caller can modify, or the result itself if it is immutable.
+	 *
+	 * @param result shared result
+	 * @return caller's view of the result
+	 */
+	T share(T result);
+
+    }
+
+    /**
+     * In-flight request, which callers can join until it completes.
+     */
+    private static class Flight<T> extends FutureTask<T>
+    {
+
+	private int joinCount = 0;
+	private boolean landed = false;
+
+	public Flight(Callable<T> request)
+	{
+	    super(request);
+	}
+
+	/**
+	 * Registers caller waiting for the result. Returns false if the request has completed already.
+	 */
+	public synchronized boolean join()
+	{
+	    if (landed) return false;
+	    joinCount++;
+	    return true;
+	}
+
+	/**
+	 * Closes the request for joining. Returns true if any caller has joined it.
+	 */
+	public synchronized boolean land()
+	{
+	    landed = true;
+	    return joinCount > 0;
+	}
+
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[RequestCoalescer executions: " + getExecutionCount() + " collapsed: " + getCollapsedCount() +
+		" in flight: " + getInFlightCount() + "]";
+    }
+
+}
@@ -0,0 +1,185 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import java.io.InputStream;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.graphity.util.RDFBinary;
+import org.graphity.util.RDFBinaryReader;
+
+/**
+ * RDF request body that has not been parsed yet.
+ * The body can be consumed once: either streamed, passed through as it is or parsed into a triple sink (which
+ * is how Graph Store uploads are forwarded to the origin without holding them in memory), or parsed into an
+ * in-memory graph the first time this graph is accessed as a regular one.
+ * The body belongs to the request that is being read, so it can only be consumed on the thread that created
+ * this graph: the container may complete and recycle the request as soon as that thread returns. Graph Store
+ * writes run on the request thread for that reason.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.provider.ModelProvider#setStreamUploads(boolean)
+ * @see DatasetGraphAccessorHTTP
+ * @see OriginGuard#executeWrite(java.util.concurrent.Callable)
+ */
+public class UploadGraph extends GraphBase
+{
+
+    private final InputStream stream;
+    private final Lang lang;
+    private final Thread requestThread = Thread.currentThread();
+    private Graph graph = null;
+    private boolean streamed = false;
+
+    /**
+     * Wraps request body.
+     *
+     * @param stream request body stream
+     * @param lang syntax of the body, which RIOT can parse
+     */
+    public UploadGraph(InputStream stream, Lang lang)
+    {
+	if (stream == null) throw new IllegalArgumentException("InputStream must be not null");
+	if (lang == null) throw new IllegalArgumentException("Lang must be not null");
+	this.stream = stream;
+	this.lang = lang;
+    }
+
+    /**
+     * Returns syntax of the body.
+     *
+     * @return RDF syntax
+     */
+    public Lang getLang()
+    {
+	return lang;
+    }
+
+    /**
+     * Returns true if the body has been streamed or parsed already.
+     *
+     * @return true if consumed
+     */
+    public synchronized boolean isConsumed()
+    {
+	return streamed || graph != null;
+    }
+
+    /**
+     * Returns the body stream, to be passed through without parsing. The graph cannot be used afterwards.
+     *
+     * @return request body stream
+     */
+    public synchronized InputStream getStream()
+    {
+	if (isConsumed()) throw new IllegalStateException("Upload has already been consumed");
+	checkRequestThread();
+	streamed = true;
+	return stream;
+    }
+
+    /**
+     * Parses the body and sends its triples to the stream as they are parsed. The graph cannot be used
+     * afterwards.
+     *
+     * @param output triple sink
+     */
+    public void parse(StreamRDF output)
+    {
+	if (output == null) throw new IllegalArgumentException("StreamRDF must be not null");
+	parse(getStream(), getLang(), output);
+    }
+
+    private static void parse(InputStream in, Lang lang, StreamRDF output)
+    {
+	// binary RDF is parsed directly, as in ModelProvider
+	if (lang.equals(RDFBinary.LANG)) new RDFBinaryReader(in).read(output);
+	else RDFDataMgr.parse(output, in, lang);
+    }
+
+    /**
+     * Returns in-memory graph of the body, parsing it on first use.
+     *
+     * @return parsed graph
+     */
+    protected synchronized Graph getGraph()
+    {
+	if (graph == null)
+	{
+	    if (streamed) throw new IllegalStateException("Upload has already been streamed");
+	    checkRequestThread();
+	    Graph parsed = Factory.createDefaultGraph();
+	    parse(stream, lang, StreamRDFLib.graph(parsed));
+	    getPrefixMapping().setNsPrefixes(parsed.getPrefixMapping()); // models keep the mapping of this graph
+	    graph = parsed;
+	}
+	return graph;
+    }
+
+    private void checkRequestThread()
+    {
+	if (Thread.currentThread() != requestThread)
+	    throw new IllegalStateException("Upload can only be consumed on the request thread " + requestThread.getName());
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+    {
+	return getGraph().find(m);
+    }
+
+    @Override
+    protected int graphBaseSize()
+    {
+	return getGraph().size();
+    }
+
+    @Override
+    public void performAdd(Triple t)
+    {
+	getGraph().add(t);
+    }
+
+    @Override
+    public void performDelete(Triple t)
+    {
+	getGraph().delete(t);
+    }
+
+    @Override
+    public synchronized void close()
+    {
+	if (graph != null) graph.close();
+	super.close();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+	if (graph != null) return graph.toString();
+	return "[UploadGraph lang: " + getLang().getName() + " consumed: " + isConsumed() + "]";
+    }
+
+}
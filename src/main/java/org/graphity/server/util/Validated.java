@@ -0,0 +1,231 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.sun.jersey.core.header.MatchingEntityTag;
+import com.sun.jersey.core.header.reader.HttpHeaderReader;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Result of an origin request, together with the validators (<code>ETag</code> and <code>Last-Modified</code>)
+ * the origin returned for it.
+ * Validators let responses be tagged without hashing the whole result, and let client revalidation be
+ * forwarded to the origin as a conditional request. Origin tags are exposed as weak entity tags, since the
+ * result is re-serialized and may differ byte-wise from the origin representation.
+ * If the origin answered a conditional request with <code>304 Not Modified</code>, there is no result.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @param <T> result type
+ * @see <a href="http://tools.ietf.org/html/rfc2616#section-13.3">HTTP/1.1 Validation Model</a>
+ */
+public class Validated<T>
+{
+    private static final Logger log = LoggerFactory.getLogger(Validated.class);
+
+    private final T result;
+    private final String originEntityTag;
+    private final Date lastModified;
+    private final boolean notModified;
+
+    /**
+     * Creates result with origin validators.
+     *
+     * @param result result object, null if not found or not modified
+     * @param originEntityTag <code>ETag</code> header value of the origin response, or null
+     * @param lastModified <code>Last-Modified</code> date of the origin response, or null
+     * @param notModified true if the origin responded with <code>304 Not Modified</code>
+     */
+    public Validated(T result, String originEntityTag, Date lastModified, boolean notModified)
+    {
+	this.result = result;
+	this.originEntityTag = originEntityTag;
+	this.lastModified = lastModified;
+	this.notModified = notModified;
+    }
+
+    /**
+     * Creates result with origin validators.
+     *
+     * @param result result object
+     * @param originEntityTag <code>ETag</code> header value of the origin response, or null
+     * @param lastModified <code>Last-Modified</code> date of the origin response, or null
+     */
+    public Validated(T result, String originEntityTag, Date lastModified)
+    {
+	this(result, originEntityTag, lastModified, false);
+    }
+
+    /**
+     * Creates result without validators, e.g. one served from cache.
+     *
+     * @param result result object
+     */
+    public Validated(T result)
+    {
+	this(result, null, null, false);
+    }
+
+    /**
+     * Returns validators of the same origin response with a different result object, e.g. a per-request copy.
+     *
+     * @param <U> result type
+     * @param result result object
+     * @return validated result
+     */
+    public <U> Validated<U> withResult(U result)
+    {
+	return new Validated<>(result, getOriginEntityTag(), getLastModified(), isNotModified());
+    }
+
+    /**
+     * Returns this result as not modified, if its entity tag matches the given <code>If-None-Match</code> value.
+     * Tags are compared weakly, as for <code>GET</code> requests. This lets conditional requests be answered
+     * locally from results that were not requested conditionally, e.g. cached or coalesced ones.
+     *
+     * @param ifNoneMatch <code>If-None-Match</code> value, or null
+     * @return not modified result without the result object, or this result if the tag does not match
+     */
+    public Validated<T> evaluate(String ifNoneMatch)
+    {
+	if (ifNoneMatch == null || isNotModified() || getResult() == null) return this;
+	EntityTag entityTag = getEntityTag();
+	if (entityTag == null) return this;
+
+	try
+	{
+	    for (MatchingEntityTag tag : HttpHeaderReader.readMatchingEntityTag(ifNoneMatch))
+		if (tag.getValue().equals(entityTag.getValue()))
+		    return new Validated<>(null, getOriginEntityTag(), getLastModified(), true);
+	}
+	catch (ParseException ex)
+	{
+	    if (log.isDebugEnabled()) log.debug("Ignoring malformed If-None-Match value: {}", ifNoneMatch);
+	}
+	return this;
+    }
+
+    /**
+     * Returns <code>If-None-Match</code> value that can be forwarded to the origin.
+     * Only weak tags are forwarded, since origin-derived tags are weak, while strong tags are computed locally
+     * and would never match at the origin. Returns null if there are no such tags, or for methods other than
+     * <code>GET</code> and <code>HEAD</code>.
+     *
+     * @param request current request
+     * @return header value, or null
+     */
+    public static String getIfNoneMatch(Request request)
+    {
+	if (request == null) throw new IllegalArgumentException("Request must be not null");
+	if (!(request instanceof HttpHeaders)) return null;
+	if (!request.getMethod().equals("GET") && !request.getMethod().equals("HEAD")) return null;
+
+	List<String> values = ((HttpHeaders)request).getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+	if (values == null || values.isEmpty()) return null;
+
+	StringBuilder ifNoneMatch = new StringBuilder();
+	for (String value : values)
+	    try
+	    {
+		Set<MatchingEntityTag> tags = HttpHeaderReader.readMatchingEntityTag(value);
+		if (tags == MatchingEntityTag.ANY_MATCH) return null; // evaluated locally
+		for (MatchingEntityTag tag : tags)
+		    if (tag.isWeak())
+		    {
+			if (ifNoneMatch.length() > 0) ifNoneMatch.append(", ");
+			ifNoneMatch.append(tag.toString());
+		    }
+	    }
+	    catch (ParseException ex)
+	    {
+		if (log.isDebugEnabled()) log.debug("Ignoring malformed If-None-Match header: {}", value);
+	    }
+
+	if (ifNoneMatch.length() == 0) return null;
+	return ifNoneMatch.toString();
+    }
+
+    /**
+     * Returns result object.
+     *
+     * @return result, or null if not found or not modified
+     */
+    public T getResult()
+    {
+	return result;
+    }
+
+    /**
+     * Returns <code>ETag</code> header value of the origin response, as it was received.
+     *
+     * @return entity tag, or null if the origin did not send it
+     */
+    public String getOriginEntityTag()
+    {
+	return originEntityTag;
+    }
+
+    /**
+     * Returns weak entity tag derived from the origin entity tag.
+     *
+     * @return entity tag, or null if the origin did not send a valid one
+     */
+    public EntityTag getEntityTag()
+    {
+	if (getOriginEntityTag() == null) return null;
+
+	try
+	{
+	    return new EntityTag(EntityTag.valueOf(getOriginEntityTag()).getValue(), true);
+	}
+	catch (IllegalArgumentException ex)
+	{
+	    if (log.isDebugEnabled()) log.debug("Ignoring malformed origin ETag: {}", getOriginEntityTag());
+	    return null;
+	}
+    }
+
+    public Date getLastModified()
+    {
+	return lastModified;
+    }
+
+    /**
+     * Returns true if the origin responded to a conditional request with <code>304 Not Modified</code>.
+     *
+     * @return true if not modified
+     */
+    public boolean isNotModified()
+    {
+	return notModified;
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[Validated ETag: " + getOriginEntityTag() + " Last-Modified: " + getLastModified() +
+		" not modified: " + isNotModified() + "]";
+    }
+
+}
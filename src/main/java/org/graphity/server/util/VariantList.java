@@ -0,0 +1,220 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.sun.jersey.spi.container.ContainerRequest;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Variant;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable list of response variants that caches content negotiation results.
+ * Clients send only a handful of distinct <code>Accept</code> headers, so the variant selected for each
+ * combination of <code>Accept*</code> headers is remembered (up to a bound) instead of parsing the headers and
+ * matching them against the variants on every request. The <code>Vary</code> header that Jersey adds after
+ * selection is cached as well.
+ * Lists are meant to be built once, e.g. when the configuration is resolved.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see <a href="http://jsr311.java.net/nonav/javadoc/javax/ws/rs/core/Request.html#selectVariant(java.util.List)">JAX-RS Request.selectVariant()</a>
+ */
+public class VariantList extends AbstractList<Variant> implements RandomAccess
+{
+    private static final Logger log = LoggerFactory.getLogger(VariantList.class);
+
+    /** Default maximum number of cached selections */
+    public static final int DEFAULT_CACHE_SIZE = 100;
+
+    private static final String[] NEGOTIATED_HEADERS = { HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_LANGUAGE,
+	HttpHeaders.ACCEPT_CHARSET, HttpHeaders.ACCEPT_ENCODING };
+
+    private final Variant[] variants;
+    private final Map<String, Selection> selections;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates list from variants, in order of preference.
+     *
+     * @param variants variants
+     * @param cacheSize maximum number of cached selections
+     */
+    public VariantList(List<Variant> variants, final int cacheSize)
+    {
+	if (variants == null || variants.isEmpty()) throw new IllegalArgumentException("Variant list must be not null or empty");
+	this.variants = variants.toArray(new Variant[variants.size()]);
+	this.selections = new LinkedHashMap<String, Selection>(16, 0.75f, true) // access order
+	{
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<String, Selection> eldest)
+	    {
+		return size() > cacheSize;
+	    }
+	};
+    }
+
+    /**
+     * Creates list from variants, in order of preference.
+     *
+     * @param variants variants
+     */
+    public VariantList(List<Variant> variants)
+    {
+	this(variants, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates list of variants of all registered RDF languages.
+     * The default language comes first, so it is selected when the client accepts any media type.
+     *
+     * @param defaultLang default RDF language
+     * @return variant list
+     */
+    public static VariantList forRDF(Lang defaultLang)
+    {
+	if (defaultLang == null) throw new IllegalArgumentException("Default Lang must be not null");
+
+	List<Variant> variants = new ArrayList<>();
+	variants.add(new Variant(getMediaType(defaultLang), null, null));
+	for (Lang lang : RDFLanguages.getRegisteredLanguages())
+	    if (!lang.equals(Lang.RDFNULL) && !lang.equals(defaultLang))
+		variants.add(new Variant(getMediaType(lang), null, null));
+
+	return new VariantList(variants);
+    }
+
+    private static MediaType getMediaType(Lang lang)
+    {
+	ContentType ct = lang.getContentType();
+	return new MediaType(ct.getType(), ct.getSubType());
+    }
+
+    /**
+     * Selects variant for request, using the negotiation cache if the variants are a <code>VariantList</code>.
+     *
+     * @param request current request
+     * @param variants supported variants
+     * @return selected variant, or null if none is acceptable
+     */
+    public static Variant select(Request request, List<Variant> variants)
+    {
+	if (variants instanceof VariantList) return ((VariantList)variants).select(request);
+	return request.selectVariant(variants);
+    }
+
+    /**
+     * Selects variant for request.
+     *
+     * @param request current request
+     * @return selected variant, or null if none is acceptable
+     */
+    public Variant select(Request request)
+    {
+	if (request == null) throw new IllegalArgumentException("Request must be not null");
+	if (!(request instanceof ContainerRequest)) return request.selectVariant(this); // e.g. proxy, headers not accessible
+
+	ContainerRequest containerRequest = (ContainerRequest)request;
+	String key = getKey(containerRequest);
+	Selection selection;
+	synchronized (selections)
+	{
+	    selection = selections.get(key);
+	}
+
+	if (selection == null)
+	{
+	    missCount.incrementAndGet();
+	    Variant variant = containerRequest.selectVariant(this);
+	    selection = new Selection(variant, (String)containerRequest.getProperties().get(ContainerRequest.VARY_HEADER));
+	    synchronized (selections)
+	    {
+		selections.put(key, selection);
+	    }
+	    if (log.isTraceEnabled()) log.trace("Selected Variant {} for Accept headers: {}", variant, key);
+	}
+	else
+	{
+	    hitCount.incrementAndGet();
+	    if (selection.vary != null) containerRequest.getProperties().put(ContainerRequest.VARY_HEADER, selection.vary);
+	}
+
+	return selection.variant;
+    }
+
+    private static String getKey(ContainerRequest request)
+    {
+	StringBuilder key = new StringBuilder();
+	for (String header : NEGOTIATED_HEADERS)
+	{
+	    List<String> values = request.getRequestHeader(header);
+	    if (values != null) key.append(values);
+	    key.append('\n');
+	}
+	return key.toString();
+    }
+
+    @Override
+    public Variant get(int index)
+    {
+	return variants[index];
+    }
+
+    @Override
+    public int size()
+    {
+	return variants.length;
+    }
+
+    public long getHitCount()
+    {
+	return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+	return missCount.get();
+    }
+
+    /**
+     * Result of content negotiation.
+     */
+    private static class Selection
+    {
+	private final Variant variant;
+	private final String vary;
+
+	Selection(Variant variant, String vary)
+	{
+	    this.variant = variant;
+	    this.vary = vary;
+	}
+    }
+
+}
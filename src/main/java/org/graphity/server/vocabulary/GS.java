@@ -55,4 +55,40 @@ public class GS
 
     public static final DatatypeProperty resultLimit = m_model.createDatatypeProperty( NS + "resultLimit" );
 
+    public static final DatatypeProperty streamResults = m_model.createDatatypeProperty( NS + "streamResults" );
+
+    public static final DatatypeProperty streamUploads = m_model.createDatatypeProperty( NS + "streamUploads" );
+
+    public static final DatatypeProperty resourceQuery = m_model.createDatatypeProperty( NS + "resourceQuery" );
+
+    public static final DatatypeProperty defaultMediaType = m_model.createDatatypeProperty( NS + "defaultMediaType" );
+
+    public static final DatatypeProperty rawProxy = m_model.createDatatypeProperty( NS + "rawProxy" );
+
+    public static final DatatypeProperty maxConnections = m_model.createDatatypeProperty( NS + "maxConnections" );
+
+    public static final DatatypeProperty maxConnectionsPerRoute = m_model.createDatatypeProperty( NS + "maxConnectionsPerRoute" );
+
+    public static final DatatypeProperty connectionIdleTimeout = m_model.createDatatypeProperty( NS + "connectionIdleTimeout" );
+
+    public static final DatatypeProperty asyncPoolSize = m_model.createDatatypeProperty( NS + "asyncPoolSize" );
+
+    public static final DatatypeProperty maxOriginRequests = m_model.createDatatypeProperty( NS + "maxOriginRequests" );
+
+    public static final DatatypeProperty originTimeout = m_model.createDatatypeProperty( NS + "originTimeout" );
+
+    public static final DatatypeProperty resultCacheSize = m_model.createDatatypeProperty( NS + "resultCacheSize" );
+
+    public static final DatatypeProperty resultCacheTTL = m_model.createDatatypeProperty( NS + "resultCacheTTL" );
+
+    public static final DatatypeProperty unionDefaultGraph = m_model.createDatatypeProperty( NS + "unionDefaultGraph" );
+
+    public static final DatatypeProperty parallelHashThreshold = m_model.createDatatypeProperty( NS + "parallelHashThreshold" );
+
+    public static final DatatypeProperty graphStoreMediaType = m_model.createDatatypeProperty( NS + "graphStoreMediaType" );
+
+    public static final DatatypeProperty prettyPrintLimit = m_model.createDatatypeProperty( NS + "prettyPrintLimit" );
+
+    public static final DatatypeProperty maxResponseBufferSize = m_model.createDatatypeProperty( NS + "maxResponseBufferSize" );
+
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.jena.riot.RiotException;
+
+/**
+ * Reads RDF terms, strings and variable-length integers of the binary syntaxes, keeping the term dictionary
+ * of one input. Blank nodes are fresh, but the same label denotes the same blank node within one input.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see BinaryTermWriter
+ */
+class BinaryTermReader
+{
+
+    /** Maximum length of a string */
+    public static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+    /** Size of the chunks strings are read in, so that buffers grow with the input rather than its declared length */
+    public static final int STRING_CHUNK_SIZE = 64 * 1024;
+
+    private final DataInputStream in;
+    private final List<Node> dictionary = new ArrayList<>();
+    private final Map<String, Node> blankNodes = new HashMap<>();
+
+    BinaryTermReader(InputStream in)
+    {
+	if (in == null) throw new IllegalArgumentException("InputStream must be not null");
+	this.in = new DataInputStream(new BufferedInputStream(in, 64 * 1024));
+    }
+
+    /**
+     * Reads magic number and version, and checks them.
+     */
+    void readHeader(byte[] magic, int version, String syntax) throws IOException
+    {
+	byte[] bytes = new byte[magic.length];
+	in.readFully(bytes);
+	if (!Arrays.equals(bytes, magic)) throw new RiotException("Input is not " + syntax);
+	int inputVersion = in.readUnsignedByte();
+	if (inputVersion != version) throw new RiotException("Unsupported " + syntax + " version: " + inputVersion);
+    }
+
+    Node readNode() throws IOException
+    {
+	return readNode(in.readUnsignedByte());
+    }
+
+    /**
+     * Reads term whose tag has already been read.
+     */
+    Node readNode(int tag) throws IOException
+    {
+	if (tag == BinaryTermWriter.REF)
+	{
+	    int id = readVarInt();
+	    if (id >= dictionary.size()) throw new RiotException("Unknown binary term reference: " + id);
+	    return dictionary.get(id);
+	}
+
+	Node node;
+	switch (tag & ~BinaryTermWriter.DEFINE)
+	{
+	    case BinaryTermWriter.URI:
+		node = NodeFactory.createURI(readString());
+		break;
+	    case BinaryTermWriter.BLANK:
+		String label = readString();
+		node = blankNodes.get(label);
+		if (node == null)
+		{
+		    node = NodeFactory.createAnon();
+		    blankNodes.put(label, node);
+		}
+		break;
+	    case BinaryTermWriter.PLAIN_LITERAL:
+		node = NodeFactory.createLiteral(readString());
+		break;
+	    case BinaryTermWriter.LANG_LITERAL:
+		String lexicalForm = readString();
+		node = NodeFactory.createLiteral(lexicalForm, readString(), false);
+		break;
+	    case BinaryTermWriter.TYPED_LITERAL:
+		String typedLexicalForm = readString();
+		Node datatype = readDatatype();
+		node = NodeFactory.createLiteral(typedLexicalForm, null, TypeMapper.getInstance().getSafeTypeByName(datatype.getURI()));
+		break;
+	    default:
+		throw new RiotException("Unknown binary term tag: " + tag);
+	}
+
+	if ((tag & BinaryTermWriter.DEFINE) != 0) dictionary.add(node);
+	return node;
+    }
+
+    /**
+     * Reads datatype of a typed literal, which can only be a URI or a reference to one. Other terms are not
+     * accepted, so that typed literals cannot be nested in corrupt input.
+     */
+    private Node readDatatype() throws IOException
+    {
+	int tag = in.readUnsignedByte();
+	if (tag != BinaryTermWriter.REF && (tag & ~BinaryTermWriter.DEFINE) != BinaryTermWriter.URI)
+	    throw new RiotException("Unexpected binary literal datatype tag: " + tag);
+
+	Node datatype = readNode(tag);
+	if (!datatype.isURI()) throw new RiotException("Binary literal datatype is not a URI: " + datatype);
+	return datatype;
+    }
+
+    int readUnsignedByte() throws IOException
+    {
+	return in.readUnsignedByte();
+    }
+
+    String readString() throws IOException
+    {
+	int length = readVarInt();
+	if (length > MAX_STRING_LENGTH) throw new RiotException("Binary string too long: " + length);
+
+	// the length comes from the input, so the buffer is only grown as the bytes actually arrive
+	byte[] bytes = new byte[Math.min(length, STRING_CHUNK_SIZE)];
+	int offset = 0;
+	while (offset < length)
+	{
+	    if (offset == bytes.length) bytes = Arrays.copyOf(bytes, (int)Math.min(length, bytes.length * 2L));
+	    int count = in.read(bytes, offset, bytes.length - offset);
+	    if (count < 0) throw new EOFException("Binary string ends after " + offset + " of " + length + " bytes");
+	    offset += count;
+	}
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int readVarInt() throws IOException
+    {
+	int value = 0;
+	for (int shift = 0; shift < 35; shift += 7)
+	{
+	    int b = in.readUnsignedByte();
+	    value |= (b & 0x7f) << shift;
+	    if ((b & 0x80) == 0)
+	    {
+		if (value < 0) throw new RiotException("Negative binary length or reference");
+		return value;
+	    }
+	}
+	throw new RiotException("Malformed binary variable-length integer");
+    }
+
+    void close() throws IOException
+    {
+	in.close();
+    }
+
+}
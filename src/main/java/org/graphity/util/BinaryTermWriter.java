@@ -0,0 +1,162 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.jena.riot.RiotException;
+
+/**
+ * Writes RDF terms, strings and variable-length integers of the binary syntaxes, keeping the term dictionary
+ * of one output.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see BinaryTermReader
+ */
+class BinaryTermWriter
+{
+
+    /** Maximum number of dictionary entries, after which new terms are always written in full */
+    public static final int MAX_DICTIONARY_SIZE = 1 << 20;
+    /** Literals with longer lexical forms are not added to the dictionary */
+    public static final int MAX_DICTIONARY_LITERAL_LENGTH = 256;
+
+    // term tags, optionally combined with DEFINE
+    static final int REF = 0x01;
+    static final int URI = 0x02;
+    static final int BLANK = 0x03;
+    static final int PLAIN_LITERAL = 0x04;
+    static final int LANG_LITERAL = 0x05;
+    static final int TYPED_LITERAL = 0x06;
+    static final int DEFINE = 0x80;
+
+    private final DataOutputStream out;
+    private final Map<Node, Integer> dictionary = new HashMap<>();
+    private final int maxDictionarySize;
+
+    BinaryTermWriter(OutputStream out)
+    {
+	this(out, MAX_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Creates writer with a smaller dictionary, which bounds its memory use when the output is large.
+     */
+    BinaryTermWriter(OutputStream out, int maxDictionarySize)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream must be not null");
+	if (maxDictionarySize < 0 || maxDictionarySize > MAX_DICTIONARY_SIZE) throw new IllegalArgumentException("Dictionary size must be between 0 and " + MAX_DICTIONARY_SIZE);
+	this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+	this.maxDictionarySize = maxDictionarySize;
+    }
+
+    /**
+     * Writes term, as a dictionary reference if it was written before. A new term gets its dictionary entry
+     * only after it has been written completely (including its datatype), which is when the reader adds it.
+     */
+    void writeNode(Node node) throws IOException
+    {
+	Integer id = dictionary.get(node);
+	if (id != null)
+	{
+	    out.writeByte(REF);
+	    writeVarInt(id);
+	    return;
+	}
+
+	boolean define = dictionary.size() < maxDictionarySize &&
+		(!node.isLiteral() || node.getLiteralLexicalForm().length() <= MAX_DICTIONARY_LITERAL_LENGTH);
+	int flag = define ? DEFINE : 0;
+
+	if (node.isURI())
+	{
+	    out.writeByte(URI | flag);
+	    writeString(node.getURI());
+	}
+	else if (node.isBlank())
+	{
+	    out.writeByte(BLANK | flag);
+	    writeString(node.getBlankNodeLabel());
+	}
+	else if (node.isLiteral())
+	{
+	    String lang = node.getLiteralLanguage();
+	    String datatypeURI = node.getLiteralDatatypeURI();
+	    if (lang != null && !lang.isEmpty())
+	    {
+		out.writeByte(LANG_LITERAL | flag);
+		writeString(node.getLiteralLexicalForm());
+		writeString(lang);
+	    }
+	    else if (datatypeURI != null)
+	    {
+		out.writeByte(TYPED_LITERAL | flag);
+		writeString(node.getLiteralLexicalForm());
+		writeNode(NodeFactory.createURI(datatypeURI));
+	    }
+	    else
+	    {
+		out.writeByte(PLAIN_LITERAL | flag);
+		writeString(node.getLiteralLexicalForm());
+	    }
+	}
+	else throw new RiotException("Cannot write node in binary syntax: " + node);
+
+	if (define) dictionary.put(node, dictionary.size());
+    }
+
+    void writeByte(int b) throws IOException
+    {
+	out.writeByte(b);
+    }
+
+    void writeBytes(byte[] bytes) throws IOException
+    {
+	out.write(bytes);
+    }
+
+    void writeString(String string) throws IOException
+    {
+	byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+	writeVarInt(bytes.length);
+	out.write(bytes);
+    }
+
+    void writeVarInt(int value) throws IOException
+    {
+	while ((value & ~0x7f) != 0)
+	{
+	    out.writeByte((value & 0x7f) | 0x80);
+	    value >>>= 7;
+	}
+	out.writeByte(value);
+    }
+
+    void flush() throws IOException
+    {
+	out.flush();
+    }
+
+}
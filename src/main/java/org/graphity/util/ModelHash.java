@@ -0,0 +1,455 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.impl.LiteralLabel;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Order-independent 64-bit hash of RDF graphs.
+ * Every URI is hashed from its full string, and every literal from its lexical form, language and datatype URI, so
+ * that graphs which differ in any term have different hashes (the hash becomes an ETag, and a collision would
+ * answer <code>304 Not Modified</code> for a changed graph). Subjects and predicates repeat a lot and Jena shares
+ * their node objects, so node hashes are memoized per graph.
+ * Every triple is hashed with a non-linear mixing function so that positions matter, and triple hashes are
+ * combined by addition, which does not depend on iteration order but, unlike XOR, does not cancel out equal hashes.
+ * Blank nodes are labelled by their neighbourhood instead of their identity: each label is refined from the
+ * labels of adjacent nodes until the partition of blank nodes is stable. Isomorphic graphs therefore have equal
+ * hashes, while graphs that differ only in blank node structure have different hashes (except for rare regular
+ * structures that colour refinement cannot tell apart).
+ * Large graphs are hashed in parallel, see {@link ParallelHashing}.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see <a href="http://aidanhogan.com/docs/skolems_blank_nodes_www.pdf">Skolemising Blank Nodes while Preserving Isomorphism</a>
+ * @see <a href="https://code.google.com/p/smhasher/wiki/MurmurHash3">MurmurHash3</a>
+ */
+public class ModelHash
+{
+    private static final Logger log = LoggerFactory.getLogger(ModelHash.class);
+
+    /** Maximum number of blank node label refinement rounds */
+    public static final int MAX_ROUNDS = 16;
+
+    /** Number of triples whose strings are loaded before any of them is hashed */
+    public static final int BATCH_SIZE = 32;
+
+    /** Maximum number of memoized node hashes */
+    public static final int MEMO_SIZE = 1 << 14;
+
+    private static final long URI_SEED = 0x6a09e667f3bcc908L;
+    private static final long LITERAL_SEED = 0xbb67ae8584caa73bL;
+    private static final long OTHER_SEED = 0x3c6ef372fe94f82bL;
+    private static final long BLANK_SEED = 0xa54ff53a5f1d36f1L;
+    private static final long TRIPLE_SEED = 0x510e527fade682d1L;
+    private static final long OUT_SEED = 0x9b05688c2b3e6c1fL;
+    private static final long IN_SEED = 0x1f83d9abfb41bd6bL;
+    private static final long PREDICATE_SEED = 0x5be0cd19137e2179L;
+    private static final long LANG_SEED = 0x428a2f98d728ae22L;
+    private static final long DATATYPE_SEED = 0x7137449123ef65cdL;
+    private static final long BLOCK_MULTIPLIER = 0x87c37b91114253d5L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final Node[] memoNodes;
+    private final long[] memoHashes;
+    private RDFDatatype lastDatatype = null;
+    private int loaded = 0; // keeps the loads of hashBatch() from being optimized away
+    private long lastDatatypeHash;
+
+    /**
+     * Returns hash of a model.
+     *
+     * @param model RDF model
+     * @return 64-bit hash
+     */
+    public static long hash(Model model)
+    {
+	if (model == null) throw new IllegalArgumentException("Model must be not null");
+	return hash(model.getGraph());
+    }
+
+    /**
+     * Returns hash of a graph.
+     *
+     * @param graph RDF graph
+     * @return 64-bit hash
+     */
+    public static long hash(Graph graph)
+    {
+	if (graph == null) throw new IllegalArgumentException("Graph must be not null");
+
+	int size = graph.size();
+	if (ParallelHashing.isParallel(size)) return hashParallel(graph);
+	return new ModelHash(size).hashGraph(graph);
+    }
+
+    /**
+     * Returns hash of a graph, hashing chunks of its triples on the fork-join pool.
+     * The hash is equal to the sequential one.
+     *
+     * @param graph RDF graph
+     * @return 64-bit hash
+     * @see ParallelHashing
+     */
+    public static long hashParallel(Graph graph)
+    {
+	if (graph == null) throw new IllegalArgumentException("Graph must be not null");
+
+	List<Triple> triples = graph.find(Node.ANY, Node.ANY, Node.ANY).toList();
+	if (log.isDebugEnabled()) log.debug("Hashing {} triples in parallel", triples.size());
+	Partial partial = ParallelHashing.getPool().invoke(new ChunkTask(triples, 0, triples.size()));
+	return new ModelHash(partial.blankTriples.size()).finish(partial.sum, triples.size(), partial.blankTriples);
+    }
+
+    /**
+     * Creates hasher with node hash memo sized for the given number of triples.
+     *
+     * @param size expected number of triples
+     */
+    protected ModelHash(int size)
+    {
+	int capacity = Integer.highestOneBit(Math.max(16, Math.min(MEMO_SIZE, size)) * 2 - 1);
+	this.memoNodes = new Node[capacity];
+	this.memoHashes = new long[capacity];
+    }
+
+    private long hashGraph(Graph graph)
+    {
+	long sum = 0;
+	long count = 0;
+	List<Triple> blankTriples = new ArrayList<>();
+	Triple[] batch = new Triple[BATCH_SIZE];
+
+	ExtendedIterator<Triple> it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+	try
+	{
+	    while (it.hasNext())
+	    {
+		int length = 0;
+		while (length < batch.length && it.hasNext()) batch[length++] = it.next();
+		count += length;
+		sum += hashBatch(batch, length, blankTriples);
+	    }
+	}
+	finally
+	{
+	    it.close();
+	}
+
+	return finish(sum, count, blankTriples);
+    }
+
+    /**
+     * Returns sum of hashes of ground triples in a batch, collecting triples with blank nodes.
+     * The strings of all nodes are loaded before any of them is hashed: on large graphs they are scattered over
+     * the heap, and loading them in a row lets the cache misses overlap instead of stalling the hashing of every
+     * triple in turn.
+     */
+    private long hashBatch(Triple[] batch, int length, List<Triple> blankTriples)
+    {
+	int loaded = 0;
+	for (int i = 0; i < length; i++)
+	    loaded += load(batch[i].getSubject()) + load(batch[i].getObject());
+	this.loaded += loaded;
+
+	long sum = 0;
+	for (int i = 0; i < length; i++)
+	    sum += hashGround(batch[i], blankTriples);
+	return sum;
+    }
+
+    /**
+     * Loads the string of a node, which is hashed later, and returns its last character.
+     */
+    private static int load(Node node)
+    {
+	String string = null;
+	if (node.isURI()) string = node.getURI();
+	else if (node.isLiteral()) string = node.getLiteral().getLexicalForm();
+	return string != null && !string.isEmpty() ? string.charAt(string.length() - 1) : 0;
+    }
+
+    /**
+     * Returns hash of a triple without blank nodes, or collects the triple and returns 0 if it has any.
+     */
+    private long hashGround(Triple triple, List<Triple> blankTriples)
+    {
+	Node s = triple.getSubject(), p = triple.getPredicate(), o = triple.getObject();
+	if (s.isBlank() || p.isBlank() || o.isBlank())
+	{
+	    blankTriples.add(triple);
+	    return 0;
+	}
+	return hashTriple(hashNode(s), hashNode(p), hashNode(o));
+    }
+
+    private long finish(long sum, long count, List<Triple> blankTriples)
+    {
+	if (!blankTriples.isEmpty())
+	{
+	    Map<Node, Long> labels = labelBlankNodes(blankTriples);
+	    for (Triple triple : blankTriples)
+		sum += hashTriple(hashNode(triple.getSubject(), labels), hashNode(triple.getPredicate(), labels),
+			hashNode(triple.getObject(), labels));
+	}
+
+	return mix(sum ^ (count * GOLDEN_GAMMA));
+    }
+
+    /**
+     * Labels blank nodes by colour refinement: every label starts equal and is repeatedly combined with the
+     * (commutatively aggregated) labels of triples the node occurs in, until the number of distinct labels stops
+     * growing.
+     */
+    private Map<Node, Long> labelBlankNodes(List<Triple> triples)
+    {
+	Map<Node, Long> labels = new HashMap<>();
+	for (Triple triple : triples)
+	{
+	    if (triple.getSubject().isBlank()) labels.put(triple.getSubject(), BLANK_SEED);
+	    if (triple.getPredicate().isBlank()) labels.put(triple.getPredicate(), BLANK_SEED);
+	    if (triple.getObject().isBlank()) labels.put(triple.getObject(), BLANK_SEED);
+	}
+
+	int distinct = 1;
+	for (int round = 0; round < MAX_ROUNDS && distinct < labels.size(); round++)
+	{
+	    Map<Node, Long> next = new HashMap<>(labels.size() * 2);
+	    for (Triple triple : triples)
+	    {
+		long s = hashNode(triple.getSubject(), labels);
+		long p = hashNode(triple.getPredicate(), labels);
+		long o = hashNode(triple.getObject(), labels);
+		if (triple.getSubject().isBlank()) add(next, triple.getSubject(), mix(OUT_SEED ^ mix(p ^ mix(o))));
+		if (triple.getPredicate().isBlank()) add(next, triple.getPredicate(), mix(PREDICATE_SEED ^ mix(s ^ mix(o))));
+		if (triple.getObject().isBlank()) add(next, triple.getObject(), mix(IN_SEED ^ mix(p ^ mix(s))));
+	    }
+
+	    Set<Long> values = new HashSet<>();
+	    for (Entry<Node, Long> entry : next.entrySet())
+	    {
+		long label = mix(labels.get(entry.getKey()) + entry.getValue());
+		entry.setValue(label);
+		values.add(label);
+	    }
+
+	    if (values.size() <= distinct && round > 0) break; // partition is stable
+	    distinct = values.size();
+	    labels = next;
+	}
+
+	return labels;
+    }
+
+    private static void add(Map<Node, Long> labels, Node node, long value)
+    {
+	Long label = labels.get(node);
+	labels.put(node, label == null ? value : label + value);
+    }
+
+    private long hashNode(Node node, Map<Node, Long> labels)
+    {
+	if (node.isBlank()) return labels.get(node);
+	return hashNode(node);
+    }
+
+    private long hashNode(Node node)
+    {
+	if (node.isLiteral())
+	{
+	    LiteralLabel literal = node.getLiteral();
+	    return hashLiteral(literal, hashDatatype(literal.getDatatype()));
+	}
+
+	int index = node.hashCode() & (memoNodes.length - 1);
+	if (memoNodes[index] == node) return memoHashes[index];
+
+	long hash = computeHash(node);
+	memoNodes[index] = node;
+	memoHashes[index] = hash;
+	return hash;
+    }
+
+    /**
+     * Returns hash of a datatype, reusing the last one since literals of the same datatype tend to be adjacent.
+     */
+    private long hashDatatype(RDFDatatype datatype)
+    {
+	if (datatype == null) return 0;
+	if (datatype != lastDatatype)
+	{
+	    lastDatatypeHash = hashString(DATATYPE_SEED, datatype.getURI());
+	    lastDatatype = datatype;
+	}
+	return lastDatatypeHash;
+    }
+
+    /**
+     * Returns 64-bit hash of a non-blank node, computed from its full URI or from the lexical form, language and
+     * datatype URI of its literal.
+     *
+     * @param node URI, literal or variable node
+     * @return hash
+     */
+    public static long computeHash(Node node)
+    {
+	if (node.isURI()) return hashString(URI_SEED, node.getURI());
+	if (node.isLiteral())
+	{
+	    LiteralLabel literal = node.getLiteral();
+	    String datatypeURI = literal.getDatatypeURI();
+	    return hashLiteral(literal, datatypeURI != null ? hashString(DATATYPE_SEED, datatypeURI) : 0);
+	}
+	return hashString(OTHER_SEED, node.toString());
+    }
+
+    private static long hashLiteral(LiteralLabel literal, long datatypeHash)
+    {
+	long hash = hashString(LITERAL_SEED, literal.getLexicalForm());
+	String lang = literal.language();
+	if (lang != null && !lang.isEmpty()) hash = hashString(hash ^ LANG_SEED, lang);
+	return datatypeHash != 0 ? mix(hash ^ datatypeHash) : hash;
+    }
+
+    /**
+     * Returns hash of a triple from the hashes of its nodes. Positions are not interchangeable.
+     *
+     * @param s subject hash
+     * @param p predicate hash
+     * @param o object hash
+     * @return triple hash
+     */
+    public static long hashTriple(long s, long p, long o)
+    {
+	return mix(s ^ Long.rotateLeft(p, 21) ^ Long.rotateLeft(o, 42) ^ TRIPLE_SEED);
+    }
+
+    /**
+     * Hashes every character of a string, four at a time, with one multiplication per block; the finalizer then
+     * spreads the result over all 64 bits.
+     *
+     * @param seed seed that tells kinds of strings apart
+     * @param string string
+     * @return hash
+     */
+    static long hashString(long seed, String string)
+    {
+	int length = string.length();
+	long hash = seed ^ length * GOLDEN_GAMMA;
+	int i = 0;
+	for (; i + 4 <= length; i += 4)
+	{
+	    long k = string.charAt(i) | (long)string.charAt(i + 1) << 16 |
+		    (long)string.charAt(i + 2) << 32 | (long)string.charAt(i + 3) << 48;
+	    hash = Long.rotateLeft(hash ^ k, 31) * BLOCK_MULTIPLIER;
+	}
+	if (i < length)
+	{
+	    long k = 0;
+	    for (int shift = 0; i < length; i++, shift += 16)
+		k |= (long)string.charAt(i) << shift;
+	    hash = Long.rotateLeft(hash ^ k, 31) * BLOCK_MULTIPLIER;
+	}
+	return mix(hash);
+    }
+
+    /**
+     * Sum of ground triple hashes in a chunk, and the triples with blank nodes that were left out.
+     */
+    private static class Partial
+    {
+	private long sum = 0;
+	private final List<Triple> blankTriples = new ArrayList<>();
+    }
+
+    /**
+     * Hashes a range of triples, splitting it in halves until chunks are small enough.
+     */
+    private static class ChunkTask extends RecursiveTask<Partial>
+    {
+	private static final long serialVersionUID = 1L;
+
+	private final List<Triple> triples;
+	private final int from, to;
+
+	ChunkTask(List<Triple> triples, int from, int to)
+	{
+	    this.triples = triples;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected Partial compute()
+	{
+	    if (to - from <= ParallelHashing.CHUNK_SIZE)
+	    {
+		ModelHash hasher = new ModelHash(to - from);
+		Triple[] batch = new Triple[BATCH_SIZE];
+		Partial partial = new Partial();
+		for (int i = from; i < to; i += batch.length)
+		{
+		    int length = Math.min(batch.length, to - i);
+		    triples.subList(i, i + length).toArray(batch);
+		    partial.sum += hasher.hashBatch(batch, length, partial.blankTriples);
+		}
+		return partial;
+	    }
+
+	    int middle = (from + to) >>> 1;
+	    ChunkTask right = new ChunkTask(triples, middle, to);
+	    right.fork();
+	    Partial partial = new ChunkTask(triples, from, middle).compute();
+	    Partial rightPartial = right.join();
+	    partial.sum += rightPartial.sum;
+	    partial.blankTriples.addAll(rightPartial.blankTriples);
+	    return partial;
+	}
+    }
+
+    /**
+     * 64-bit finalizer of MurmurHash3, which spreads every input bit over the whole output.
+     *
+     * @param k input
+     * @return mixed value
+     */
+    public static long mix(long k)
+    {
+	k ^= k >>> 33;
+	k *= 0xff51afd7ed558ccdL;
+	k ^= k >>> 33;
+	k *= 0xc4ceb9fe1a85ec53L;
+	k ^= k >>> 33;
+	return k;
+    }
+
+}
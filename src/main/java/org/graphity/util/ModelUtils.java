@@ -15,16 +15,19 @@ package org.graphity.util;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 
 public class ModelUtils
 {
 
+    /**
+     * Returns order-independent hash of a model that takes blank node structure into account.
+     * 
+     * @param m model
+     * @return 64-bit hash
+     * @see ModelHash
+     */
     public static long hashModel( Model m ) {
-    	long result = 0;
-    	ExtendedIterator<Triple> it = m.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
-		while (it.hasNext()) result ^= hashTriple( it.next() );
-    	return result;
+    	return ModelHash.hash(m);
 	}
 
 	public static long hashTriple(Triple t) {
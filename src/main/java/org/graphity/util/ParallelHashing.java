@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import java.util.concurrent.ForkJoinPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fork-join pool and size threshold of parallel hashing.
+ * Models and result sets with at least the threshold number of triples (or solutions) are split into chunks
+ * that are hashed on the pool and combined with a commutative reduction, so the hash is the same as the
+ * sequential one. Smaller ones are hashed on the calling thread.
+ * Responses are normally tagged with the hash of their buffered bytes; models and result sets are hashed only
+ * when their representation exceeds the response buffer and is streamed, which is where they are large enough
+ * to be hashed in parallel.
+ * The pool is created on first use and should be shut down when the application is destroyed.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see ModelHash
+ * @see ResultSetUtils
+ */
+public class ParallelHashing
+{
+    private static final Logger log = LoggerFactory.getLogger(ParallelHashing.class);
+
+    /** Default minimum number of triples or solutions that are hashed in parallel */
+    public static final int DEFAULT_THRESHOLD = 100000;
+    /** Number of triples or solutions below which a chunk is not split further */
+    public static final int CHUNK_SIZE = 16384;
+
+    private static volatile int threshold = DEFAULT_THRESHOLD;
+    private static ForkJoinPool pool = null;
+
+    /**
+     * Returns minimum number of triples or solutions that are hashed in parallel.
+     *
+     * @return threshold
+     */
+    public static int getThreshold()
+    {
+	return threshold;
+    }
+
+    /**
+     * Sets minimum number of triples or solutions that are hashed in parallel.
+     * <code>Integer.MAX_VALUE</code> effectively disables parallel hashing.
+     *
+     * @param threshold positive threshold
+     */
+    public static void setThreshold(int threshold)
+    {
+	if (threshold <= 0) throw new IllegalArgumentException("Threshold must be positive");
+	if (log.isDebugEnabled()) log.debug("Setting parallel hashing threshold to {}", threshold);
+	ParallelHashing.threshold = threshold;
+    }
+
+    /**
+     * Returns true if the given number of triples or solutions should be hashed in parallel.
+     *
+     * @param size number of triples or solutions
+     * @return true if above threshold and more than one processor is available
+     */
+    public static boolean isParallel(long size)
+    {
+	return size >= getThreshold() && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Returns shared fork-join pool, creating it on first use.
+     *
+     * @return pool with parallelism of available processors
+     */
+    public static synchronized ForkJoinPool getPool()
+    {
+	if (pool == null || pool.isShutdown())
+	{
+	    if (log.isDebugEnabled()) log.debug("Creating parallel hashing pool with parallelism {}", Runtime.getRuntime().availableProcessors());
+	    pool = new ForkJoinPool();
+	}
+	return pool;
+    }
+
+    /**
+     * Shuts down the pool, if it was created.
+     */
+    public static synchronized void shutdown()
+    {
+	if (pool != null)
+	{
+	    if (log.isDebugEnabled()) log.debug("Shutting down parallel hashing pool: {}", pool);
+	    pool.shutdownNow();
+	    pool = null;
+	}
+    }
+
+}
@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.shared.impl.PrefixMappingImpl;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.core.VarExprList;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class QueryUtils
+{
+    private static final Logger log = LoggerFactory.getLogger(QueryUtils.class);
+
+    /**
+     * Returns shallow copy of a query, built through the public <code>Query</code> API without serializing and
+     * parsing it again (which is what <code>Query.cloneQuery()</code> does).
+     * Query type, prologue, dataset, projection, solution modifiers and <code>VALUES</code> are copied, so they
+     * can be changed on the copy (e.g. <code>setLimit()</code>), while the pattern, template and expressions,
+     * which are never modified after parsing, are shared. Only queries whose aggregate variables cannot be
+     * reproduced this way are cloned.
+     *
+     * @param query query
+     * @return copy of the query
+     */
+    public static Query copy(Query query)
+    {
+	if (query == null) throw new IllegalArgumentException("Query must be not null");
+
+	Query copy = new Query();
+	copy.setSyntax(query.getSyntax());
+	copy.setStrict(query.isStrict());
+	copy.setPrefixMapping(new PrefixMappingImpl().setNsPrefixes(query.getPrefixMapping()));
+	if (query.explicitlySetBaseURI()) copy.setBaseURI(query.getBaseURI());
+
+	switch (query.getQueryType())
+	{
+	    case Query.QueryTypeSelect: copy.setQuerySelectType(); break;
+	    case Query.QueryTypeConstruct: copy.setQueryConstructType(); break;
+	    case Query.QueryTypeDescribe: copy.setQueryDescribeType(); break;
+	    case Query.QueryTypeAsk: copy.setQueryAskType(); break;
+	}
+
+	for (String graphURI : query.getGraphURIs()) copy.addGraphURI(graphURI);
+	for (String graphURI : query.getNamedGraphURIs()) copy.addNamedGraphURI(graphURI);
+	copy.setQueryPattern(query.getQueryPattern());
+	if (query.getConstructTemplate() != null) copy.setConstructTemplate(query.getConstructTemplate());
+	for (Node node : query.getResultURIs()) copy.addDescribeNode(node);
+
+	// aggregators are allocated in the same order, so they get the same variables as in the shared expressions,
+	// unless GROUP BY expressions without variables were allocated in between
+	for (ExprAggregator aggregator : query.getAggregators())
+	{
+	    ExprAggregator allocated = (ExprAggregator)copy.allocAggregate(aggregator.getAggregator());
+	    if (!allocated.getVar().equals(aggregator.getVar()))
+	    {
+		if (log.isDebugEnabled()) log.debug("Aggregator variables of query differ, cloning it instead: {}", query);
+		return query.cloneQuery();
+	    }
+	}
+
+	copy.setQueryResultStar(query.isQueryResultStar());
+	if (!query.isQueryResultStar()) copyVarExprs(query.getProject(), copy, false);
+	copyVarExprs(query.getGroupBy(), copy, true);
+	for (Expr expr : query.getHavingExprs()) copy.addHavingCondition(expr);
+	if (query.hasOrderBy())
+	    for (SortCondition condition : query.getOrderBy()) copy.addOrderBy(condition);
+
+	copy.setDistinct(query.isDistinct());
+	copy.setReduced(query.isReduced());
+	copy.setLimit(query.getLimit());
+	copy.setOffset(query.getOffset());
+	if (query.hasValues()) copy.setValuesDataBlock(query.getValuesVariables(), query.getValuesData());
+
+	copy.setResultVars();
+	return copy;
+    }
+
+    private static void copyVarExprs(VarExprList varExprs, Query copy, boolean groupBy)
+    {
+	for (Var var : varExprs.getVars())
+	{
+	    Expr expr = varExprs.getExpr(var);
+	    if (groupBy)
+	    {
+		if (expr == null) copy.addGroupBy(var);
+		else copy.addGroupBy(var, expr);
+	    }
+	    else
+	    {
+		if (expr == null) copy.addResultVar(var);
+		else copy.addResultVar(var, expr);
+	    }
+	}
+    }
+
+}
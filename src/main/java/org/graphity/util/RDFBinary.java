@@ -0,0 +1,187 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Map.Entry;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.LangBuilder;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParserRegistry;
+import org.apache.jena.riot.RDFWriterRegistry;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.ReaderRIOT;
+import org.apache.jena.riot.ReaderRIOTFactory;
+import org.apache.jena.riot.WriterGraphRIOT;
+import org.apache.jena.riot.WriterGraphRIOTFactory;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary RDF syntax, meant for service-to-service traffic where text syntaxes spend most of the CPU
+ * time on escaping, tokenizing and re-encoding the same IRIs over and over.
+ * A stream starts with a magic number and version, followed by tagged records (triples and prefixes) and an end
+ * record. Strings are UTF-8 with a variable-length size prefix. Each term is either written in full or, if it
+ * occurred before, as a reference to a dictionary entry; the writer decides which terms are added to the
+ * dictionary (IRIs, blank nodes and short literals), and the reader adds exactly those.
+ * The syntax is registered with RIOT, so it is available as a <code>Lang</code> via <code>RDFLanguages</code>
+ * and <code>RDFDataMgr</code>. Only triples are supported, and only byte streams can be written (a character
+ * <code>Writer</code> would re-encode the bytes).
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see RDFBinaryWriter
+ * @see RDFBinaryReader
+ * @see org.graphity.server.MediaType#APPLICATION_RDF_BINARY
+ */
+public class RDFBinary
+{
+    private static final Logger log = LoggerFactory.getLogger(RDFBinary.class);
+
+    /** Content type of the binary syntax */
+    public static final String CONTENT_TYPE = "application/vnd.graphity.rdf+binary";
+    /** Binary RDF language */
+    public static final Lang LANG = LangBuilder.create("RDF-BINARY", CONTENT_TYPE).
+	    addAltNames("RDFBIN").addFileExtensions("rdfb").build();
+    /** Binary RDF output format */
+    public static final RDFFormat FORMAT = new RDFFormat(LANG);
+
+    static final byte[] MAGIC = { 'G', 'R', 'D', 'F' };
+    static final int VERSION = 1;
+
+    // record tags
+    static final int END = 0x00;
+    static final int TRIPLE = 0x01;
+    static final int PREFIX = 0x02;
+
+    private static boolean registered = false;
+
+    static
+    {
+	init();
+    }
+
+    /**
+     * Registers the binary syntax with RIOT. Can be called more than once.
+     */
+    public static synchronized void init()
+    {
+	if (registered) return;
+
+	if (log.isDebugEnabled()) log.debug("Registering binary RDF syntax: {}", LANG);
+	RDFLanguages.register(LANG);
+	RDFParserRegistry.registerLangTriples(LANG, new ReaderRIOTFactory()
+	{
+	    @Override
+	    public ReaderRIOT create(Lang lang)
+	    {
+		return new ReaderRIOT()
+		{
+		    @Override
+		    public void read(InputStream in, String baseURI, ContentType ct, StreamRDF output, Context context)
+		    {
+			new RDFBinaryReader(in).read(output);
+		    }
+		};
+	    }
+	});
+	RDFWriterRegistry.register(LANG, FORMAT);
+	RDFWriterRegistry.register(FORMAT, new WriterGraphRIOTFactory()
+	{
+	    @Override
+	    public WriterGraphRIOT create(RDFFormat format)
+	    {
+		return new WriterGraphRIOT()
+		{
+		    @Override
+		    public void write(OutputStream out, Graph graph, PrefixMap prefixMap, String baseURI, Context context)
+		    {
+			RDFBinary.write(out, graph);
+		    }
+
+		    @Override
+		    public void write(Writer out, Graph graph, PrefixMap prefixMap, String baseURI, Context context)
+		    {
+			throw new RiotException("Binary RDF cannot be written to a character stream, use an OutputStream");
+		    }
+
+		    @Override
+		    public Lang getLang()
+		    {
+			return LANG;
+		    }
+		};
+	    }
+	});
+	registered = true;
+    }
+
+    /**
+     * Writes graph, including its prefix mapping, in the binary syntax.
+     *
+     * @param out output stream
+     * @param graph RDF graph
+     */
+    public static void write(OutputStream out, Graph graph)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream must be not null");
+	if (graph == null) throw new IllegalArgumentException("Graph must be not null");
+
+	StreamRDF writer = new RDFBinaryWriter(out);
+	writer.start();
+	for (Entry<String, String> entry : graph.getPrefixMapping().getNsPrefixMap().entrySet())
+	    writer.prefix(entry.getKey(), entry.getValue());
+
+	ExtendedIterator<Triple> it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+	try
+	{
+	    while (it.hasNext()) writer.triple(it.next());
+	}
+	finally
+	{
+	    it.close();
+	}
+	writer.finish();
+    }
+
+    /**
+     * Reads triples and prefixes in the binary syntax into a graph.
+     *
+     * @param in input stream
+     * @param graph RDF graph
+     */
+    public static void read(InputStream in, Graph graph)
+    {
+	if (in == null) throw new IllegalArgumentException("InputStream must be not null");
+	if (graph == null) throw new IllegalArgumentException("Graph must be not null");
+
+	new RDFBinaryReader(in).read(StreamRDFLib.graph(graph));
+    }
+
+}
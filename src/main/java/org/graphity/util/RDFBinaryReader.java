@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+
+/**
+ * Reads triples in the binary RDF syntax and sends them to a stream as they are decoded.
+ * Blank nodes are fresh, but the same label denotes the same blank node within one input.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see RDFBinary
+ */
+public class RDFBinaryReader
+{
+
+    private final BinaryTermReader in;
+
+    /**
+     * Creates reader over an input stream.
+     *
+     * @param in input stream
+     */
+    public RDFBinaryReader(InputStream in)
+    {
+	if (in == null) throw new IllegalArgumentException("InputStream must be not null");
+	this.in = new BinaryTermReader(in);
+    }
+
+    /**
+     * Reads the whole input and sends its triples and prefixes to the output stream.
+     *
+     * @param output RDF stream
+     * @throws RiotException if the input is not valid binary RDF
+     */
+    public void read(StreamRDF output)
+    {
+	if (output == null) throw new IllegalArgumentException("StreamRDF must be not null");
+
+	output.start();
+	try
+	{
+	    in.readHeader(RDFBinary.MAGIC, RDFBinary.VERSION, "binary RDF");
+
+	    while (true)
+	    {
+		int tag = in.readUnsignedByte();
+		switch (tag)
+		{
+		    case RDFBinary.TRIPLE:
+			Node s = in.readNode(), p = in.readNode(), o = in.readNode();
+			output.triple(Triple.create(s, p, o));
+			break;
+		    case RDFBinary.PREFIX:
+			String prefix = in.readString();
+			output.prefix(prefix, in.readString());
+			break;
+		    case RDFBinary.END:
+			return;
+		    default:
+			throw new RiotException("Unknown binary RDF record tag: " + tag);
+		}
+	    }
+	}
+	catch (EOFException ex)
+	{
+	    throw new RiotException("Unexpected end of binary RDF input", ex);
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+	finally
+	{
+	    output.finish();
+	}
+    }
+
+}
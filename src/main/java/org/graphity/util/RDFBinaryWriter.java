@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.jena.atlas.lib.Tuple;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+
+/**
+ * Writes triples in the binary RDF syntax as they are streamed.
+ * The output is buffered and flushed (but not closed) when the stream is finished.
+ * Quads are written as triples of their graph.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see RDFBinary
+ */
+public class RDFBinaryWriter implements StreamRDF
+{
+
+    private final BinaryTermWriter out;
+
+    /**
+     * Creates writer over an output stream.
+     *
+     * @param out output stream
+     */
+    public RDFBinaryWriter(OutputStream out)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream must be not null");
+	this.out = new BinaryTermWriter(out);
+    }
+
+    /**
+     * Creates writer over an output stream, with a limited number of dictionary entries. Terms beyond the limit
+     * are written in full, so memory use does not grow with the output.
+     *
+     * @param out output stream
+     * @param maxDictionarySize maximum number of dictionary entries
+     */
+    public RDFBinaryWriter(OutputStream out, int maxDictionarySize)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream must be not null");
+	this.out = new BinaryTermWriter(out, maxDictionarySize);
+    }
+
+    @Override
+    public void start()
+    {
+	try
+	{
+	    out.writeBytes(RDFBinary.MAGIC);
+	    out.writeByte(RDFBinary.VERSION);
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+    @Override
+    public void triple(Triple triple)
+    {
+	try
+	{
+	    out.writeByte(RDFBinary.TRIPLE);
+	    out.writeNode(triple.getSubject());
+	    out.writeNode(triple.getPredicate());
+	    out.writeNode(triple.getObject());
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+    @Override
+    public void quad(Quad quad)
+    {
+	triple(quad.asTriple());
+    }
+
+    @Override
+    public void tuple(Tuple<Node> tuple)
+    {
+	throw new RiotException("Tuples cannot be written in binary RDF");
+    }
+
+    @Override
+    public void base(String base)
+    {
+    }
+
+    @Override
+    public void prefix(String prefix, String iri)
+    {
+	try
+	{
+	    out.writeByte(RDFBinary.PREFIX);
+	    out.writeString(prefix);
+	    out.writeString(iri);
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+    @Override
+    public void finish()
+    {
+	try
+	{
+	    out.writeByte(RDFBinary.END);
+	    out.flush();
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+}
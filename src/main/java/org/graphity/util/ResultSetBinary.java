@@ -0,0 +1,246 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.jena.riot.RiotException;
+
+/**
+ * Compact binary encoding of SPARQL <code>SELECT</code> results.
+ * The output starts with a magic number, version and the result variables, followed by blocks of rows and an end
+ * record. Each block holds its number of rows and then one cell per variable and row: either an unbound marker
+ * or an RDF term, which is written in full the first time and as an integer dictionary reference afterwards
+ * (the term dictionary spans the whole response, as in {@link RDFBinary}).
+ * Blocks are written as rows arrive, so results are never held in memory as a whole.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.MediaType#APPLICATION_SPARQL_RESULTS_BINARY
+ */
+public class ResultSetBinary
+{
+
+    /** Content type of binary results */
+    public static final String CONTENT_TYPE = "application/vnd.graphity.sparql-results+binary";
+    /** Maximum number of rows in a block */
+    public static final int BLOCK_SIZE = 256;
+
+    static final byte[] MAGIC = { 'G', 'S', 'R', 'B' };
+    static final int VERSION = 1;
+
+    // record tags
+    static final int END = 0x00;
+    static final int BLOCK = 0x01;
+
+    // cell tag of unbound variables, which is not a term tag
+    static final int UNBOUND = 0x00;
+
+    /**
+     * Writes result set in the binary encoding, consuming it.
+     * The output is flushed, but not closed.
+     *
+     * @param out output stream
+     * @param results result set
+     */
+    public static void write(OutputStream out, ResultSet results)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream must be not null");
+	if (results == null) throw new IllegalArgumentException("ResultSet must be not null");
+
+	BinaryTermWriter writer = new BinaryTermWriter(out);
+	try
+	{
+	    List<Var> vars = new ArrayList<>(results.getResultVars().size());
+	    writer.writeBytes(MAGIC);
+	    writer.writeByte(VERSION);
+	    writer.writeVarInt(results.getResultVars().size());
+	    for (String varName : results.getResultVars())
+	    {
+		vars.add(Var.alloc(varName));
+		writer.writeString(varName);
+	    }
+
+	    List<Binding> block = new ArrayList<>(BLOCK_SIZE);
+	    while (results.hasNext())
+	    {
+		block.add(results.nextBinding());
+		if (block.size() == BLOCK_SIZE)
+		{
+		    writeBlock(writer, vars, block);
+		    block.clear();
+		}
+	    }
+	    if (!block.isEmpty()) writeBlock(writer, vars, block);
+
+	    writer.writeByte(END);
+	    writer.flush();
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+    private static void writeBlock(BinaryTermWriter writer, List<Var> vars, List<Binding> block) throws IOException
+    {
+	writer.writeByte(BLOCK);
+	writer.writeVarInt(block.size());
+	for (Binding binding : block)
+	    for (Var var : vars)
+	    {
+		Node node = binding.get(var);
+		if (node == null) writer.writeByte(UNBOUND);
+		else writer.writeNode(node);
+	    }
+    }
+
+    /**
+     * Returns forward-only result set that decodes rows from the input as they are consumed.
+     * The header is read immediately.
+     *
+     * @param in input stream
+     * @return result set
+     * @throws RiotException if the input is not valid binary results
+     */
+    public static ResultSet read(InputStream in)
+    {
+	if (in == null) throw new IllegalArgumentException("InputStream must be not null");
+
+	BinaryTermReader reader = new BinaryTermReader(in);
+	try
+	{
+	    reader.readHeader(MAGIC, VERSION, "binary SPARQL results");
+	    int count = reader.readVarInt();
+	    List<String> varNames = new ArrayList<>(count);
+	    List<Var> vars = new ArrayList<>(count);
+	    for (int i = 0; i < count; i++)
+	    {
+		String varName = reader.readString();
+		varNames.add(varName);
+		vars.add(Var.alloc(varName));
+	    }
+
+	    return new ResultSetStream(varNames, ModelFactory.createDefaultModel(),
+		    new QueryIterPlainWrapper(new BindingIterator(reader, vars)));
+	}
+	catch (EOFException ex)
+	{
+	    throw new RiotException("Unexpected end of binary SPARQL results input", ex);
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+    /**
+     * Decodes rows block by block.
+     */
+    private static class BindingIterator implements Iterator<Binding>
+    {
+	private final BinaryTermReader reader;
+	private final List<Var> vars;
+	private int remaining = 0;
+	private boolean finished = false;
+
+	BindingIterator(BinaryTermReader reader, List<Var> vars)
+	{
+	    this.reader = reader;
+	    this.vars = vars;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+	    if (remaining > 0) return true;
+	    if (finished) return false;
+
+	    try
+	    {
+		int tag = reader.readUnsignedByte();
+		switch (tag)
+		{
+		    case BLOCK:
+			remaining = reader.readVarInt();
+			return remaining > 0 || hasNext();
+		    case END:
+			finished = true;
+			return false;
+		    default:
+			throw new RiotException("Unknown binary SPARQL results record tag: " + tag);
+		}
+	    }
+	    catch (EOFException ex)
+	    {
+		throw new RiotException("Unexpected end of binary SPARQL results input", ex);
+	    }
+	    catch (IOException ex)
+	    {
+		throw new RiotException(ex);
+	    }
+	}
+
+	@Override
+	public Binding next()
+	{
+	    if (!hasNext()) throw new NoSuchElementException();
+
+	    try
+	    {
+		BindingMap binding = BindingFactory.create();
+		for (Var var : vars)
+		{
+		    int tag = reader.readUnsignedByte();
+		    if (tag != UNBOUND) binding.add(var, reader.readNode(tag));
+		}
+		remaining--;
+		return binding;
+	    }
+	    catch (EOFException ex)
+	    {
+		throw new RiotException("Unexpected end of binary SPARQL results input", ex);
+	    }
+	    catch (IOException ex)
+	    {
+		throw new RiotException(ex);
+	    }
+	}
+
+	@Override
+	public void remove()
+	{
+	    throw new UnsupportedOperationException("Binary SPARQL results are read-only");
+	}
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.sparql.core.ResultBinding;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Incremental, order-sensitive 64-bit hash of <code>SELECT</code> results.
+ * Solutions are fed one at a time as they are read, so results do not have to be held in memory to be hashed.
+ * The hash covers the result variables in their order, and every row is hashed together with its position,
+ * so reordered results (e.g. after <code>ORDER BY</code> changes) have different hashes, and identical rows do
+ * not cancel each other out. Row hashes are combined by addition, which lets chunks of rows be hashed
+ * independently and added up.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see ResultSetUtils#hashResultSet(com.hp.hpl.jena.query.ResultSet)
+ */
+public class ResultSetHash
+{
+
+    private static final long VAR_SEED = 0xd807aa98a3030242L;
+    private static final long VARS_SEED = 0x12835b0145706fbeL;
+    private static final long ROW_SEED = 0x243185be4ee4b28cL;
+    private static final long UNBOUND = 0x550c7dc3d5ffb4e2L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final List<Var> vars;
+    private final long varsHash;
+    private long sum = 0;
+    private long count = 0;
+
+    /**
+     * Creates hasher of results with the given variables.
+     *
+     * @param varNames result variable names, in order
+     */
+    public ResultSetHash(List<String> varNames)
+    {
+	if (varNames == null) throw new IllegalArgumentException("Variable name List must be not null");
+
+	List<Var> varList = new ArrayList<>(varNames.size());
+	long hash = VARS_SEED;
+	for (String varName : varNames)
+	{
+	    varList.add(Var.alloc(varName));
+	    hash = ModelHash.mix(hash ^ ModelHash.hashString(VAR_SEED, varName));
+	}
+	this.vars = Collections.unmodifiableList(varList);
+	this.varsHash = hash;
+    }
+
+    /**
+     * Adds the next solution.
+     *
+     * @param binding solution binding
+     */
+    public void update(Binding binding)
+    {
+	sum += hashRow(binding, count);
+	count++;
+    }
+
+    /**
+     * Adds the next solution.
+     *
+     * @param solution query solution
+     */
+    public void update(QuerySolution solution)
+    {
+	update(toBinding(solution));
+    }
+
+    /**
+     * Returns the binding behind a query solution, or copies the result variables of other solutions into one.
+     */
+    private Binding toBinding(QuerySolution solution)
+    {
+	if (solution instanceof ResultBinding) return ((ResultBinding)solution).getBinding();
+
+	BindingMap binding = BindingFactory.create();
+	for (Var var : vars)
+	{
+	    RDFNode node = solution.get(var.getVarName());
+	    if (node != null) binding.add(var, node.asNode());
+	}
+	return binding;
+    }
+
+    /**
+     * Adds hashes of rows that were computed separately, e.g. in parallel, using {@link #hashRow(Binding, long)}.
+     * Positions of those rows must follow the rows added so far.
+     *
+     * @param rowHashSum sum of row hashes
+     * @param rows number of rows
+     */
+    public void add(long rowHashSum, long rows)
+    {
+	sum += rowHashSum;
+	count += rows;
+    }
+
+    /**
+     * Returns hash of a row at the given position. Does not change the state of this hasher.
+     *
+     * @param binding solution binding
+     * @param position zero-based row position
+     * @return row hash
+     */
+    public long hashRow(Binding binding, long position)
+    {
+	long hash = ROW_SEED;
+	for (Var var : vars) hash = mixNode(hash, binding.get(var));
+	return ModelHash.mix(hash ^ (position * GOLDEN_GAMMA));
+    }
+
+    private static long mixNode(long hash, Node node)
+    {
+	return ModelHash.mix(hash ^ (node != null ? ModelHash.computeHash(node) : UNBOUND));
+    }
+
+    /**
+     * Returns hash of a single solution, covering names and values of its bound variables in iteration order.
+     *
+     * @param solution query solution
+     * @return hash
+     */
+    public static long hashSolution(QuerySolution solution)
+    {
+	if (solution == null) throw new IllegalArgumentException("QuerySolution must be not null");
+
+	long hash = ROW_SEED;
+	Iterator<String> it = solution.varNames();
+	while (it.hasNext())
+	{
+	    String varName = it.next();
+	    RDFNode node = solution.get(varName);
+	    if (node != null) hash = mixNode(ModelHash.mix(hash ^ ModelHash.hashString(VAR_SEED, varName)), node.asNode());
+	}
+	return hash;
+    }
+
+    public List<Var> getVars()
+    {
+	return vars;
+    }
+
+    /**
+     * Returns number of rows added so far.
+     *
+     * @return row count
+     */
+    public long getCount()
+    {
+	return count;
+    }
+
+    /**
+     * Returns hash of the rows added so far.
+     *
+     * @return 64-bit hash
+     */
+    public long getValue()
+    {
+	return ModelHash.mix(varsHash + ModelHash.mix(sum ^ (count * GOLDEN_GAMMA)));
+    }
+
+    @Override
+    public String toString()
+    {
+	return "[ResultSetHash vars: " + getVars() + " rows: " + getCount() + " hash: " + Long.toHexString(getValue()) + "]";
+    }
+
+}
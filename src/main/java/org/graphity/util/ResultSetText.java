@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.graphity.util;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.jena.riot.RiotException;
+
+/**
+ * Writes <code>SELECT</code> results as CSV or TSV, row by row.
+ * Values are written character by character into one buffered writer per response, so rows are neither
+ * concatenated nor held in memory, and the throughput is limited by the output rather than by the writer.
+ * Blank nodes are relabelled <code>b0</code>, <code>b1</code>... per response.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see <a href="http://www.w3.org/TR/sparql11-results-csv-tsv/">SPARQL 1.1 Query Results CSV and TSV Formats</a>
+ */
+public class ResultSetText
+{
+
+    /** Size of the output buffer in characters */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final boolean tsv;
+    private final Map<Node, String> blankNodeLabels = new HashMap<>();
+
+    private ResultSetText(OutputStream out, boolean tsv)
+    {
+	if (out == null) throw new IllegalArgumentException("OutputStream must be not null");
+	this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+	this.tsv = tsv;
+    }
+
+    /**
+     * Writes result set as CSV, consuming it. The output is flushed, but not closed.
+     *
+     * @param out output stream
+     * @param results result set
+     */
+    public static void writeCSV(OutputStream out, ResultSet results)
+    {
+	if (results == null) throw new IllegalArgumentException("ResultSet must be not null");
+	new ResultSetText(out, false).write(results);
+    }
+
+    /**
+     * Writes result set as TSV, consuming it. The output is flushed, but not closed.
+     *
+     * @param out output stream
+     * @param results result set
+     */
+    public static void writeTSV(OutputStream out, ResultSet results)
+    {
+	if (results == null) throw new IllegalArgumentException("ResultSet must be not null");
+	new ResultSetText(out, true).write(results);
+    }
+
+    private void write(ResultSet results)
+    {
+	try
+	{
+	    List<Var> vars = new ArrayList<>(results.getResultVars().size());
+	    for (String varName : results.getResultVars())
+	    {
+		if (!vars.isEmpty()) out.write(tsv ? '\t' : ',');
+		if (tsv) out.write('?');
+		out.write(varName);
+		vars.add(Var.alloc(varName));
+	    }
+	    writeEndOfLine();
+
+	    while (results.hasNext())
+	    {
+		Binding binding = results.nextBinding();
+		for (int i = 0; i < vars.size(); i++)
+		{
+		    if (i > 0) out.write(tsv ? '\t' : ',');
+		    Node node = binding.get(vars.get(i));
+		    if (node != null)
+		    {
+			if (tsv) writeTSV(node);
+			else writeCSV(node);
+		    }
+		}
+		writeEndOfLine();
+	    }
+
+	    out.flush();
+	}
+	catch (IOException ex)
+	{
+	    throw new RiotException(ex);
+	}
+    }
+
+    private void writeEndOfLine() throws IOException
+    {
+	if (tsv) out.write('\n');
+	else out.write("\r\n");
+    }
+
+    /**
+     * Writes value as a CSV field: IRIs and literals without markup, quoted only if needed.
+     */
+    private void writeCSV(Node node) throws IOException
+    {
+	String value;
+	if (node.isURI()) value = node.getURI();
+	else if (node.isLiteral()) value = node.getLiteralLexicalForm();
+	else if (node.isBlank())
+	{
+	    out.write("_:");
+	    out.write(getBlankNodeLabel(node));
+	    return;
+	}
+	else value = node.toString();
+
+	if (!needsQuotes(value))
+	{
+	    out.write(value);
+	    return;
+	}
+
+	out.write('"');
+	for (int i = 0; i < value.length(); i++)
+	{
+	    char c = value.charAt(i);
+	    if (c == '"') out.write('"');
+	    out.write(c);
+	}
+	out.write('"');
+    }
+
+    private static boolean needsQuotes(String value)
+    {
+	for (int i = 0; i < value.length(); i++)
+	{
+	    char c = value.charAt(i);
+	    if (c == '"' || c == ',' || c == '\n' || c == '\r') return true;
+	}
+	return false;
+    }
+
+    /**
+     * Writes value as a TSV field, in N-Triples/Turtle syntax.
+     */
+    private void writeTSV(Node node) throws IOException
+    {
+	if (node.isURI())
+	{
+	    out.write('<');
+	    out.write(node.getURI());
+	    out.write('>');
+	}
+	else if (node.isBlank())
+	{
+	    out.write("_:");
+	    out.write(getBlankNodeLabel(node));
+	}
+	else if (node.isLiteral())
+	{
+	    out.write('"');
+	    writeEscaped(node.getLiteralLexicalForm());
+	    out.write('"');
+
+	    String lang = node.getLiteralLanguage();
+	    String datatypeURI = node.getLiteralDatatypeURI();
+	    if (lang != null && !lang.isEmpty())
+	    {
+		out.write('@');
+		out.write(lang);
+	    }
+	    else if (datatypeURI != null)
+	    {
+		out.write("^^<");
+		out.write(datatypeURI);
+		out.write('>');
+	    }
+	}
+	else out.write(node.toString());
+    }
+
+    private void writeEscaped(String value) throws IOException
+    {
+	for (int i = 0; i < value.length(); i++)
+	{
+	    char c = value.charAt(i);
+	    switch (c)
+	    {
+		case '"': out.write("\\\""); break;
+		case '\\': out.write("\\\\"); break;
+		case '\t': out.write("\\t"); break;
+		case '\n': out.write("\\n"); break;
+		case '\r': out.write("\\r"); break;
+		default: out.write(c);
+	    }
+	}
+    }
+
+    private String getBlankNodeLabel(Node node)
+    {
+	String label = blankNodeLabels.get(node);
+	if (label == null)
+	{
+	    label = "b" + blankNodeLabels.size();
+	    blankNodeLabels.put(node, label);
+	}
+	return label;
+    }
+
+}
@@ -19,8 +19,13 @@ package org.graphity.util;
 
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import java.util.Iterator;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -28,27 +33,87 @@ import java.util.Iterator;
  */
 public class ResultSetUtils
 {
+    private static final Logger log = LoggerFactory.getLogger(ResultSetUtils.class);
+
+    /**
+     * Returns order-sensitive hash of a result set, consuming it. Solutions are hashed as they are read, so any
+     * result set can be hashed, not only a rewindable one.
+     * Rewindable result sets with at least the parallel threshold number of solutions are hashed in parallel.
+     * 
+     * @param result result set
+     * @return hash
+     * @see ResultSetHash
+     * @see ParallelHashing
+     */
     public static long hashResultSet(ResultSet result)
     {
-    	long hash = 0;
-	
-	while (result.hasNext()) hash ^= hashQuerySolution(result.next());
+	if (result instanceof ResultSetRewindable && ParallelHashing.isParallel(((ResultSetRewindable)result).size()))
+	    return hashParallel(result);
+
+	ResultSetHash hash = new ResultSetHash(result.getResultVars());
+	while (result.hasNext()) hash.update(result.nextBinding());
 	
-	return hash;
+	return hash.getValue();
+    }
+
+    /**
+     * Returns hash of a result set, consuming it and hashing chunks of its solutions on the fork-join pool.
+     * The hash is equal to the sequential one.
+     * 
+     * @param result result set
+     * @return hash
+     */
+    public static long hashParallel(ResultSet result)
+    {
+	List<Binding> bindings = new ArrayList<>();
+	while (result.hasNext()) bindings.add(result.nextBinding());
+
+	if (log.isDebugEnabled()) log.debug("Hashing {} query solutions in parallel", bindings.size());
+	ResultSetHash hash = new ResultSetHash(result.getResultVars());
+	hash.add(ParallelHashing.getPool().invoke(new ChunkTask(hash, bindings, 0, bindings.size())), bindings.size());
+	return hash.getValue();
     }
     
     public static long hashQuerySolution(QuerySolution solution)
     {
-	long hash = 0;
-	
-	Iterator<String> it = solution.varNames();
-	while (it.hasNext())
+	return ResultSetHash.hashSolution(solution);
+    }
+
+    /**
+     * Sums hashes of a range of rows, splitting it in halves until chunks are small enough.
+     */
+    private static class ChunkTask extends RecursiveTask<Long>
+    {
+	private static final long serialVersionUID = 1L;
+
+	private final ResultSetHash hash;
+	private final List<Binding> bindings;
+	private final int from, to;
+
+	ChunkTask(ResultSetHash hash, List<Binding> bindings, int from, int to)
 	{
-	    RDFNode node = solution.get(it.next());
-	    if (node != null) hash ^= (long) node.hashCode();
+	    this.hash = hash;
+	    this.bindings = bindings;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected Long compute()
+	{
+	    if (to - from <= ParallelHashing.CHUNK_SIZE)
+	    {
+		long sum = 0;
+		for (int i = from; i < to; i++) sum += hash.hashRow(bindings.get(i), i);
+		return sum;
+	    }
+
+	    int middle = (from + to) >>> 1;
+	    ChunkTask right = new ChunkTask(hash, bindings, middle, to);
+	    right.fork();
+	    long sum = new ChunkTask(hash, bindings, from, middle).compute();
+	    return sum + right.join();
 	}
-	
-	return hash;
     }
-    
-}
\ No newline at end of file
+
+}
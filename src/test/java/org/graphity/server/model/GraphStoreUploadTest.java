@@ -0,0 +1,181 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.model;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.graphity.server.provider.ModelProvider;
+import org.graphity.server.util.DataManager;
+import org.graphity.server.util.OriginGuard;
+import org.graphity.server.vocabulary.GS;
+import org.graphity.util.RDFBinary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Streams Graph Store uploads through Jersey, <code>GraphStoreBase</code> and the origin guard to an origin that
+ * takes longer to read them than the guard timeout. Uploads are consumed on the request thread, so they must
+ * reach the origin in full instead of timing out.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see org.graphity.server.util.UploadGraph
+ */
+public class GraphStoreUploadTest
+{
+
+    private static final int TRIPLES = 20000;
+    private static final long GUARD_TIMEOUT = 200;
+    private static final long ORIGIN_DELAY = 1000;
+
+    private final AtomicLong received = new AtomicLong(-1);
+    private volatile String receivedContentType = null;
+    private HttpServer origin, server;
+
+    @Before
+    public void setUp() throws IOException
+    {
+	RDFBinary.init();
+
+	origin = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+	origin.createContext("/ds", new HttpHandler()
+	{
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException
+	    {
+		if (exchange.getRequestMethod().equals("PUT") || exchange.getRequestMethod().equals("POST"))
+		{
+		    try
+		    {
+			Thread.sleep(ORIGIN_DELAY); // slower than the guard allows for reads
+		    }
+		    catch (InterruptedException ex)
+		    {
+			Thread.currentThread().interrupt();
+		    }
+		    receivedContentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		    final AtomicLong count = new AtomicLong();
+		    RDFDataMgr.parse(new StreamRDFBase()
+		    {
+			@Override
+			public void triple(Triple triple)
+			{
+			    count.incrementAndGet();
+			}
+		    }, exchange.getRequestBody(), RDFLanguages.contentTypeToLang(receivedContentType));
+		    received.set(count.get());
+		    exchange.sendResponseHeaders(204, -1);
+		}
+		else exchange.sendResponseHeaders(404, -1); // graphs do not exist yet
+		exchange.close();
+	    }
+	});
+	origin.start();
+
+	DefaultResourceConfig config = new DefaultResourceConfig(GraphStoreBase.class);
+	config.getSingletons().add(new ModelProvider());
+	config.getProperties().put(GS.graphStore.getURI(), "http://localhost:" + origin.getAddress().getPort() + "/ds");
+	server = HttpServerFactory.create("http://localhost:" + getFreePort() + "/", config);
+	server.start();
+
+	ModelProvider.setStreamUploads(true);
+	DataManager.get().getOriginGuard().setTimeout(GUARD_TIMEOUT);
+    }
+
+    @After
+    public void tearDown()
+    {
+	ModelProvider.setStreamUploads(false);
+	DataManager.get().getOriginGuard().setTimeout(OriginGuard.DEFAULT_TIMEOUT);
+	if (server != null) server.stop(0);
+	if (origin != null) origin.stop(0);
+    }
+
+    @Test
+    public void testPutPassesUploadThrough() throws IOException
+    {
+	assertEquals(201, upload("PUT", Lang.NTRIPLES));
+	assertEquals(TRIPLES, received.get());
+	assertEquals(Lang.NTRIPLES, RDFLanguages.contentTypeToLang(receivedContentType));
+    }
+
+    @Test
+    public void testPostConvertsUpload() throws IOException
+    {
+	assertEquals(201, upload("POST", Lang.TURTLE));
+	assertEquals(TRIPLES, received.get());
+	assertEquals(Lang.NTRIPLES, RDFLanguages.contentTypeToLang(receivedContentType));
+    }
+
+    /**
+     * Sends triples to a named graph as a chunked request body, and returns the response status.
+     */
+    private int upload(String method, Lang lang) throws IOException
+    {
+	URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/service?graph=http://example.org/graph");
+	HttpURLConnection conn = (HttpURLConnection)url.openConnection();
+	conn.setRequestMethod(method);
+	conn.setDoOutput(true);
+	conn.setChunkedStreamingMode(8192);
+	conn.setRequestProperty("Content-Type", lang.getContentType().getContentType());
+	conn.setReadTimeout((int)(ORIGIN_DELAY * 10));
+
+	try (OutputStream out = conn.getOutputStream())
+	{
+	    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+	    for (int i = 0; i < TRIPLES; i++)
+		writer.write("<http://example.org/resource/" + i + "> <http://example.org/value> \"" + i + "\" .\n");
+	    writer.flush();
+	}
+
+	try
+	{
+	    return conn.getResponseCode();
+	}
+	finally
+	{
+	    conn.disconnect();
+	}
+    }
+
+    private static int getFreePort() throws IOException
+    {
+	HttpServer probe = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+	int port = probe.getAddress().getPort();
+	probe.stop(0);
+	return port;
+    }
+
+}
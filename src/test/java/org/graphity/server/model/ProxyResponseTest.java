@@ -0,0 +1,153 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.model;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import org.graphity.server.util.DataManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Proxies Graph Store responses from an origin that sends a very large body, which clients only partly read.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class ProxyResponseTest
+{
+
+    private static final long BODY_SIZE = 256L * 1024 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final String ETAG = "\"origin\"";
+
+    private final AtomicLong sent = new AtomicLong();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile String acceptEncoding = "none";
+    private HttpServer origin;
+    private String graphStoreURI;
+
+    @Before
+    public void setUp() throws IOException
+    {
+	origin = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+	origin.createContext("/ds", new HttpHandler()
+	{
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException
+	    {
+		acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		exchange.getResponseHeaders().add("Content-Type", "application/n-triples");
+		exchange.getResponseHeaders().add("ETag", ETAG);
+		exchange.sendResponseHeaders(200, 0); // chunked
+		byte[] block = new byte[BLOCK_SIZE];
+		try (OutputStream out = exchange.getResponseBody())
+		{
+		    while (sent.get() < BODY_SIZE)
+		    {
+			out.write(block);
+			sent.addAndGet(block.length);
+		    }
+		}
+		catch (IOException ex)
+		{
+		    // client went away
+		}
+		finally
+		{
+		    finished.countDown();
+		    exchange.close();
+		}
+	    }
+	});
+	origin.start();
+	graphStoreURI = "http://localhost:" + origin.getAddress().getPort() + "/ds";
+    }
+
+    @After
+    public void tearDown()
+    {
+	if (origin != null) origin.stop(0);
+    }
+
+    @Test
+    public void testUnreadBodyIsAborted() throws IOException, InterruptedException
+    {
+	ProxyResponse response = new ProxyResponse(DataManager.get().proxyGraph(graphStoreURI, null, "application/n-triples"));
+	InputStream in = response.getStream();
+	assertTrue(in.read(new byte[BLOCK_SIZE]) > 0);
+
+	long start = System.currentTimeMillis();
+	in.close();
+	assertTrue("Origin did not notice the abort", finished.await(30, TimeUnit.SECONDS));
+	assertTrue("Closing read the rest of the body", System.currentTimeMillis() - start < 10000);
+	assertTrue(sent.get() < BODY_SIZE);
+    }
+
+    @Test
+    public void testUnwrittenResponseIsAborted() throws InterruptedException
+    {
+	ProxyResponse response = new ProxyResponse(DataManager.get().proxyGraph(graphStoreURI, null, "application/n-triples"));
+	response.close();
+	assertTrue("Origin did not notice the abort", finished.await(30, TimeUnit.SECONDS));
+	assertTrue(sent.get() < BODY_SIZE);
+    }
+
+    @Test
+    public void testRawResponseIsNotCompressed() throws IOException, InterruptedException
+    {
+	ProxyResponse proxy = new ProxyResponse(DataManager.get().proxyGraph(graphStoreURI, null, "application/n-triples"));
+	Response response = proxy.getResponseBuilder().build();
+	assertEquals(ETAG, response.getMetadata().getFirst(HttpHeaders.ETAG));
+	assertNull(acceptEncoding); // the forwarded ETag belongs to the uncompressed bytes
+
+	OutputStream out = new ByteArrayOutputStream()
+	{
+	    @Override
+	    public synchronized void write(byte[] bytes, int offset, int length)
+	    {
+		if (count + length > BLOCK_SIZE * 4) throw new IllegalStateException("Client went away");
+		super.write(bytes, offset, length);
+	    }
+	};
+	try
+	{
+	    proxy.write(out);
+	}
+	catch (IllegalStateException ex)
+	{
+	    // expected
+	}
+	assertTrue("Origin did not notice the abort", finished.await(30, TimeUnit.SECONDS));
+	assertTrue(sent.get() < BODY_SIZE);
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.util.FileManager;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Asynchronous requests hold a pool thread each, and are rejected once the bounded queue is full.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class DataManagerAsyncTest
+{
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private DataManager dataManager;
+
+    @Before
+    public void setUp()
+    {
+	dataManager = new DataManager(FileManager.get(), ARQ.getContext())
+	{
+	    @Override
+	    protected ThreadPoolExecutor createAsyncExecutor(int poolSize, int queueSize)
+	    {
+		return super.createAsyncExecutor(1, 1);
+	    }
+	};
+    }
+
+    @After
+    public void tearDown()
+    {
+	release.countDown();
+	dataManager.shutdown();
+    }
+
+    @Test
+    public void testSaturatedQueueIsRejected() throws InterruptedException, ExecutionException
+    {
+	Future<Boolean> running = dataManager.submit(new Blocking(), null);
+	Future<Boolean> queued = dataManager.submit(new Blocking(), null);
+
+	try
+	{
+	    dataManager.submit(new Blocking(), null);
+	    fail("Request was not rejected");
+	}
+	catch (RejectedExecutionException ex)
+	{
+	    assertTrue(ex.getMessage(), ex.getMessage().contains("1 async threads are busy and 1 requests are already queued"));
+	}
+
+	release.countDown();
+	assertEquals(Boolean.TRUE, running.get());
+	assertEquals(Boolean.TRUE, queued.get());
+    }
+
+    @Test
+    public void testShutdownIsRejected()
+    {
+	dataManager.shutdown();
+	try
+	{
+	    dataManager.submit(new Blocking(), null);
+	    fail("Request was not rejected");
+	}
+	catch (RejectedExecutionException ex)
+	{
+	    assertTrue(ex.getMessage(), ex.getMessage().contains("shut down"));
+	}
+    }
+
+    private class Blocking implements Callable<Boolean>
+    {
+
+	@Override
+	public Boolean call() throws InterruptedException
+	{
+	    return release.await(30, TimeUnit.SECONDS);
+	}
+
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.sparql.lang.ParserSPARQL11Update;
+import com.hp.hpl.jena.sparql.modify.UpdateVisitorSink;
+import com.hp.hpl.jena.update.UpdateFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.graphity.server.util.GraphDependencies.DEFAULT_GRAPH;
+import static org.graphity.server.util.GraphDependencies.NAMED_GRAPHS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Graphs that queries read and updates write, and whether writes affect reads.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class GraphDependenciesTest
+{
+
+    private static final String GRAPH = "http://example.org/graph";
+    private static final String OTHER = "http://example.org/other";
+
+    @Test
+    public void testQueryGraphs()
+    {
+	assertEquals(set(DEFAULT_GRAPH), GraphDependencies.of(QueryFactory.create("SELECT * { ?s ?p ?o }"), null));
+	assertEquals(set(GRAPH), GraphDependencies.of(QueryFactory.create("SELECT * FROM <" + GRAPH + "> { ?s ?p ?o }"), null));
+	assertEquals(set(DEFAULT_GRAPH, GRAPH, NAMED_GRAPHS),
+		GraphDependencies.of(QueryFactory.create("SELECT * { ?s ?p ?o GRAPH <" + GRAPH + "> { ?s ?p ?o } " +
+		    "{ SELECT * { GRAPH ?g { ?s ?p ?o } } } }"), null));
+    }
+
+    @Test
+    public void testUpdateGraphs()
+    {
+	assertEquals(set(DEFAULT_GRAPH, GRAPH), GraphDependencies.of(UpdateFactory.create(
+		"INSERT DATA { <a:s> <a:p> <a:o> GRAPH <" + GRAPH + "> { <a:s> <a:p> <a:o> } }")));
+	assertEquals(set(OTHER), GraphDependencies.of(UpdateFactory.create(
+		"WITH <" + OTHER + "> DELETE { ?s ?p ?o } WHERE { ?s ?p ?o }")));
+	assertEquals(set(NAMED_GRAPHS), GraphDependencies.of(UpdateFactory.create("DROP NAMED")));
+	assertEquals(set(DEFAULT_GRAPH), GraphDependencies.of((String)null));
+    }
+
+    @Test
+    public void testStreamedDataGraphs()
+    {
+	GraphDependencies.GraphCollector collector = new GraphDependencies.GraphCollector();
+	String update = "INSERT DATA { <a:s> <a:p> <a:o> GRAPH <" + GRAPH + "> { <a:s> <a:p> <a:o> } } ; " +
+		"DELETE DATA { GRAPH <" + OTHER + "> { <a:s> <a:p> <a:o> } }";
+	new ParserSPARQL11Update().parse(new UpdateVisitorSink(collector),
+		new ByteArrayInputStream(update.getBytes(StandardCharsets.UTF_8)));
+
+	assertEquals(set(DEFAULT_GRAPH, GRAPH, OTHER), collector.getGraphs());
+    }
+
+    @Test
+    public void testAffected()
+    {
+	assertTrue(GraphDependencies.isAffected(set(GRAPH), set(GRAPH), false));
+	assertFalse(GraphDependencies.isAffected(set(GRAPH), set(OTHER), false));
+	assertFalse(GraphDependencies.isAffected(set(DEFAULT_GRAPH), set(GRAPH), false));
+	assertTrue(GraphDependencies.isAffected(set(DEFAULT_GRAPH), set(GRAPH), true)); // union default graph
+	assertTrue(GraphDependencies.isAffected(set(NAMED_GRAPHS), set(GRAPH), false));
+	assertTrue(GraphDependencies.isAffected(set(GRAPH), set(NAMED_GRAPHS), false));
+	assertFalse(GraphDependencies.isAffected(set(DEFAULT_GRAPH), set(NAMED_GRAPHS), false));
+	assertFalse(GraphDependencies.isAffected(set(GRAPH), Collections.<String>emptySet(), true));
+    }
+
+    private static Set<String> set(String... graphs)
+    {
+	return new HashSet<>(Arrays.asList(graphs));
+    }
+
+}
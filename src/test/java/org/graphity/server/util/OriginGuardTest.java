@@ -0,0 +1,229 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.WebApplicationException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads from a slow origin time out on the request thread, writes do not, and excess requests are rejected.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class OriginGuardTest
+{
+
+    private static final long ORIGIN_DELAY = 3000;
+    private static final long GUARD_TIMEOUT = 200;
+
+    private HttpServer origin;
+    private String originURI;
+
+    @Before
+    public void setUp() throws IOException
+    {
+	origin = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+	origin.createContext("/slow", new HttpHandler()
+	{
+	    @Override
+	    public void handle(HttpExchange exchange) throws IOException
+	    {
+		try
+		{
+		    Thread.sleep(ORIGIN_DELAY);
+		    byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+		    exchange.sendResponseHeaders(200, body.length);
+		    try (OutputStream out = exchange.getResponseBody())
+		    {
+			out.write(body);
+		    }
+		}
+		catch (InterruptedException | IOException ex)
+		{
+		    // client went away
+		}
+		finally
+		{
+		    exchange.close();
+		}
+	    }
+	});
+	origin.start();
+	originURI = "http://localhost:" + origin.getAddress().getPort() + "/slow";
+	DataManager.get().getOriginGuard().setTimeout(GUARD_TIMEOUT);
+    }
+
+    @After
+    public void tearDown()
+    {
+	DataManager.get().getOriginGuard().setTimeout(OriginGuard.DEFAULT_TIMEOUT);
+	if (origin != null) origin.stop(0);
+    }
+
+    @Test
+    public void testReadTimesOutOnRequestThread()
+    {
+	OriginGuard guard = DataManager.get().getOriginGuard();
+	long timeoutCount = guard.getTimeoutCount();
+	final Thread caller = Thread.currentThread();
+
+	long start = System.currentTimeMillis();
+	try
+	{
+	    guard.execute(new Callable<String>()
+	    {
+		@Override
+		public String call() throws IOException
+		{
+		    assertSame(caller, Thread.currentThread());
+		    return get();
+		}
+	    });
+	    fail("Read did not time out");
+	}
+	catch (WebApplicationException ex)
+	{
+	    assertEquals(504, ex.getResponse().getStatus());
+	}
+	assertTrue("Read was not stopped at the timeout", System.currentTimeMillis() - start < ORIGIN_DELAY);
+	assertEquals(timeoutCount + 1, guard.getTimeoutCount());
+	assertEquals(0, guard.getWaitingCount());
+    }
+
+    @Test
+    public void testWriteIsNotTimedOut()
+    {
+	assertEquals("ok", DataManager.get().getOriginGuard().executeWrite(new Callable<String>()
+	{
+	    @Override
+	    public String call() throws IOException
+	    {
+		return get();
+	    }
+	}));
+    }
+
+    @Test
+    public void testTimeoutsOnlyApplyToReads()
+    {
+	final OriginGuard guard = new OriginGuard(OriginGuard.DEFAULT_MAX_REQUESTS, GUARD_TIMEOUT);
+	final HttpParams params = new BasicHttpParams();
+	assertSame(params, guard.getRequestParams(params));
+
+	guard.execute(new Callable<Void>()
+	{
+	    @Override
+	    public Void call()
+	    {
+		int soTimeout = HttpConnectionParams.getSoTimeout(guard.getRequestParams(params));
+		assertTrue(soTimeout > 0 && soTimeout <= GUARD_TIMEOUT);
+		assertTrue(HttpConnectionParams.getConnectionTimeout(guard.getRequestParams(params)) <= GUARD_TIMEOUT);
+
+		guard.executeWrite(new Callable<Void>()
+		{
+		    @Override
+		    public Void call()
+		    {
+			assertSame(params, guard.getRequestParams(params));
+			return null;
+		    }
+		});
+		return null;
+	    }
+	});
+	assertSame(params, guard.getRequestParams(params));
+    }
+
+    @Test
+    public void testTooManyRequestsAreRejected() throws InterruptedException
+    {
+	final OriginGuard guard = new OriginGuard(1, 0);
+	final CountDownLatch started = new CountDownLatch(1);
+	final CountDownLatch release = new CountDownLatch(1);
+	Thread waiting = new Thread(new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+		guard.execute(new Callable<Void>()
+		{
+		    @Override
+		    public Void call() throws InterruptedException
+		    {
+			started.countDown();
+			release.await();
+			return null;
+		    }
+		});
+	    }
+	});
+	waiting.start();
+	assertTrue(started.await(10, TimeUnit.SECONDS));
+
+	try
+	{
+	    guard.execute(new Callable<Void>()
+	    {
+		@Override
+		public Void call()
+		{
+		    fail("Request was admitted");
+		    return null;
+		}
+	    });
+	    fail("Request was not rejected");
+	}
+	catch (WebApplicationException ex)
+	{
+	    assertEquals(503, ex.getResponse().getStatus());
+	}
+	finally
+	{
+	    release.countDown();
+	    waiting.join();
+	}
+	assertEquals(1, guard.getRejectedCount());
+	assertEquals(0, guard.getWaitingCount());
+    }
+
+    private String get() throws IOException
+    {
+	return EntityUtils.toString(DataManager.get().getHttpClient().execute(new HttpGet(originURI)).getEntity());
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cache hits must be served without parsing, and copies must be equivalent to the cached query but independent
+ * of it.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class ParsedQueryCacheTest
+{
+
+    private static final String[] QUERIES = {
+	"BASE <http://example.org/> PREFIX ex: <ns#> SELECT DISTINCT ?s (STR(?o) AS ?label) FROM <graph> WHERE { ?s ex:value ?o } ORDER BY DESC(?o) LIMIT 10 OFFSET 2",
+	"SELECT ?s (COUNT(?o) AS ?count) WHERE { ?s ?p ?o } GROUP BY ?s HAVING (COUNT(?o) > 1) ORDER BY DESC(COUNT(?o)) ?s",
+	"SELECT (SUM(?v) AS ?sum) WHERE { ?s ?p ?o BIND (STRLEN(STR(?o)) AS ?v) } GROUP BY (STRLEN(STR(?s))) HAVING (MAX(?v) > 0)", // cloned
+	"SELECT * WHERE { ?s ?p ?o } VALUES ?p { <http://example.org/ns#value> }",
+	"CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o } LIMIT 5",
+	"DESCRIBE ?s <http://example.org/resource/1> WHERE { ?s ?p ?o }",
+	"ASK { ?s ?p ?o }"
+    };
+
+    @Test
+    public void testHitIsNotParsed()
+    {
+	ParsedQueryCache cache = new ParsedQueryCache(10, 1024);
+	Query first = cache.getQuery(QUERIES[0]);
+	Query second = cache.getQuery(QUERIES[0]);
+
+	assertEquals(1, cache.getQueryMissCount());
+	assertEquals(1, cache.getQueryHitCount());
+	assertNotSame(first, second);
+	assertSame(first.getQueryPattern(), second.getQueryPattern()); // parsing would create a new pattern
+    }
+
+    @Test
+    public void testCopyIsIndependent()
+    {
+	ParsedQueryCache cache = new ParsedQueryCache(10, 1024);
+	Query first = cache.getQuery(QUERIES[0]);
+	first.setLimit(100);
+	first.setPrefix("other", "http://example.org/other#");
+
+	Query second = cache.getQuery(QUERIES[0]);
+	assertEquals(10, second.getLimit());
+	assertEquals(null, second.getPrefix("other"));
+    }
+
+    @Test
+    public void testCopyEqualsQuery()
+    {
+	Model model = createModel();
+	for (int i = 0; i < QUERIES.length; i++)
+	{
+	    String queryString = QUERIES[i];
+	    Query query = QueryFactory.create(queryString);
+	    Query copy = new ParsedQueryCache(10, 1024).copy(query);
+	    if (i != 2) assertSame(queryString, query.getQueryPattern(), copy.getQueryPattern());
+	    assertEquals(queryString, query, copy);
+	    assertEquals(queryString, query.toString(), copy.toString());
+	    assertEquals(queryString, execute(query, model), execute(copy, model));
+	}
+    }
+
+    @Test
+    public void testLongQueryIsNotCached()
+    {
+	ParsedQueryCache cache = new ParsedQueryCache(10, 8);
+	assertTrue(QUERIES[6].length() > cache.getMaxLength());
+	assertNotSame(cache.getQuery(QUERIES[6]).getQueryPattern(), cache.getQuery(QUERIES[6]).getQueryPattern());
+	assertEquals(0, cache.getQueryHitCount() + cache.getQueryMissCount());
+    }
+
+    private static Model createModel()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Property value = model.createProperty("http://example.org/ns#value");
+	for (int i = 0; i < 20; i++)
+	    model.createResource("http://example.org/resource/" + i % 7).addLiteral(value, i);
+	return model;
+    }
+
+    private static String execute(Query query, Model model)
+    {
+	if (query.isSelectType()) return ResultSetFormatter.asText(QueryExecutionFactory.create(query, model).execSelect());
+	if (query.isAskType()) return String.valueOf(QueryExecutionFactory.create(query, model).execAsk());
+	if (query.isConstructType()) return String.valueOf(QueryExecutionFactory.create(query, model).execConstruct().size());
+	return String.valueOf(QueryExecutionFactory.create(query, model).execDescribe().size());
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Longest-prefix lookups over overlapping keys, whichever order the edges were split in.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class PrefixIndexTest
+{
+
+    private static final String[] KEYS = { "http://example.org/", "http://example.org/sparql",
+	"http://example.org/sparql/update", "http://example.com/sparql", "http://example.org/s", "http://" };
+
+    @Test
+    public void testLongestPrefix()
+    {
+	PrefixIndex<String> index = new PrefixIndex<>(createMap(KEYS));
+	assertEquals(KEYS.length, index.size());
+
+	assertMatch(index, "http://example.org/sparql/update", "http://example.org/sparql/update");
+	assertMatch(index, "http://example.org/sparql/update?x", "http://example.org/sparql/update");
+	assertMatch(index, "http://example.org/sparql/up", "http://example.org/sparql");
+	assertMatch(index, "http://example.org/sparql", "http://example.org/sparql");
+	assertMatch(index, "http://example.org/spa", "http://example.org/s");
+	assertMatch(index, "http://example.org/graph", "http://example.org/");
+	assertMatch(index, "http://example.org", "http://");
+	assertMatch(index, "http://example.com/sparql/x", "http://example.com/sparql");
+	assertMatch(index, "http://example.com/", "http://");
+	assertNull(index.findLongestPrefix("https://example.org/sparql"));
+	assertNull(index.findLongestPrefix(""));
+    }
+
+    @Test
+    public void testEmptyKeyMatchesEverything()
+    {
+	Map<String, String> map = createMap(KEYS);
+	map.put("", "");
+	PrefixIndex<String> index = new PrefixIndex<>(map);
+	assertMatch(index, "https://example.org/sparql", "");
+	assertMatch(index, "", "");
+	assertMatch(index, "http://example.org/sparql/u", "http://example.org/sparql");
+    }
+
+    @Test
+    public void testInsertionOrderDoesNotMatter()
+    {
+	List<String> keys = new ArrayList<>();
+	Collections.addAll(keys, KEYS);
+	Collections.addAll(keys, "a", "ab", "abc", "abd", "b", "ba", "abcd", "abce");
+	String[] strings = { "http://example.org/sparql/update/1", "http://example.org/sp", "http://example.co",
+	    "abcz", "abcdz", "abde", "ax", "bab", "c" };
+
+	Random random = new Random(42);
+	for (int i = 0; i < 50; i++)
+	{
+	    Collections.shuffle(keys, random);
+	    PrefixIndex<String> index = new PrefixIndex<>(createMap(keys.toArray(new String[keys.size()])));
+	    for (String string : strings)
+	    {
+		Entry<String, String> match = index.findLongestPrefix(string);
+		assertEquals(keys.toString(), findLongestPrefix(keys, string), match != null ? match.getKey() : null);
+		if (match != null) assertEquals(match.getKey(), match.getValue());
+	    }
+	}
+    }
+
+    private static void assertMatch(PrefixIndex<String> index, String string, String key)
+    {
+	Entry<String, String> match = index.findLongestPrefix(string);
+	assertEquals(string, key, match != null ? match.getKey() : null);
+	assertEquals(string, key, match != null ? match.getValue() : null);
+    }
+
+    private static String findLongestPrefix(List<String> keys, String string)
+    {
+	String longest = null;
+	for (String key : keys)
+	    if (string.startsWith(key) && (longest == null || key.length() > longest.length())) longest = key;
+	return longest;
+    }
+
+    private static Map<String, String> createMap(String... keys)
+    {
+	Map<String, String> map = new LinkedHashMap<>();
+	for (String key : keys) map.put(key, key);
+	return map;
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import static org.graphity.server.util.GraphDependencies.DEFAULT_GRAPH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Weighted LRU eviction, expiry, and invalidation of cached results by the graphs they were read from.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class QueryResultCacheTest
+{
+
+    private static final String ENDPOINT = "http://example.org/sparql";
+    private static final String GRAPH = "http://example.org/graph";
+    private static final String OTHER = "http://example.org/other";
+    private static final long TTL = 60000;
+
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp()
+    {
+	cache = new QueryResultCache(10);
+	cache.setTimeToLive(ENDPOINT, TTL);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvictedByWeight()
+    {
+	assertTrue(put("a", createModel(4), set(GRAPH)));
+	assertTrue(put("b", createModel(4), set(GRAPH)));
+	assertNotNull(cache.getModel("a")); // "b" is now least recently used
+	assertTrue(put("c", createModel(4), set(GRAPH)));
+
+	assertNotNull(cache.getModel("a"));
+	assertNull(cache.getModel("b"));
+	assertNotNull(cache.getModel("c"));
+	assertEquals(8, cache.getWeight());
+	assertEquals(1, cache.getEvictionCount());
+
+	assertFalse(put("d", createModel(11), set(GRAPH))); // heavier than the whole cache
+	assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testEntriesExpire() throws InterruptedException
+    {
+	cache.setTimeToLive(ENDPOINT, 50);
+	assertTrue(put("a", createModel(1), set(GRAPH)));
+	assertNotNull(cache.getModel("a"));
+
+	Thread.sleep(100);
+	assertNull(cache.getModel("a"));
+	assertEquals(1, cache.getExpirationCount());
+	assertEquals(0, cache.getWeight());
+
+	cache.setTimeToLive(ENDPOINT, 0);
+	assertFalse(put("a", createModel(1), set(GRAPH)));
+    }
+
+    @Test
+    public void testLoadRacingWriteIsNotCached()
+    {
+	long generation = cache.getGeneration(); // obtained before the query is sent
+	cache.invalidate(set(OTHER)); // write completes while the query is in flight
+
+	assertFalse(cache.putModel(ENDPOINT, "a", createModel(1), set(GRAPH), generation));
+	assertNull(cache.getModel("a"));
+	assertTrue(cache.putModel(ENDPOINT, "a", createModel(1), set(GRAPH), cache.getGeneration()));
+    }
+
+    @Test
+    public void testWritesInvalidateDependents()
+    {
+	put("graph", createModel(1), set(GRAPH));
+	put("other", createModel(1), set(OTHER));
+	put("default", createModel(1), set(DEFAULT_GRAPH));
+
+	assertEquals(1, cache.invalidate(set(GRAPH)));
+	assertNull(cache.getModel("graph"));
+	assertNotNull(cache.getModel("other"));
+	assertNotNull(cache.getModel("default"));
+
+	cache.setUnionDefaultGraph(true);
+	assertEquals(2, cache.invalidate(set(OTHER)));
+	assertEquals(0, cache.size());
+	assertEquals(3, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testCachedModelIsNotModified()
+    {
+	put("a", createModel(2), set(GRAPH));
+	Model model = cache.getModel("a");
+	model.removeAll();
+	assertEquals(2, cache.getModel("a").size());
+    }
+
+    private boolean put(String key, Model model, Set<String> dependencies)
+    {
+	return cache.putModel(ENDPOINT, key, model, dependencies, cache.getGeneration());
+    }
+
+    private static Model createModel(int size)
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Property value = model.createProperty("http://example.org/ns#value");
+	for (int i = 0; i < size; i++)
+	    model.createResource("http://example.org/resource/" + i).addLiteral(value, i);
+	return model;
+    }
+
+    private static Set<String> set(String... graphs)
+    {
+	return new HashSet<>(Arrays.asList(graphs));
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bound queries must be built from the parsed template, and only return the bound resource.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class QueryTemplateTest
+{
+
+    private static final String RESOURCE = "http://example.org/resource/";
+
+    @Test
+    public void testConstructIsNotParsed()
+    {
+	QueryTemplate template = QueryTemplate.create("CONSTRUCT { ?this ?p ?o } WHERE { ?this ?p ?o }");
+	Query bound = template.bind(RESOURCE + 1);
+
+	assertSame(template.getQuery().getQueryPattern(), bound.getQueryPattern()); // parsing would create a new pattern
+	assertTrue(!template.getQuery().hasValues());
+	assertEquals(2, QueryExecutionFactory.create(bound, createModel()).execConstruct().size());
+	assertEquals(2, QueryExecutionFactory.create(template.bind(RESOURCE + 2), createModel()).execConstruct().size());
+    }
+
+    @Test
+    public void testDescribe()
+    {
+	Query bound = QueryTemplate.create(QueryTemplate.DESCRIBE).bind(RESOURCE + 1);
+	assertEquals(RESOURCE + 1, bound.getResultURIs().get(0).getURI());
+	assertEquals(2, QueryExecutionFactory.create(bound, createModel()).execDescribe().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testURIWithSyntaxIsRejected()
+    {
+	QueryTemplate.create(QueryTemplate.DESCRIBE).bind(RESOURCE + "> ?p ?o } #");
+    }
+
+    private static Model createModel()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Property value = model.createProperty("http://example.org/ns#value");
+	for (int i = 0; i < 6; i++)
+	    model.createResource(RESOURCE + i % 3).addLiteral(value, i);
+	return model;
+    }
+
+}
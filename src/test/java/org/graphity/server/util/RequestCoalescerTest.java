@@ -0,0 +1,175 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Concurrent identical requests reach the origin once, and every caller gets its own copy of the result.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class RequestCoalescerTest
+{
+
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger originCount = new AtomicInteger();
+
+    private final RequestCoalescer.Sharing<List<String>> copying = new RequestCoalescer.Sharing<List<String>>()
+    {
+	@Override
+	public List<String> share(List<String> result)
+	{
+	    return new ArrayList<>(result);
+	}
+    };
+
+    @After
+    public void tearDown()
+    {
+	release.countDown();
+	executor.shutdownNow();
+    }
+
+    @Test
+    public void testSingleFlight() throws InterruptedException, ExecutionException, TimeoutException
+    {
+	final RequestCoalescer coalescer = new RequestCoalescer();
+	List<Future<List<String>>> futures = new ArrayList<>();
+	for (int i = 0; i < CALLERS; i++)
+	    futures.add(executor.submit(new Callable<List<String>>()
+	    {
+		@Override
+		public List<String> call()
+		{
+		    return coalescer.execute("key", new Origin(), copying);
+		}
+	    }));
+
+	long deadline = System.currentTimeMillis() + 10000;
+	while (coalescer.getCollapsedCount() < CALLERS - 1) // all but one have joined the request in flight
+	{
+	    if (System.currentTimeMillis() > deadline) fail("Callers did not join the request in flight");
+	    Thread.sleep(10);
+	}
+	release.countDown();
+
+	List<List<String>> results = new ArrayList<>();
+	for (Future<List<String>> future : futures)
+	{
+	    List<String> result = future.get(10, TimeUnit.SECONDS);
+	    assertEquals(Arrays.asList("result"), result);
+	    for (List<String> other : results)
+		assertTrue("Callers share the same result", result != other);
+	    results.add(result);
+	}
+	assertEquals(1, originCount.get());
+	assertEquals(1, coalescer.getExecutionCount());
+	assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void testCompletedRequestIsNotReused()
+    {
+	RequestCoalescer coalescer = new RequestCoalescer();
+	release.countDown();
+	coalescer.execute("key", new Origin(), copying);
+	coalescer.execute("key", new Origin(), copying);
+	assertEquals(2, originCount.get());
+	assertEquals(0, coalescer.getCollapsedCount());
+    }
+
+    @Test
+    public void testFailureIsShared() throws InterruptedException, TimeoutException
+    {
+	final RequestCoalescer coalescer = new RequestCoalescer();
+	final CountDownLatch failing = new CountDownLatch(1);
+	Future<?> first = executor.submit(new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+		coalescer.execute("key", new Callable<List<String>>()
+		{
+		    @Override
+		    public List<String> call() throws InterruptedException
+		    {
+			failing.countDown();
+			release.await();
+			throw new IllegalStateException("Origin failed");
+		    }
+		});
+	    }
+	});
+	assertTrue(failing.await(10, TimeUnit.SECONDS));
+	Future<?> second = executor.submit(new Runnable()
+	{
+	    @Override
+	    public void run()
+	    {
+		coalescer.execute("key", new Origin());
+	    }
+	});
+	while (coalescer.getCollapsedCount() < 1) Thread.sleep(10);
+	release.countDown();
+
+	for (Future<?> future : Arrays.asList(first, second))
+	    try
+	    {
+		future.get(10, TimeUnit.SECONDS);
+		fail("Failure was not propagated");
+	    }
+	    catch (ExecutionException ex)
+	    {
+		assertTrue(ex.getCause() instanceof IllegalStateException);
+	    }
+	assertEquals(0, originCount.get());
+    }
+
+    private class Origin implements Callable<List<String>>
+    {
+
+	@Override
+	public List<String> call() throws InterruptedException
+	{
+	    originCount.incrementAndGet();
+	    release.await();
+	    return Arrays.asList("result");
+	}
+
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.server.util;
+
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.WebApplication;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Variant;
+import org.apache.jena.riot.Lang;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Content negotiation results, including the <code>Vary</code> header, are served from cache for repeated
+ * <code>Accept*</code> headers.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class VariantListTest
+{
+
+    private static final MediaType TURTLE = new MediaType("text", "turtle");
+    private static final MediaType RDF_XML = new MediaType("application", "rdf+xml");
+
+    private final VariantList variants = new VariantList(Arrays.asList(new Variant(TURTLE, null, null),
+	    new Variant(RDF_XML, null, null)), 2);
+
+    @Test
+    public void testSelectionIsCached()
+    {
+	CountingRequest first = createRequest("application/rdf+xml, text/turtle;q=0.5", null);
+	assertEquals(RDF_XML, variants.select(first).getMediaType());
+	assertEquals(1, first.selectCount);
+	String vary = (String)first.getProperties().get(ContainerRequest.VARY_HEADER);
+	assertEquals(HttpHeaders.ACCEPT, vary);
+
+	CountingRequest second = createRequest("application/rdf+xml, text/turtle;q=0.5", null);
+	assertEquals(RDF_XML, variants.select(second).getMediaType());
+	assertEquals(0, second.selectCount); // not negotiated again
+	assertEquals(vary, second.getProperties().get(ContainerRequest.VARY_HEADER));
+	assertEquals(1, variants.getHitCount());
+	assertEquals(1, variants.getMissCount());
+    }
+
+    @Test
+    public void testNegotiatedHeadersAreKeys()
+    {
+	assertEquals(TURTLE, variants.select(createRequest("*/*", null)).getMediaType());
+	assertEquals(RDF_XML, variants.select(createRequest("application/rdf+xml", null)).getMediaType());
+	assertEquals(TURTLE, variants.select(createRequest("*/*", "en")).getMediaType());
+	assertNull(variants.select(createRequest("text/html", null)));
+	assertNull(variants.select(createRequest("text/html", null)));
+	assertEquals(1, variants.getHitCount());
+	assertEquals(4, variants.getMissCount());
+    }
+
+    @Test
+    public void testForRDF()
+    {
+	VariantList rdf = VariantList.forRDF(Lang.TURTLE);
+	assertEquals(TURTLE, rdf.get(0).getMediaType());
+	assertEquals(TURTLE, rdf.select(createRequest("*/*", null)).getMediaType());
+	assertEquals(RDF_XML, rdf.select(createRequest("application/rdf+xml", null)).getMediaType());
+    }
+
+    private static CountingRequest createRequest(String accept, String acceptLanguage)
+    {
+	InBoundHeaders headers = new InBoundHeaders();
+	headers.putSingle(HttpHeaders.ACCEPT, accept);
+	if (acceptLanguage != null) headers.putSingle(HttpHeaders.ACCEPT_LANGUAGE, acceptLanguage);
+	return new CountingRequest(headers);
+    }
+
+    /**
+     * Request that counts how many times content negotiation is performed.
+     */
+    private static class CountingRequest extends ContainerRequest
+    {
+	private int selectCount = 0;
+
+	CountingRequest(InBoundHeaders headers)
+	{
+	    super(createWebApplication(), "GET", URI.create("http://localhost/"), URI.create("http://localhost/resource"), headers,
+		    new ByteArrayInputStream(new byte[0]));
+	}
+
+	@Override
+	public Variant selectVariant(List<Variant> variants)
+	{
+	    selectCount++;
+	    return super.selectVariant(variants);
+	}
+
+	/**
+	 * Returns web application stub, which the request only asks whether tracing is enabled.
+	 */
+	private static WebApplication createWebApplication()
+	{
+	    return (WebApplication)Proxy.newProxyInstance(WebApplication.class.getClassLoader(),
+		    new Class<?>[] { WebApplication.class }, new InvocationHandler()
+	    {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+		    if (method.getName().equals("isTracingEnabled")) return false;
+		    throw new UnsupportedOperationException(method.getName());
+		}
+	    });
+	}
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per-triple cost of model hashing, compared with the XOR of 32-bit node hash codes that
+ * {@link ModelUtils#hashTriple(Triple)} computes.
+ * The model resembles a large Graph Store graph: few predicates, repeated subjects, and mostly unique plain,
+ * language-tagged and typed literals. Run with:
+ * <pre>mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.graphity.util.ModelHashBenchmark</pre>
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see ModelHash
+ * @see <a href="http://openjdk.java.net/projects/code-tools/jmh/">JMH</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ModelHashBenchmark
+{
+
+    /** Number of triples in the benchmark model */
+    public static final int SIZE = 300000;
+
+    private Graph graph;
+
+    @Setup
+    public void setUp()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Property[] properties = new Property[8];
+	for (int i = 0; i < properties.length; i++) properties[i] = model.createProperty("http://example.org/ns#property" + i);
+
+	for (int i = 0; model.size() < SIZE; i++)
+	{
+	    Resource resource = model.createResource("http://example.org/resource/" + i / 4);
+	    Property property = properties[i % properties.length];
+	    switch (i % 3)
+	    {
+		case 0: resource.addProperty(property, "Value number " + i); break;
+		case 1: resource.addProperty(property, "Vertė numeris " + i, "lt"); break;
+		default: resource.addLiteral(property, model.createTypedLiteral(String.valueOf(i), XSDDatatype.XSDinteger));
+	    }
+	}
+
+	graph = model.getGraph();
+	ParallelHashing.setThreshold(Integer.MAX_VALUE); // sequential unless hashParallel() is called
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+	ParallelHashing.setThreshold(ParallelHashing.DEFAULT_THRESHOLD);
+	ParallelHashing.shutdown();
+    }
+
+    /**
+     * Hash that <code>ModelUtils.hashModel()</code> computed before {@link ModelHash}.
+     *
+     * @return hash
+     */
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long xorNodeHashCodes()
+    {
+	long result = 0;
+	ExtendedIterator<Triple> it = graph.find(Node.ANY, Node.ANY, Node.ANY);
+	while (it.hasNext()) result ^= ModelUtils.hashTriple(it.next());
+	return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long modelHash()
+    {
+	return ModelHash.hash(graph);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long modelHashParallel()
+    {
+	return ModelHash.hashParallel(graph);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+	new Runner(new OptionsBuilder().include(ModelHashBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
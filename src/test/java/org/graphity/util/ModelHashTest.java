@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Models that differ in a single term must hash differently, and isomorphic models equally.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class ModelHashTest
+{
+
+    @After
+    public void tearDown()
+    {
+	ParallelHashing.setThreshold(ParallelHashing.DEFAULT_THRESHOLD);
+    }
+
+    @Test
+    public void testObjectsDiffer()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	RDFNode[] objects = { model.createLiteral("chat", "en"), model.createLiteral("chat", "fr"),
+	    model.createLiteral("chat"), model.createTypedLiteral("chat", XSDDatatype.XSDstring),
+	    model.createTypedLiteral("1", XSDDatatype.XSDinteger), model.createTypedLiteral("01", XSDDatatype.XSDinteger),
+	    model.createTypedLiteral("1", XSDDatatype.XSDint), model.createResource("chat") };
+
+	Set<Long> hashes = new HashSet<>();
+	for (RDFNode object : objects) hashes.add(ModelHash.hash(createModel(object)));
+	assertEquals(objects.length, hashes.size());
+    }
+
+    @Test
+    public void testUrisDiffer()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	assertTrue(ModelHash.hash(createModel(model.createResource("http://example.org/Aa"))) !=
+		ModelHash.hash(createModel(model.createResource("http://example.org/BB")))); // equal String.hashCode()
+    }
+
+    @Test
+    public void testIsomorphicModelsEqual()
+    {
+	assertEquals(ModelHash.hash(createBlankModel()), ModelHash.hash(createBlankModel()));
+    }
+
+    @Test
+    public void testParallelEqualsSequential()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Property property = model.createProperty("http://example.org/value");
+	for (int i = 0; i < 10000; i++)
+	    model.createResource("http://example.org/resource/" + i / 3).addProperty(property, "Value " + i, "en");
+	model.add(createBlankModel());
+
+	ParallelHashing.setThreshold(Integer.MAX_VALUE);
+	long sequential = ModelHash.hash(model);
+	assertEquals(sequential, ModelHash.hashParallel(model.getGraph()));
+    }
+
+    private static Model createModel(RDFNode object)
+    {
+	Model model = ModelFactory.createDefaultModel();
+	model.createResource("http://example.org/resource").addProperty(model.createProperty("http://example.org/value"), object);
+	return model;
+    }
+
+    private static Model createBlankModel()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Property knows = model.createProperty("http://example.org/knows");
+	Resource first = model.createResource(), second = model.createResource();
+	first.addProperty(knows, second).addProperty(knows, model.createResource("http://example.org/resource"));
+	second.addProperty(knows, first).addLiteral(knows, model.createTypedLiteral(42));
+	return model;
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.riot.Lang;
+import org.graphity.server.provider.ModelProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per-triple cost of writing models with {@link ModelProvider}, pretty-printed and in blocks of subjects, compared
+ * with the legacy <code>Model.write()</code> Turtle and RDF/XML writers that it replaced. The model is the same
+ * shape as in {@link ModelHashBenchmark}. Run with:
+ * <pre>mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.graphity.util.ModelWriterBenchmark</pre>
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see ModelProvider#write(com.hp.hpl.jena.rdf.model.Model, org.apache.jena.riot.Lang, java.io.OutputStream)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ModelWriterBenchmark
+{
+
+    /** Number of triples in the benchmark model */
+    public static final int SIZE = 100000;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * SIZE);
+    private final ModelProvider provider = new ModelProvider();
+    private Model model;
+
+    @Setup
+    public void setUp()
+    {
+	model = ModelFactory.createDefaultModel();
+	model.setNsPrefix("ns", "http://example.org/ns#");
+	Property[] properties = new Property[8];
+	for (int i = 0; i < properties.length; i++) properties[i] = model.createProperty("http://example.org/ns#property" + i);
+
+	for (int i = 0; model.size() < SIZE; i++)
+	{
+	    Resource resource = model.createResource("http://example.org/resource/" + i / 4);
+	    Property property = properties[i % properties.length];
+	    switch (i % 3)
+	    {
+		case 0: resource.addProperty(property, "Value number " + i); break;
+		case 1: resource.addProperty(property, "Vertė numeris " + i, "lt"); break;
+		default: resource.addLiteral(property, model.createTypedLiteral(String.valueOf(i), XSDDatatype.XSDinteger));
+	    }
+	}
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+	ModelProvider.setPrettyPrintLimit(ModelProvider.DEFAULT_PRETTY_PRINT_LIMIT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeTurtlePretty()
+    {
+	ModelProvider.setPrettyPrintLimit(Long.MAX_VALUE);
+	out.reset();
+	provider.write(model, Lang.TURTLE, out);
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeTurtleBlocks()
+    {
+	ModelProvider.setPrettyPrintLimit(0);
+	out.reset();
+	provider.write(model, Lang.TURTLE, out);
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeTurtleLegacy()
+    {
+	out.reset();
+	model.write(out, "TURTLE");
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeNTriples()
+    {
+	out.reset();
+	provider.write(model, Lang.NTRIPLES, out);
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeRDFXML()
+    {
+	out.reset();
+	provider.write(model, Lang.RDFXML, out);
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeRDFXMLLegacy()
+    {
+	out.reset();
+	model.write(out, "RDF/XML");
+	return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+	new Runner(new OptionsBuilder().include(ModelWriterBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
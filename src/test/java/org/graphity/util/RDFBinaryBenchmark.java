@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per-triple cost of writing and reading binary RDF, compared with N-Triples and RDF/XML, which are the text
+ * syntaxes services otherwise exchange. Read benchmarks parse into a counting stream, so that graph indexing
+ * is not measured. The model is the same shape as in {@link ModelHashBenchmark}. Run with:
+ * <pre>mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.graphity.util.RDFBinaryBenchmark</pre>
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see RDFBinary
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RDFBinaryBenchmark
+{
+
+    /** Number of triples in the benchmark model */
+    public static final int SIZE = 100000;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * SIZE);
+    private Graph graph;
+    private byte[] binary, nTriples, rdfXml;
+
+    @Setup
+    public void setUp()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	model.setNsPrefix("ns", "http://example.org/ns#");
+	Property[] properties = new Property[8];
+	for (int i = 0; i < properties.length; i++) properties[i] = model.createProperty("http://example.org/ns#property" + i);
+
+	for (int i = 0; model.size() < SIZE; i++)
+	{
+	    Resource resource = model.createResource("http://example.org/resource/" + i / 4);
+	    Property property = properties[i % properties.length];
+	    switch (i % 3)
+	    {
+		case 0: resource.addProperty(property, "Value number " + i); break;
+		case 1: resource.addProperty(property, "Vertė numeris " + i, "lt"); break;
+		default: resource.addLiteral(property, model.createTypedLiteral(String.valueOf(i), XSDDatatype.XSDinteger));
+	    }
+	}
+
+	graph = model.getGraph();
+	binary = writeBinary();
+	nTriples = writeNTriples();
+	rdfXml = writeRDFXML();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeBinary()
+    {
+	out.reset();
+	RDFBinary.write(out, graph);
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeNTriples()
+    {
+	out.reset();
+	RDFDataMgr.write(out, graph, Lang.NTRIPLES);
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeRDFXML()
+    {
+	out.reset();
+	RDFDataMgr.write(out, graph, Lang.RDFXML);
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long readBinary()
+    {
+	StreamRDFCounting counter = StreamRDFLib.count();
+	new RDFBinaryReader(new ByteArrayInputStream(binary)).read(counter);
+	return counter.count();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long readNTriples()
+    {
+	return read(nTriples, Lang.NTRIPLES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public long readRDFXML()
+    {
+	return read(rdfXml, Lang.RDFXML);
+    }
+
+    private static long read(byte[] bytes, Lang lang)
+    {
+	StreamRDFCounting counter = StreamRDFLib.count();
+	RDFDataMgr.parse(counter, new ByteArrayInputStream(bytes), lang);
+	return counter.count();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+	new Runner(new OptionsBuilder().include(RDFBinaryBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
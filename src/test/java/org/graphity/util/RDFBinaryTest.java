@@ -0,0 +1,217 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.graphity.server.provider.StreamingGraphWriter;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Binary RDF round trips: blank node identity, literal forms, dictionary references, and corrupt input.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class RDFBinaryTest
+{
+
+    private static final String NS = "http://example.org/ns#";
+
+    @Test
+    public void testRoundTrip()
+    {
+	Model model = createModel();
+	Model read = read(write(model));
+	assertTrue(model.isIsomorphicWith(read));
+	assertEquals(model.getNsPrefixMap(), read.getNsPrefixMap());
+    }
+
+    @Test
+    public void testBlankNodeIdentity()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Property knows = model.createProperty(NS, "knows");
+	Resource first = model.createResource(), second = model.createResource();
+	first.addProperty(knows, second);
+	second.addProperty(knows, first);
+	first.addProperty(knows, first);
+
+	byte[] bytes = write(model);
+	Model read = read(bytes);
+	assertTrue(model.isIsomorphicWith(read));
+	assertEquals(2, read.listSubjects().toList().size());
+
+	Model other = read(bytes); // each input gets fresh blank nodes
+	read.add(other);
+	assertEquals(6, read.size());
+    }
+
+    @Test
+    public void testLiterals()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	Resource resource = model.createResource("http://example.org/resource");
+	Property value = model.createProperty(NS, "value");
+	char[] longValue = new char[BinaryTermWriter.MAX_DICTIONARY_LITERAL_LENGTH + 1];
+	Arrays.fill(longValue, 'ė');
+	List<Literal> literals = Arrays.asList(model.createLiteral("chat"), model.createLiteral("chat", "en"),
+	    model.createLiteral("chat", "fr"), model.createTypedLiteral("chat", XSDDatatype.XSDstring),
+	    model.createTypedLiteral("1", XSDDatatype.XSDinteger), model.createTypedLiteral("01", XSDDatatype.XSDinteger),
+	    model.createTypedLiteral("1", XSDDatatype.XSDint), model.createTypedLiteral("x", "http://example.org/ns#unknown"),
+	    model.createLiteral(""), model.createLiteral("line\nbreak \"quoted\" \\ \u0000"),
+	    model.createLiteral(new String(longValue)));
+	for (Literal literal : literals) resource.addLiteral(value, literal);
+
+	Model read = read(write(model));
+	assertEquals(literals.size(), read.size());
+	for (Literal literal : literals)
+	    assertTrue(literal.toString(), read.contains(resource, value, literal));
+    }
+
+    @Test
+    public void testDictionaryIsSmaller()
+    {
+	Model model = createModel();
+	ByteArrayOutputStream full = new ByteArrayOutputStream();
+	RDFBinaryWriter writer = new RDFBinaryWriter(full, 0);
+	writer.start();
+	StreamRDFLib.triplesToStream(writer, model.getGraph().find(Node.ANY, Node.ANY, Node.ANY));
+	writer.finish();
+
+	byte[] bytes = write(model);
+	assertTrue(bytes.length < full.size());
+	assertTrue(model.isIsomorphicWith(read(full.toByteArray())));
+    }
+
+    @Test
+    public void testTruncatedInput()
+    {
+	byte[] bytes = write(createModel());
+	for (int length : new int[] { 0, 3, RDFBinary.MAGIC.length + 1, bytes.length / 2, bytes.length - 1 })
+	    try
+	    {
+		read(Arrays.copyOf(bytes, length));
+		fail("Truncated input of length " + length + " was read");
+	    }
+	    catch (RiotException ex)
+	    {
+		// expected
+	    }
+    }
+
+    @Test
+    public void testCorruptInput()
+    {
+	byte[] bytes = write(createModel());
+	bytes[0] = 'X';
+	try
+	{
+	    read(bytes);
+	    fail("Input with wrong magic number was read");
+	}
+	catch (RiotException ex)
+	{
+	    assertTrue(ex.getMessage().contains("not binary RDF"));
+	}
+
+	bytes = write(createModel());
+	bytes[RDFBinary.MAGIC.length + 1] = 0x7f; // unknown record tag
+	try
+	{
+	    read(bytes);
+	    fail("Input with unknown record was read");
+	}
+	catch (RiotException ex)
+	{
+	    // expected
+	}
+    }
+
+    @Test
+    public void testRegisteredLang()
+    {
+	assertSame(RDFBinary.LANG, RDFLanguages.contentTypeToLang(RDFBinary.CONTENT_TYPE));
+	assertTrue(new StreamingGraphWriter().createStreamWriter(RDFBinary.LANG, new ByteArrayOutputStream()) instanceof RDFBinaryWriter);
+
+	Model model = createModel();
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	RDFDataMgr.write(out, model, RDFBinary.LANG);
+	Model read = ModelFactory.createDefaultModel();
+	RDFDataMgr.read(read, new ByteArrayInputStream(out.toByteArray()), RDFBinary.LANG);
+	assertTrue(model.isIsomorphicWith(read));
+
+	try
+	{
+	    RDFDataMgr.write(new StringWriter(), model, RDFBinary.LANG);
+	    fail("Binary RDF was written to a character stream");
+	}
+	catch (RiotException ex)
+	{
+	    // expected
+	}
+    }
+
+    private static Model createModel()
+    {
+	Model model = ModelFactory.createDefaultModel();
+	model.setNsPrefix("ex", NS);
+	Property[] properties = { model.createProperty(NS, "name"), model.createProperty(NS, "value"), model.createProperty(NS, "link") };
+	Resource previous = null;
+	for (int i = 0; i < 50; i++)
+	{
+	    Resource resource = i % 5 == 0 ? model.createResource() : model.createResource("http://example.org/resource/" + i);
+	    resource.addProperty(properties[0], "Name " + i % 7, i % 2 == 0 ? "en" : "lt");
+	    resource.addLiteral(properties[1], model.createTypedLiteral(String.valueOf(i % 10), XSDDatatype.XSDinteger));
+	    if (previous != null) resource.addProperty(properties[2], previous);
+	    previous = resource;
+	}
+	return model;
+    }
+
+    private static byte[] write(Model model)
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	RDFBinary.write(out, model.getGraph());
+	return out.toByteArray();
+    }
+
+    private static Model read(byte[] bytes)
+    {
+	Model model = ModelFactory.createDefaultModel();
+	RDFBinary.read(new ByteArrayInputStream(bytes), model.getGraph());
+	return model;
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Per-row cost of writing and reading binary SPARQL results, compared with SPARQL XML results, which is what
+ * remote endpoints are otherwise asked for. Rows have three variables, one of which is unbound in every fifth
+ * row, and subjects and predicates repeat as they do in typical <code>SELECT</code> results. Run with:
+ * <pre>mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.graphity.util.ResultSetBinaryBenchmark</pre>
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ * @see ResultSetBinary
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ResultSetBinaryBenchmark
+{
+
+    /** Number of rows in the benchmark results */
+    public static final int SIZE = 100000;
+
+    private static final List<String> VARS = Arrays.asList("s", "p", "o");
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(128 * SIZE);
+    private final List<Binding> bindings = new ArrayList<>(SIZE);
+    private byte[] binary, xml;
+
+    @Setup
+    public void setUp()
+    {
+	Var s = Var.alloc("s"), p = Var.alloc("p"), o = Var.alloc("o");
+	Node[] properties = new Node[8];
+	for (int i = 0; i < properties.length; i++) properties[i] = NodeFactory.createURI("http://example.org/ns#property" + i);
+
+	for (int i = 0; i < SIZE; i++)
+	{
+	    BindingMap binding = BindingFactory.create();
+	    binding.add(s, NodeFactory.createURI("http://example.org/resource/" + i / 4));
+	    binding.add(p, properties[i % properties.length]);
+	    switch (i % 5)
+	    {
+		case 0: break; // unbound
+		case 1: binding.add(o, NodeFactory.createLiteral("Vertė numeris " + i, "lt", false)); break;
+		case 2: binding.add(o, NodeFactory.createLiteral(String.valueOf(i), null, XSDDatatype.XSDinteger)); break;
+		default: binding.add(o, NodeFactory.createLiteral("Value number " + i));
+	    }
+	    bindings.add(binding);
+	}
+
+	binary = writeBinary();
+	xml = writeXML();
+    }
+
+    private ResultSet createResultSet()
+    {
+	return new ResultSetStream(VARS, null, new QueryIterPlainWrapper(bindings.iterator()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeBinary()
+    {
+	out.reset();
+	ResultSetBinary.write(out, createResultSet());
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public byte[] writeXML()
+    {
+	out.reset();
+	ResultSetFormatter.outputAsXML(out, createResultSet());
+	return out.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int readBinary()
+    {
+	return consume(ResultSetBinary.read(new ByteArrayInputStream(binary)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int readXML()
+    {
+	return consume(ResultSetFactory.fromXML(new ByteArrayInputStream(xml)));
+    }
+
+    private static int consume(ResultSet results)
+    {
+	int count = 0;
+	while (results.hasNext()) count += results.nextBinding().size();
+	return count;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+	new Runner(new OptionsBuilder().include(ResultSetBinaryBenchmark.class.getSimpleName()).build()).run();
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetRewindable;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import com.hp.hpl.jena.sparql.resultset.ResultSetCompare;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jena.riot.RiotException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Binary results round trips: unbound cells, dictionary references across blocks, empty results, and corrupt
+ * input.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class ResultSetBinaryTest
+{
+
+    private static final Var S = Var.alloc("s"), P = Var.alloc("p"), O = Var.alloc("o");
+
+    @Test
+    public void testUnboundCells()
+    {
+	List<Binding> bindings = new ArrayList<>();
+	bindings.add(binding(NodeFactory.createURI("http://example.org/s"), null, NodeFactory.createLiteral("o")));
+	bindings.add(binding(null, null, null));
+	bindings.add(binding(null, NodeFactory.createURI("http://example.org/p"), null));
+
+	ResultSetRewindable read = read(write(bindings));
+	assertEquals(Arrays.asList("s", "p", "o"), read.getResultVars());
+	assertEquals(3, read.size());
+	Binding first = read.nextBinding();
+	assertNull(first.get(P));
+	assertEquals(NodeFactory.createLiteral("o"), first.get(O));
+	assertTrue(read.nextBinding().isEmpty());
+	Binding third = read.nextBinding();
+	assertEquals(1, third.size());
+	assertEquals(NodeFactory.createURI("http://example.org/p"), third.get(P));
+    }
+
+    @Test
+    public void testReferencesAcrossBlocks()
+    {
+	List<Binding> bindings = new ArrayList<>();
+	Node blank = NodeFactory.createAnon();
+	for (int i = 0; i < ResultSetBinary.BLOCK_SIZE * 2 + 3; i++)
+	    bindings.add(binding(i % 10 == 0 ? blank : NodeFactory.createURI("http://example.org/resource/" + i % 7),
+		NodeFactory.createURI("http://example.org/ns#value"),
+		i % 2 == 0 ? NodeFactory.createLiteral(String.valueOf(i % 5), null, XSDDatatype.XSDinteger) :
+		    NodeFactory.createLiteral("Vertė " + i % 3, "lt", false)));
+
+	byte[] bytes = write(bindings);
+	ResultSetRewindable read = read(bytes);
+	assertEquals(bindings.size(), read.size());
+	assertTrue(ResultSetCompare.equalsByTerm(createResultSet(bindings), read));
+
+	read.reset();
+	Node readBlank = null;
+	for (int i = 0; read.hasNext(); i++)
+	{
+	    Node s = read.nextBinding().get(S);
+	    if (i % 10 == 0)
+	    {
+		assertTrue(s.isBlank());
+		if (readBlank == null) readBlank = s;
+		assertSame(readBlank, s); // the same blank node in every block
+	    }
+	}
+
+	assertTrue("Repeated terms are not written as references", bytes.length < bindings.size() * 8);
+    }
+
+    @Test
+    public void testEmptyResults()
+    {
+	ResultSetRewindable read = read(write(Collections.<Binding>emptyList()));
+	assertEquals(Arrays.asList("s", "p", "o"), read.getResultVars());
+	assertFalse(read.hasNext());
+
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	ResultSetBinary.write(out, new ResultSetStream(Collections.<String>emptyList(), null,
+		new QueryIterPlainWrapper(Collections.singletonList(BindingFactory.binding()).iterator())));
+	read = ResultSetFactory.makeRewindable(ResultSetBinary.read(new ByteArrayInputStream(out.toByteArray())));
+	assertTrue(read.getResultVars().isEmpty());
+	assertEquals(1, read.size()); // the single empty row of SELECT * {}
+    }
+
+    @Test
+    public void testTruncatedInput()
+    {
+	List<Binding> bindings = new ArrayList<>();
+	for (int i = 0; i < ResultSetBinary.BLOCK_SIZE + 1; i++)
+	    bindings.add(binding(NodeFactory.createURI("http://example.org/resource/" + i), null, NodeFactory.createLiteral("Value " + i)));
+	byte[] bytes = write(bindings);
+
+	for (int length : new int[] { 0, 3, ResultSetBinary.MAGIC.length + 1, bytes.length / 2, bytes.length - 1 })
+	    try
+	    {
+		read(Arrays.copyOf(bytes, length));
+		fail("Truncated input of length " + length + " was read");
+	    }
+	    catch (RiotException ex)
+	    {
+		// expected
+	    }
+    }
+
+    private static Binding binding(Node s, Node p, Node o)
+    {
+	BindingMap binding = BindingFactory.create();
+	if (s != null) binding.add(S, s);
+	if (p != null) binding.add(P, p);
+	if (o != null) binding.add(O, o);
+	return binding;
+    }
+
+    private static ResultSet createResultSet(List<Binding> bindings)
+    {
+	return new ResultSetStream(Arrays.asList("s", "p", "o"), null, new QueryIterPlainWrapper(bindings.iterator()));
+    }
+
+    private static byte[] write(List<Binding> bindings)
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	ResultSetBinary.write(out, createResultSet(bindings));
+	return out.toByteArray();
+    }
+
+    private static ResultSetRewindable read(byte[] bytes)
+    {
+	return ResultSetFactory.makeRewindable(ResultSetBinary.read(new ByteArrayInputStream(bytes)));
+    }
+
+}
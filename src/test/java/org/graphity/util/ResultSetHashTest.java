@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Results that differ in a single value, variable name or row order must hash differently.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class ResultSetHashTest
+{
+
+    private static final Var VALUE = Var.alloc("value");
+
+    @Test
+    public void testValuesDiffer()
+    {
+	Node[] values = { NodeFactory.createLiteral("chat", "en", false), NodeFactory.createLiteral("chat", "fr", false),
+	    NodeFactory.createLiteral("chat"), NodeFactory.createLiteral("chat", null, XSDDatatype.XSDstring),
+	    NodeFactory.createLiteral("1", null, XSDDatatype.XSDinteger), NodeFactory.createLiteral("01", null, XSDDatatype.XSDinteger),
+	    NodeFactory.createLiteral("1", null, XSDDatatype.XSDint), NodeFactory.createURI("chat"), null };
+
+	Set<Long> hashes = new HashSet<>();
+	for (Node value : values)
+	{
+	    ResultSetHash hash = new ResultSetHash(Arrays.asList(VALUE.getVarName()));
+	    hash.update(value != null ? BindingFactory.binding(VALUE, value) : BindingFactory.binding());
+	    hashes.add(hash.getValue());
+	}
+	assertEquals(values.length, hashes.size());
+    }
+
+    @Test
+    public void testVarNamesDiffer()
+    {
+	assertTrue(new ResultSetHash(Arrays.asList("Aa")).getValue() != new ResultSetHash(Arrays.asList("BB")).getValue());
+    }
+
+    @Test
+    public void testOrderMatters()
+    {
+	Binding first = BindingFactory.binding(VALUE, NodeFactory.createLiteral("first"));
+	Binding second = BindingFactory.binding(VALUE, NodeFactory.createLiteral("second"));
+
+	ResultSetHash hash = new ResultSetHash(Arrays.asList(VALUE.getVarName()));
+	hash.update(first);
+	hash.update(second);
+	ResultSetHash reversed = new ResultSetHash(Arrays.asList(VALUE.getVarName()));
+	reversed.update(second);
+	reversed.update(first);
+	assertTrue(hash.getValue() != reversed.getValue());
+    }
+
+    @Test
+    public void testSolutionEqualsBinding()
+    {
+	Node value = NodeFactory.createLiteral("chat", "en", false);
+	ResultSetHash hash = new ResultSetHash(Arrays.asList(VALUE.getVarName()));
+	hash.update(BindingFactory.binding(VALUE, value));
+
+	QuerySolutionMap solution = new QuerySolutionMap();
+	solution.add(VALUE.getVarName(), ModelFactory.createDefaultModel().asRDFNode(value));
+	ResultSetHash solutionHash = new ResultSetHash(Arrays.asList(VALUE.getVarName()));
+	solutionHash.update(solution);
+
+	assertEquals(hash.getValue(), solutionHash.getValue());
+    }
+
+}
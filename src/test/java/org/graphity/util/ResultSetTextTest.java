@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2012 Martynas Jusevičius <martynas@graphity.org>
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.graphity.util;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * CSV and TSV quoting and escaping of values, unbound cells and blank node labels.
+ *
+ * @author Martynas Jusevičius <martynas@graphity.org>
+ */
+public class ResultSetTextTest
+{
+
+    private static final Var S = Var.alloc("s"), O = Var.alloc("o");
+    private static final Node RESOURCE = NodeFactory.createURI("http://example.org/resource?a=1,b=2");
+
+    @Test
+    public void testCSVQuoting()
+    {
+	List<Binding> bindings = Arrays.asList(
+	    binding(RESOURCE, NodeFactory.createLiteral("plain")),
+	    binding(null, NodeFactory.createLiteral("comma, separated")),
+	    binding(null, NodeFactory.createLiteral("say \"hi\"")),
+	    binding(null, NodeFactory.createLiteral("line\nbreak")),
+	    binding(null, NodeFactory.createLiteral("carriage\rreturn")),
+	    binding(null, NodeFactory.createLiteral("tab\tand 'quote'")),
+	    binding(null, NodeFactory.createLiteral("chat", "fr", false)),
+	    binding(null, NodeFactory.createLiteral("42", null, XSDDatatype.XSDinteger)),
+	    binding(null, NodeFactory.createLiteral("")),
+	    binding(null, null));
+
+	assertEquals("s,o\r\n" +
+	    "\"http://example.org/resource?a=1,b=2\",plain\r\n" +
+	    ",\"comma, separated\"\r\n" +
+	    ",\"say \"\"hi\"\"\"\r\n" +
+	    ",\"line\nbreak\"\r\n" +
+	    ",\"carriage\rreturn\"\r\n" +
+	    ",tab\tand 'quote'\r\n" +
+	    ",chat\r\n" +
+	    ",42\r\n" +
+	    ",\r\n" +
+	    ",\r\n", writeCSV(bindings));
+    }
+
+    @Test
+    public void testTSVEscaping()
+    {
+	List<Binding> bindings = Arrays.asList(
+	    binding(RESOURCE, NodeFactory.createLiteral("plain")),
+	    binding(null, NodeFactory.createLiteral("tab\tline\ncarriage\rreturn")),
+	    binding(null, NodeFactory.createLiteral("say \"hi\" \\o/")),
+	    binding(null, NodeFactory.createLiteral("chat", "fr", false)),
+	    binding(null, NodeFactory.createLiteral("42", null, XSDDatatype.XSDinteger)),
+	    binding(null, NodeFactory.createLiteral("Vertė", null, XSDDatatype.XSDstring)),
+	    binding(null, null));
+
+	assertEquals("?s\t?o\n" +
+	    "<http://example.org/resource?a=1,b=2>\t\"plain\"\n" +
+	    "\t\"tab\\tline\\ncarriage\\rreturn\"\n" +
+	    "\t\"say \\\"hi\\\" \\\\o/\"\n" +
+	    "\t\"chat\"@fr\n" +
+	    "\t\"42\"^^<http://www.w3.org/2001/XMLSchema#integer>\n" +
+	    "\t\"Vertė\"^^<http://www.w3.org/2001/XMLSchema#string>\n" +
+	    "\t\n", writeTSV(bindings));
+    }
+
+    @Test
+    public void testBlankNodeLabels()
+    {
+	Node first = NodeFactory.createAnon(), second = NodeFactory.createAnon();
+	List<Binding> bindings = Arrays.asList(binding(first, second), binding(second, first), binding(first, null));
+
+	assertEquals("s,o\r\n_:b0,_:b1\r\n_:b1,_:b0\r\n_:b0,\r\n", writeCSV(bindings));
+	assertEquals("?s\t?o\n_:b0\t_:b1\n_:b1\t_:b0\n_:b0\t\n", writeTSV(bindings));
+    }
+
+    @Test
+    public void testNoResults()
+    {
+	assertEquals("s,o\r\n", writeCSV(Collections.<Binding>emptyList()));
+	assertEquals("?s\t?o\n", writeTSV(Collections.<Binding>emptyList()));
+    }
+
+    private static Binding binding(Node s, Node o)
+    {
+	BindingMap binding = BindingFactory.create();
+	if (s != null) binding.add(S, s);
+	if (o != null) binding.add(O, o);
+	return binding;
+    }
+
+    private static ResultSet createResultSet(List<Binding> bindings)
+    {
+	return new ResultSetStream(Arrays.asList("s", "o"), null, new QueryIterPlainWrapper(bindings.iterator()));
+    }
+
+    private static String writeCSV(List<Binding> bindings)
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	ResultSetText.writeCSV(out, createResultSet(bindings));
+	return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String writeTSV(List<Binding> bindings)
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	ResultSetText.writeTSV(out, createResultSet(bindings));
+	return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}